@@ -0,0 +1,71 @@
+// adaptive replacement cache (Megiddo & Modha): balances recency (t1) against frequency (t2)
+// using ghost lists b1/b2 to move the target size p of t1
+public class ArcPolicy implements PageReplacementPolicy {
+    private final FrameList t1;
+    private final FrameList t2;
+    private final GhostList b1;
+    private final GhostList b2;
+    private final long[] frameKeys;
+    private final int capacity;
+    private int p;
+
+    public ArcPolicy(int frameCount) {
+        this.capacity = frameCount;
+        this.t1 = new FrameList(frameCount);
+        this.t2 = new FrameList(frameCount);
+        this.b1 = new GhostList(frameCount);
+        this.b2 = new GhostList(frameCount);
+        this.frameKeys = new long[frameCount];
+    }
+
+    public Kind getKind() { return Kind.ARC; }
+
+    public int getTargetRecentSize() { return p; }
+
+    public void pageLoaded(int frame, long key) {
+        frameKeys[frame] = key;
+        if (b1.contains(key)) {
+            p = Math.min(capacity, p + Math.max(b2.size() / Math.max(b1.size(), 1), 1));
+            b1.remove(key);
+            t2.addFirst(frame);
+        } else if (b2.contains(key)) {
+            p = Math.max(0, p - Math.max(b1.size() / Math.max(b2.size(), 1), 1));
+            b2.remove(key);
+            t2.addFirst(frame);
+        } else {
+            if (t1.size() + b1.size() >= capacity && b1.size() > 0) {
+                b1.removeLast();
+            } else if (t1.size() + t2.size() + b1.size() + b2.size() >= 2 * capacity && b2.size() > 0) {
+                b2.removeLast();
+            }
+            t1.addFirst(frame);
+        }
+    }
+
+    public void pageAccessed(int frame) {
+        if (t1.contains(frame)) {
+            t1.remove(frame);
+            t2.addFirst(frame);
+        } else if (t2.contains(frame)) {
+            t2.moveToFront(frame);
+        }
+    }
+
+    public int selectVictim(long incomingKey) {
+        boolean fromRecent = !t1.isEmpty()
+            && (t1.size() > p || (b2.contains(incomingKey) && t1.size() == p) || t2.isEmpty());
+        if (fromRecent) {
+            int frame = t1.removeLast();
+            b1.addFirst(frameKeys[frame]);
+            return frame;
+        }
+        int frame = t2.removeLast();
+        b2.addFirst(frameKeys[frame]);
+        return frame;
+    }
+
+    public void pageRemoved(int frame) {
+        t1.remove(frame);
+        t2.remove(frame);
+    }
+}
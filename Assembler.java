@@ -0,0 +1,130 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+// two-pass assembler for the text program format:
+//   [label:] OPCODE [operand [,] operand]   ; comment
+// operands are integers (decimal or 0x hex), registers r0-r15, or labels, which
+// resolve to the byte address of the instruction they mark
+public class Assembler {
+    private static final int REGISTERS = 16;
+
+    public static ProgramImage assembleFile(Path source) throws IOException {
+        return assemble(Files.readAllLines(source), source.toString());
+    }
+
+    public static ProgramImage assemble(List<String> lines, String sourceName) {
+        Map<String, Integer> labels = new HashMap<>();
+        List<String[]> statements = new ArrayList<>();
+        List<Integer> lineNumbers = new ArrayList<>();
+
+        for (int n = 0; n < lines.size(); n++) {
+            String line = stripComment(lines.get(n)).trim();
+            int colon;
+            while ((colon = line.indexOf(':')) > 0 && isIdentifier(line.substring(0, colon).trim())) {
+                String label = line.substring(0, colon).trim();
+                if (labels.putIfAbsent(label, statements.size() * ProgramImage.INSTRUCTION_BYTES) != null) {
+                    throw error(sourceName, n + 1, "duplicate label '" + label + "'");
+                }
+                line = line.substring(colon + 1).trim();
+            }
+            if (line.isEmpty()) continue;
+            statements.add(line.split("[\\s,]+"));
+            lineNumbers.add(n + 1);
+        }
+
+        List<Instruction> program = new ArrayList<>(statements.size());
+        for (int i = 0; i < statements.size(); i++) {
+            String[] tokens = statements.get(i);
+            int lineNumber = lineNumbers.get(i);
+            if (tokens.length > 3) {
+                throw error(sourceName, lineNumber, "too many operands");
+            }
+            InstructionSet opcode;
+            try {
+                opcode = InstructionSet.valueOf(tokens[0].toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw error(sourceName, lineNumber, "unknown instruction '" + tokens[0] + "'");
+            }
+            if (opcode.isInternal()) {
+                throw error(sourceName, lineNumber, "'" + tokens[0] + "' is internal to the optimizer");
+            }
+            int[] args = new int[3];
+            for (int operand = 1; operand <= 2; operand++) {
+                if (operand >= tokens.length) break;
+                args[operand] = operand(tokens[operand], labels, sourceName, lineNumber);
+                // a plain number names a register as well as rN does, and programs run
+                // from text never go through ProgramImage.map's check
+                if (opcode.isRegisterOperand(operand) && (args[operand] < 0 || args[operand] >= REGISTERS)) {
+                    throw error(sourceName, lineNumber, "no such register '" + tokens[operand]
+                        + "' as operand " + operand + " of " + opcode);
+                }
+            }
+            program.add(new Instruction(opcode, args[1], args[2]));
+        }
+        return ProgramImage.of(program);
+    }
+
+    private static String stripComment(String line) {
+        int semicolon = line.indexOf(';');
+        int hash = line.indexOf('#');
+        int end = semicolon < 0 ? hash : hash < 0 ? semicolon : Math.min(semicolon, hash);
+        return end < 0 ? line : line.substring(0, end);
+    }
+
+    private static boolean isIdentifier(String s) {
+        if (s.isEmpty() || !Character.isJavaIdentifierStart(s.charAt(0))) return false;
+        for (int i = 1; i < s.length(); i++) {
+            if (!Character.isJavaIdentifierPart(s.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    private static int operand(String token, Map<String, Integer> labels, String sourceName, int lineNumber) {
+        char first = Character.toLowerCase(token.charAt(0));
+        if (first == 'r' && token.length() > 1 && token.chars().skip(1).allMatch(Character::isDigit)) {
+            int register = Integer.parseInt(token.substring(1));
+            if (register >= REGISTERS) {
+                throw error(sourceName, lineNumber, "no such register '" + token + "'");
+            }
+            return register;
+        }
+        if (Character.isDigit(first) || first == '-' || first == '+') {
+            try {
+                return Integer.decode(token);
+            } catch (NumberFormatException e) {
+                throw error(sourceName, lineNumber, "bad number '" + token + "'");
+            }
+        }
+        Integer address = labels.get(token);
+        if (address == null) {
+            throw error(sourceName, lineNumber, "undefined label '" + token + "'");
+        }
+        return address;
+    }
+
+    private static IllegalArgumentException error(String sourceName, int lineNumber, String message) {
+        return new IllegalArgumentException(sourceName + ":" + lineNumber + ": " + message);
+    }
+
+    // java Assembler <source> <image>
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java Assembler <source> <image>");
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        ProgramImage image;
+        try {
+            image = assembleFile(Paths.get(args[0]));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        image.write(Paths.get(args[1]));
+        System.out.printf("Assembled %d instructions (%d bytes) in %.2f ms\n",
+            image.getInstructionCount(), image.getCodeBytes() + ProgramImage.HEADER_BYTES,
+            (System.nanoTime() - start) / 1e6);
+    }
+}
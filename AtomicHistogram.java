@@ -0,0 +1,26 @@
+import java.util.concurrent.atomic.*;
+
+// LatencyHistogram's log2 buckets for values recorded from many threads at once;
+// read it through snapshot()
+public class AtomicHistogram {
+    private final AtomicLongArray counts = new AtomicLongArray(LatencyHistogram.BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        long v = Math.max(value, 0);
+        counts.incrementAndGet(LatencyHistogram.bucket(v));
+        sum.add(v);
+        if (v > max.get()) {
+            max.accumulateAndGet(v, Math::max);
+        }
+    }
+
+    public LatencyHistogram snapshot() {
+        long[] copy = new long[LatencyHistogram.BUCKETS];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new LatencyHistogram(copy, sum.sum(), max.get());
+    }
+}
@@ -0,0 +1,273 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// headless runs of generated workloads. every run builds a fresh machine, loads the
+// generated programs, runs it with the console muted and prints one row of rates and
+// scheduling latency percentiles; comma separated process and frame counts are swept
+// as a grid, one row per pair, for scaling curves
+//
+//   java BatchRunner --mix cpu=4,random=2,alloc=1,lock=2,pingpong=1 \
+//       --processes 16,64,256,1024 --frames 64,256,1024 --csv scaling.csv
+public class BatchRunner {
+    private static final int PAGE_SIZE = 256;
+    private static final String DEFAULT_MIX = "cpu=4,random=1,strided=1,alloc=1,lock=2,pingpong=1";
+
+    private long seed = 1;
+    private Map<WorkloadGenerator.Kind, Integer> mix = WorkloadGenerator.parseMix(DEFAULT_MIX);
+    private int length = WorkloadGenerator.DEFAULT_LENGTH;
+    private int heapBytes = WorkloadGenerator.DEFAULT_HEAP_BYTES;
+    private int locks = WorkloadGenerator.DEFAULT_LOCKS;
+    private int[] processCounts = { 64 };
+    private int[] frameCounts = { MemoryManager.DEFAULT_PHYSICAL_PAGES };
+    private int cpuCount = 1;
+    private PageReplacementPolicy.Kind policyKind = PageReplacementPolicy.Kind.LRU;
+    private Scheduler.Kind schedulerKind = Scheduler.Kind.PRIORITY;
+    private int jitThreshold;
+    private boolean optimize;
+    private long workingSetWindow = WorkingSet.DEFAULT_WINDOW;
+    private boolean loadControl;
+    private int warmups = 1;
+    private String csvFile;
+
+    // one finished run
+    static final class Result {
+        int processes;
+        int frames;
+        long instructions;
+        long cycles;
+        long nanos;
+        long faults;
+        long switches;
+        long exited;
+        long failed;
+        long suspensions;
+        LatencyHistogram readyWait;
+        LatencyHistogram workingSets;
+
+        double perSecond(long count) {
+            return count * 1e9 / Math.max(nanos, 1);
+        }
+    }
+
+    public static void main(String[] args) {
+        BatchRunner runner = new BatchRunner();
+        try {
+            runner.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+        runner.sweep();
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "--mix":
+                    mix = WorkloadGenerator.parseMix(args[++i]);
+                    break;
+                case "--length":
+                    length = Integer.parseInt(args[++i]);
+                    break;
+                case "--heap":
+                    heapBytes = Integer.parseInt(args[++i]);
+                    break;
+                case "--locks":
+                    locks = Integer.parseInt(args[++i]);
+                    break;
+                case "--processes":
+                    processCounts = parseList(args[++i]);
+                    break;
+                case "--frames":
+                    frameCounts = parseList(args[++i]);
+                    break;
+                case "--cpus":
+                    cpuCount = Integer.parseInt(args[++i]);
+                    break;
+                case "--policy":
+                    policyKind = PageReplacementPolicy.Kind.valueOf(args[++i].toUpperCase());
+                    break;
+                case "--scheduler":
+                    schedulerKind = Scheduler.Kind.valueOf(args[++i].toUpperCase());
+                    break;
+                case "--jit":
+                    jitThreshold = JitCompiler.DEFAULT_THRESHOLD;
+                    break;
+                case "--jit-threshold":
+                    jitThreshold = Integer.parseInt(args[++i]);
+                    break;
+                case "--optimize":
+                    optimize = true;
+                    break;
+                case "--ws-window":
+                    workingSetWindow = Long.parseLong(args[++i]);
+                    break;
+                case "--load-control":
+                    loadControl = true;
+                    break;
+                case "--warmup":
+                    warmups = Integer.parseInt(args[++i]); // untimed runs of the first configuration
+                    break;
+                case "--csv":
+                    csvFile = args[++i];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+    }
+
+    private static int[] parseList(String list) {
+        int[] values = Arrays.stream(list.split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+        for (int value : values) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("Invalid count: " + value);
+            }
+        }
+        return values;
+    }
+
+    private void sweep() {
+        WorkloadGenerator generator = new WorkloadGenerator(seed, length, heapBytes, locks);
+        // every pair opens its channels at once, so a sweep keeps to the pairs the smallest
+        // machine in it has shared memory for and runs the same programs on every row
+        int maxPairs = WorkloadGenerator.maxPairs(
+            MemoryManager.sharedPagesAvailable(Arrays.stream(frameCounts).min().getAsInt()), PAGE_SIZE);
+        System.out.printf("Workload: seed %d, mix %s, %d instructions per program, %d CPUs, %s, %s%s%s%s\n",
+            seed, mix, length, cpuCount, policyKind, schedulerKind,
+            jitThreshold > 0 ? ", JIT threshold " + jitThreshold : "", optimize ? ", optimized" : "",
+            loadControl ? ", load control over " + workingSetWindow + " cycles" : "");
+        for (int i = 0; i < warmups; i++) {
+            run(generator.generate(mix, processCounts[0], maxPairs), frameCounts[0]);
+        }
+
+        System.out.printf("%9s %7s %12s %9s %9s %10s %10s %10s %7s %7s %7s %8s %6s %6s %8s\n",
+            "processes", "frames", "instructions", "wall ms", "Minstr/s", "faults/s", "switches/s",
+            "lat p50", "p90", "p99", "p99.9", "max", "failed", "ws p50", "suspends");
+        List<Result> results = new ArrayList<>();
+        for (int processes : processCounts) {
+            List<WorkloadGenerator.Program> programs = generator.generate(mix, processes, maxPairs);
+            int dropped = WorkloadGenerator.droppedPairs(mix, processes, maxPairs);
+            if (dropped > 0) {
+                System.out.printf("  %d processes: %d ping-pong pairs dealt as CPU processes, channels for "
+                    + "more than %d pairs do not fit in %d frames\n",
+                    processes, dropped, maxPairs, Arrays.stream(frameCounts).min().getAsInt());
+            }
+            for (int frames : frameCounts) {
+                Result r = run(programs, frames);
+                results.add(r);
+                System.out.printf("%9d %7d %12d %9.1f %9.3f %10.0f %10.0f %10d %7d %7d %7d %8d %6d %6d %8d\n",
+                    r.processes, r.frames, r.instructions, r.nanos / 1e6, r.perSecond(r.instructions) / 1e6,
+                    r.perSecond(r.faults), r.perSecond(r.switches), r.readyWait.getPercentile(50),
+                    r.readyWait.getPercentile(90), r.readyWait.getPercentile(99),
+                    r.readyWait.getPercentile(99.9), r.readyWait.getMax(), r.failed,
+                    r.workingSets.getPercentile(50), r.suspensions);
+                if (r.exited < r.processes) {
+                    System.out.printf("  %d processes never finished\n", r.processes - r.exited);
+                }
+            }
+        }
+        System.out.println("(scheduling latency is ready-queue wait in cycles, working sets are in pages)");
+        if (csvFile != null) {
+            writeCsv(results);
+        }
+    }
+
+    Result run(List<WorkloadGenerator.Program> programs, int frames) {
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            SwapStore swap = SwapStore.create(SwapStore.Kind.MEMORY, PAGE_SIZE, null);
+            MemoryManager memory = new MemoryManager(PAGE_SIZE, frames, FrameStore.Kind.HEAP, policyKind, swap);
+            MetricsRegistry metrics = new MetricsRegistry(true);
+            ProcessManager processManager = new ProcessManager(memory, Scheduler.create(schedulerKind), metrics);
+            processManager.setVerbose(false);
+            processManager.setWorkingSetWindow(workingSetWindow);
+            if (loadControl) {
+                processManager.attachLoadControl(new LoadControl(processManager));
+            }
+            if (jitThreshold > 0) {
+                processManager.attachJit(new JitCompiler(jitThreshold));
+            }
+            CPU[] cpus = new CPU[cpuCount];
+            for (int i = 0; i < cpuCount; i++) {
+                cpus[i] = new CPU(i, processManager, false, new TLB());
+            }
+            PeepholeOptimizer optimizer = optimize ? new PeepholeOptimizer(true) : null;
+            for (WorkloadGenerator.Program program : programs) {
+                ProgramImage image = optimizer == null ? program.image : optimizer.optimize(program.image);
+                processManager.createProcess(image, program.priority);
+            }
+
+            long startCycle = CPU.getClockCycleCount();
+            long start = System.nanoTime();
+            if (cpuCount == 1) {
+                cpus[0].run();
+            } else {
+                Thread[] threads = new Thread[cpuCount];
+                for (int i = 0; i < cpuCount; i++) {
+                    threads[i] = new Thread(cpus[i]::run, "cpu-" + i);
+                    threads[i].start();
+                }
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+            }
+            Result result = new Result();
+            result.nanos = System.nanoTime() - start;
+            result.cycles = CPU.getClockCycleCount() - startCycle;
+            result.processes = programs.size();
+            result.frames = frames;
+            for (CPU cpu : cpus) {
+                result.instructions += cpu.getInstructions();
+            }
+            result.faults = metrics.get(MetricsRegistry.Counter.PAGE_FAULTS);
+            result.switches = metrics.get(MetricsRegistry.Counter.CONTEXT_SWITCHES);
+            result.readyWait = metrics.getTimer(MetricsRegistry.Timer.READY_WAIT_CYCLES);
+            result.workingSets = metrics.getTimer(MetricsRegistry.Timer.WORKING_SET_PAGES);
+            result.suspensions = metrics.get(MetricsRegistry.Counter.SUSPENSIONS);
+            result.exited = processManager.getExitedProcesses();
+            result.failed = processManager.getFailedProcesses();
+            memory.close();
+            metrics.close();
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Batch run interrupted", e);
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    private void writeCsv(List<Result> results) {
+        StringBuilder csv = new StringBuilder("processes,frames,instructions,cycles,wall_ns,instructions_per_sec,"
+            + "faults_per_sec,switches_per_sec,latency_p50,latency_p90,latency_p99,latency_p999,latency_max,failed,"
+            + "working_set_p50,suspensions\n");
+        for (Result r : results) {
+            csv.append(r.processes).append(',').append(r.frames).append(',').append(r.instructions)
+                .append(',').append(r.cycles).append(',').append(r.nanos)
+                .append(',').append(Math.round(r.perSecond(r.instructions)))
+                .append(',').append(Math.round(r.perSecond(r.faults)))
+                .append(',').append(Math.round(r.perSecond(r.switches)))
+                .append(',').append(r.readyWait.getPercentile(50))
+                .append(',').append(r.readyWait.getPercentile(90))
+                .append(',').append(r.readyWait.getPercentile(99))
+                .append(',').append(r.readyWait.getPercentile(99.9))
+                .append(',').append(r.readyWait.getMax())
+                .append(',').append(r.failed)
+                .append(',').append(r.workingSets.getPercentile(50))
+                .append(',').append(r.suspensions).append('\n');
+        }
+        try {
+            Files.write(Paths.get(csvFile), csv.toString().getBytes(StandardCharsets.UTF_8));
+            System.out.println("Wrote " + results.size() + " rows to " + csvFile);
+        } catch (IOException e) {
+            System.err.println("Could not write '" + csvFile + "': " + e.getMessage());
+        }
+    }
+}
@@ -1,69 +1,228 @@
+import java.util.concurrent.atomic.*;
+
 public class CPU {
     public static final int IP_REGISTER = 11;
     public static final int SP_REGISTER = 13;
-    public static int clockCycleCount = 0;
+    // system-wide time; cores publish the cycles they ran when they leave a process
+    private static final AtomicLong clockCycleCount = new AtomicLong();
     
-    public static int[] registers = new int[16];
-    public static boolean signFlag;
-    public static boolean zeroFlag;
-    public static final boolean[] locks = new boolean[32];
-    public static final boolean[] events = new boolean[10];
+    private final int[] registers = new int[16];
+    private boolean signFlag;
+    private boolean zeroFlag;
+    private PCB currentProcess;
+    private int localCycles;
+    private int quantumCycles;
     
+    private final int cpuId;
     private final ProcessManager processManager;
     private final boolean debugMode;
+    private final TLB tlb;
+    private final MetricsRegistry metrics;
+    private TraceBuffer trace;
+    private long quantumStart;
+    private long channelMessages;
+    private long channelSleeps;
+    private long channelWakes;
+    private final JitCompiler jit;
+    private long instructions;
+    private long jitEntries;
+    private long jitInstructions;
 
     public CPU(ProcessManager pm, boolean debug) {
+        this(pm, debug, new TLB());
+    }
+
+    public CPU(ProcessManager pm, boolean debug, TLB tlb) {
+        this(0, pm, debug, tlb);
+    }
+
+    public CPU(int cpuId, ProcessManager pm, boolean debug, TLB tlb) {
+        this.cpuId = cpuId;
         this.processManager = pm;
         this.debugMode = debug;
+        this.tlb = tlb;
+        this.metrics = pm.getMetrics();
+        // compiled blocks skip the per-instruction debug output, so debugging stays interpreted
+        this.jit = debug ? null : pm.getJit();
+        pm.getMemoryManager().registerTlb(tlb);
         registers[SP_REGISTER] = 0xFF00;
     }
 
-    public static void releaseLock(int lockId) {
-        if (lockId >= 0 && lockId < locks.length) {
-            locks[lockId] = false;
-        }
+    public static long getClockCycleCount() { return clockCycleCount.get(); }
+
+    // lets an idle system skip straight to the next timer deadline
+    static void advanceClockTo(long cycle) {
+        clockCycleCount.accumulateAndGet(cycle, Math::max);
+    }
+
+    public int getCpuId() { return cpuId; }
+    public TLB getTlb() { return tlb; }
+    public int getLocalCycles() { return localCycles; }
+    public long getInstructions() { return instructions; }
+    int getQuantumCycles() { return quantumCycles; }
+    PCB getCurrentProcess() { return currentProcess; }
+    void setCurrentProcess(PCB process) { this.currentProcess = process; }
+
+    void saveContext(PCB process) {
+        process.saveRegisters(registers);
+        process.setSignFlag(signFlag);
+        process.setZeroFlag(zeroFlag);
+    }
+
+    void setRegister(int register, int value) {
+        registers[register] = value;
+    }
+
+    void restoreContext(PCB process) {
+        System.arraycopy(process.getRegisters(), 0, registers, 0, 16);
+        signFlag = process.getSignFlag();
+        zeroFlag = process.getZeroFlag();
+    }
+
+    // runs up to cycles instructions of process from its saved context, outside the dispatch
+    // loop and without moving the clock, so the interpreter can be driven on its own
+    public void runQuantum(PCB process, int cycles) {
+        restoreContext(process);
+        process.setTimeQuantum(cycles);
+        executeProcess(process);
+    }
+
+    private void tick(int cycles) {
+        localCycles += cycles;
+        clockCycleCount.addAndGet(cycles);
     }
 
     public void run() {
-        System.out.println("CPU starting execution cycle");
+        System.out.printf("CPU %d starting execution cycle\n", cpuId);
+        TraceLog log = processManager.getTrace();
+        trace = log == null ? null : log.buffer(cpuId);
         
         while (true) {
-            PCB process = processManager.getNextProcess();
+            PCB process = processManager.dispatch(this);
             if (process == null) {
-                System.out.println("No more processes in queue");
-                break;
+                if (!processManager.hasRunnableWork()) {
+                    System.out.printf("CPU %d: no more processes in queue\n", cpuId);
+                    break;
+                }
+                // either every process is asleep and the clock skips ahead, or other cores
+                // are still running processes that may wake sleepers or waiters
+                if (!processManager.idleUntilNextTimer()) {
+                    Thread.onSpinWait();
+                }
+                continue;
             }
 
             if (debugMode) {
-                System.out.printf("\n[Cycle %d] Switching to process %d (priority %d)\n", 
-                    clockCycleCount, process.getProcessId(), process.getPriority());
+                System.out.printf("\n[Cycle %d] CPU %d switched to process %d (priority %d)\n", 
+                    getClockCycleCount(), cpuId, process.getProcessId(), process.getPriority());
                 processManager.printProcessStates();
             }
 
-            processManager.contextSwitch(process);
+            if (trace != null) {
+                trace.record(getClockCycleCount(), TraceLog.Event.CONTEXT_SWITCH.ordinal(), process.getProcessId(),
+                    process.getPriority(), process.getTimeQuantum(), 0, 0);
+            }
+
             executeProcess(process);
-            clockCycleCount++;
+            if (trace != null && process.getState() == PCB.ProcessState.TERMINATED) {
+                trace.record(getClockCycleCount() + quantumCycles, TraceLog.Event.PROCESS_EXIT.ordinal(),
+                    process.getProcessId(), registers[IP_REGISTER], 0, 0, 0);
+            }
+            metrics.add(MetricsRegistry.Counter.INSTRUCTIONS_RETIRED, process, quantumCycles);
+            instructions += quantumCycles;
+            tick(quantumCycles + 1);
         }
+        processManager.release(this);
         
-        System.out.println("\nCPU execution completed");
-        System.out.printf("Total clock cycles: %d\n", clockCycleCount);
+        System.out.printf("\nCPU %d execution completed\n", cpuId);
+        System.out.printf("Total clock cycles: %d (%d on this CPU)\n", getClockCycleCount(), localCycles);
+        tlb.printStatistics();
+        InstructionCache icache = processManager.getMemoryManager().getInstructionCache();
+        System.out.printf("Instruction cache: %d decodes, %d invalidations\n",
+            icache.getDecodes(), icache.getInvalidations());
+        if (channelMessages > 0) {
+            long kernelEntries = channelSleeps + channelWakes;
+            System.out.printf("Channels: %d messages, %d sleeps, %d wakeups (%.1f messages per kernel entry, "
+                + "%.3f per cycle)\n", channelMessages, channelSleeps, channelWakes,
+                (double) channelMessages / Math.max(kernelEntries, 1), (double) channelMessages / Math.max(localCycles, 1));
+        }
+        if (jitEntries > 0) {
+            System.out.printf("JIT: %d compiled block entries, %d of %d instructions compiled (%.1f%%)\n",
+                jitEntries, jitInstructions, instructions, 100.0 * jitInstructions / Math.max(instructions, 1));
+        }
+    }
+
+    static void showRegister(int register, int value) {
+        System.out.printf("[OUTPUT] R%d = %d\n", register, value);
     }
 
     private void executeProcess(PCB process) {
         int ip = registers[IP_REGISTER];
+        MemoryManager memory = processManager.getMemoryManager();
+        int pid = process.getProcessId();
+        int pageSize = memory.getPageSize();
+        int codePageNumber = -1;
+        int[] code = null;
+        quantumCycles = 0;
+        quantumStart = getClockCycleCount();
+        // traced runs record every instruction, so they stay interpreted
+        JitCompiler jit = trace == null ? this.jit : null;
+        int jitRunEnd = -1;
         
         while (process.getTimeQuantum() > 0) {
-            clockCycleCount++;
+            quantumCycles++;
             
             try {
-                int opcodeVal = processManager.getMemoryManager()
-                    .readMemory(process.getProcessId(), ip);
-                int arg1 = processManager.getMemoryManager()
-                    .readMemory(process.getProcessId(), ip + 4);
-                int arg2 = processManager.getMemoryManager()
-                    .readMemory(process.getProcessId(), ip + 8);
-
-                InstructionSet opcode = InstructionSet.values()[opcodeVal];
+                // fetch from the decoded instruction cache, decoding from memory on a miss
+                if (ip / pageSize != codePageNumber) {
+                    codePageNumber = ip / pageSize;
+                    code = memory.decodedCodePage(tlb, pid, codePageNumber);
+                    process.updateWorkingSet(codePageNumber); // fetches hit the cache, not memory
+                }
+                int slot = ((ip % pageSize) >> 2) * InstructionCache.SLOT_INTS;
+                int opcodeVal;
+                int arg1;
+                int arg2;
+                if (code != null) {
+                    decode(memory, pid, code, slot, ip);
+                    opcodeVal = code[slot] - 1;
+                    arg1 = code[slot + 1];
+                    arg2 = code[slot + 2];
+                } else {
+                    opcodeVal = memory.readMemory(tlb, pid, ip);
+                    arg1 = memory.readMemory(tlb, pid, ip + 4);
+                    arg2 = memory.readMemory(tlb, pid, ip + 8);
+                }
+
+                // entering a run of register-only instructions: run it compiled once it is hot
+                if (jit != null && code != null) {
+                    int id = code[slot + InstructionCache.BLOCK_INT];
+                    if (id == 0 && ip >= jitRunEnd && JitCompiler.isCompilable(opcodeVal, arg1)) {
+                        int length = scanRun(memory, pid, code, slot, ip, pageSize);
+                        jitRunEnd = ip + length * 12;
+                        id = length > 1 ? jit.enter(code, slot, length) : 0;
+                        code[slot + InstructionCache.BLOCK_INT] = id;
+                    }
+                    if (id != 0) {
+                        int ran = jit.block(id).run(registers, process.getTimeQuantum());
+                        int last = slot + (ran - 1) * 3 * InstructionCache.SLOT_INTS;
+                        zeroFlag = registers[code[last + 1]] == 0;
+                        signFlag = registers[code[last + 1]] < 0;
+                        quantumCycles += ran - 1;
+                        jitEntries++;
+                        jitInstructions += ran;
+                        ip += ran * 12;
+                        registers[IP_REGISTER] = ip;
+                        process.setTimeQuantum(process.getTimeQuantum() - ran);
+                        continue;
+                    }
+                }
+
+                InstructionSet opcode = InstructionSet.fromOrdinal(opcodeVal);
+                if (trace != null) {
+                    trace.record(quantumStart + quantumCycles, TraceLog.Event.INSTRUCTION.ordinal(), pid,
+                        ip, opcodeVal, arg1, arg2);
+                }
                 
                 if (debugMode) {
                     System.out.printf("[%04d] Executing %-12s args: %3d, %3d | ", 
@@ -81,21 +240,40 @@ public class CPU {
                         registers[arg1] += arg2;
                         break;
                     case SHOW_REG:
-                        System.out.printf("[OUTPUT] R%d = %d\n", arg1, registers[arg1]);
+                        showRegister(arg1, registers[arg1]);
+                        break;
+                    case FUSED_LOAD:
+                    case FUSED_ADD:
+                    case FUSED_LOAD_SHOW:
+                    case FUSED_ADD_SHOW:
+                        // a folded run from PeepholeOptimizer; the common tail below steps
+                        // over its last instruction and charges one of its cycles
+                        int fusedRegister = PeepholeOptimizer.register(arg1);
+                        int covered = PeepholeOptimizer.length(arg1);
+                        int charged = PeepholeOptimizer.charge(arg1);
+                        boolean fusedLoad = opcode == InstructionSet.FUSED_LOAD || opcode == InstructionSet.FUSED_LOAD_SHOW;
+                        registers[fusedRegister] = fusedLoad ? arg2 : registers[fusedRegister] + arg2;
+                        if (opcode == InstructionSet.FUSED_LOAD_SHOW || opcode == InstructionSet.FUSED_ADD_SHOW) {
+                            showRegister(fusedRegister, registers[fusedRegister]);
+                        }
+                        ip += (covered - 1) * 12;
+                        quantumCycles += charged - 1;
+                        process.setTimeQuantum(process.getTimeQuantum() - (charged - 1));
+                        arg1 = fusedRegister;
                         break;
                     case SLEEP:
-                        process.setSleepCounter(arg1);
-                        process.saveRegisters(registers);
-                        processManager.addSleepingProcess(process);
+                        // the PCB must be complete before it is queued, another core may pick it up
+                        registers[IP_REGISTER] = ip + 12;
+                        process.setTimeQuantum(process.getTimeQuantum() - 1);
                         if (debugMode) {
-                            System.out.printf("Sleeping for %d cycles\n", process.getSleepCounter());
+                            System.out.printf("Sleeping for %d cycles\n", Math.max(arg1, 1));
                         }
-                        ip += 12;
-                        registers[IP_REGISTER] = ip;
-                        process.setTimeQuantum(process.getTimeQuantum() - 1);
+                        syscall(pid, opcode, arg1, arg2, 0);
+                        processManager.sleep(this, process, arg1);
                         return;
                     case TERMINATE:
-                        process.terminate();
+                        syscall(pid, opcode, arg1, arg2, 0);
+                        process.terminate(arg1);
                         process.saveRegisters(registers);
                         if (debugMode) {
                             System.out.println("Process terminated normally");
@@ -106,46 +284,163 @@ public class CPU {
                         int sharedAddr = processManager.getMemoryManager()
                             .mapSharedMemory(process.getProcessId(), arg1);
                         registers[arg2] = sharedAddr;
+                        syscall(pid, opcode, arg1, arg2, sharedAddr);
                         break;
                     case ACQUIRE_LOCK:
-                        if (arg1 >= 0 && arg1 < locks.length && !locks[arg1]) {
-                            locks[arg1] = true;
-                            process.addHeldLock(arg1);
+                        registers[IP_REGISTER] = ip + 12;
+                        process.setTimeQuantum(process.getTimeQuantum() - 1);
+                        LockManager.Result result = processManager.acquireLock(this, process, arg1,
+                            quantumStart + quantumCycles);
+                        metrics.lockAttempt(process, arg1, result == LockManager.Result.ACQUIRED);
+                        syscall(pid, opcode, arg1, arg2, result.ordinal());
+                        if (result == LockManager.Result.BLOCKED) {
+                            return;
+                        }
+                        if (result == LockManager.Result.SPIN) {
+                            // the owner is running elsewhere: burn a cycle and retry the instruction
+                            registers[IP_REGISTER] = ip;
+                            if (debugMode) {
+                                System.out.printf("Lock %d busy, spinning\n", arg1);
+                            }
+                            continue;
                         }
+                        process.setTimeQuantum(process.getTimeQuantum() + 1);
                         break;
                     case RELEASE_LOCK:
-                        if (arg1 >= 0 && arg1 < locks.length && 
-                            locks[arg1] && process.isHoldingLock(arg1)) {
-                            locks[arg1] = false;
-                            process.removeHeldLock(arg1);
-                        }
+                        processManager.releaseLock(process, arg1, quantumStart + quantumCycles);
+                        syscall(pid, opcode, arg1, arg2, 0);
                         break;
                     case SIGNAL_EVENT:
-                        if (arg1 >= 0 && arg1 < events.length) {
-                            events[arg1] = true;
-                            processManager.notifyEvent(arg1);
-                        }
+                        processManager.signalEvent(arg1);
+                        syscall(pid, opcode, arg1, arg2, 0);
                         break;
                     case WAIT_EVENT:
-                        if (arg1 >= 0 && arg1 < events.length && !events[arg1]) {
-                            process.setState(PCB.ProcessState.WAITING_EVENT);
-                            process.setWaitingEventId(arg1);
-                            process.saveRegisters(registers);
-                            processManager.addWaitingProcess(process);
-                            ip += 12;
+                    case EVENT_WAIT:
+                    case SEM_WAIT:
+                    case COND_WAIT:
+                        // WAIT_EVENT names one of the fixed events directly, the others take the
+                        // object id from a register
+                        int waitId = opcode == InstructionSet.WAIT_EVENT ? arg1 : registers[arg1];
+                        registers[IP_REGISTER] = ip + 12;
+                        process.setTimeQuantum(process.getTimeQuantum() - 1);
+                        boolean blocked = opcode == InstructionSet.COND_WAIT
+                            ? processManager.waitForCondition(this, process, waitId, arg2, quantumStart + quantumCycles)
+                            : processManager.waitForEvent(this, process, waitId);
+                        syscall(pid, opcode, waitId, arg2, blocked ? 1 : 0);
+                        if (blocked) {
+                            return;
+                        }
+                        process.setTimeQuantum(process.getTimeQuantum() + 1);
+                        break;
+                    case FORK:
+                        registers[IP_REGISTER] = ip + 12;
+                        registers[arg1] = processManager.fork(this, process, arg1);
+                        syscall(pid, opcode, arg1, arg2, registers[arg1]);
+                        break;
+                    case WAIT_CHILD:
+                        int childPid = registers[arg1];
+                        registers[IP_REGISTER] = ip + 12;
+                        process.setTimeQuantum(process.getTimeQuantum() - 1);
+                        boolean waiting = processManager.waitForChild(this, process, childPid, arg1, arg2);
+                        syscall(pid, opcode, childPid, arg2, waiting ? 1 : 0);
+                        if (waiting) {
+                            return;
+                        }
+                        process.setTimeQuantum(process.getTimeQuantum() + 1);
+                        break;
+                    case EVENT_CREATE:
+                    case SEM_CREATE:
+                    case COND_CREATE:
+                        SyncManager.Kind kind = opcode == InstructionSet.SEM_CREATE ? SyncManager.Kind.SEMAPHORE
+                            : opcode == InstructionSet.COND_CREATE ? SyncManager.Kind.CONDITION
+                            : arg2 != 0 ? SyncManager.Kind.AUTO_EVENT : SyncManager.Kind.MANUAL_EVENT;
+                        registers[arg1] = processManager.createSyncObject(kind, kind == SyncManager.Kind.SEMAPHORE ? arg2 : 0);
+                        syscall(pid, opcode, arg1, arg2, registers[arg1]);
+                        break;
+                    case EVENT_SET:
+                        processManager.signalEvent(registers[arg1]);
+                        syscall(pid, opcode, registers[arg1], arg2, 0);
+                        break;
+                    case EVENT_RESET:
+                        processManager.resetEvent(registers[arg1]);
+                        syscall(pid, opcode, registers[arg1], arg2, 0);
+                        break;
+                    case SEM_POST:
+                        processManager.postSemaphore(registers[arg1]);
+                        syscall(pid, opcode, registers[arg1], arg2, 0);
+                        break;
+                    case COND_SIGNAL:
+                    case COND_BROADCAST:
+                        processManager.notifyCondition(registers[arg1], opcode == InstructionSet.COND_BROADCAST);
+                        syscall(pid, opcode, registers[arg1], arg2, 0);
+                        break;
+                    case SYNC_DESTROY:
+                        boolean destroyed = processManager.destroySyncObject(registers[arg1]);
+                        syscall(pid, opcode, registers[arg1], arg2, destroyed ? 1 : 0);
+                        break;
+                    case SHM_MAP:
+                    case CHAN_OPEN:
+                        // arg2 holds the size in bytes or the capacity in messages on the way
+                        // in and the mapped address, or -1, on the way out
+                        int key = registers[arg1];
+                        registers[arg2] = opcode == InstructionSet.SHM_MAP
+                            ? memory.mapSharedRegion(pid, key, registers[arg2])
+                            : processManager.openChannel(this, process, key, registers[arg2]);
+                        syscall(pid, opcode, key, arg2, registers[arg2]);
+                        break;
+                    case SHM_UNMAP:
+                        boolean unmapped = processManager.unmapSharedRegion(pid, registers[arg1]);
+                        codePageNumber = -1;
+                        syscall(pid, opcode, registers[arg1], arg2, unmapped ? 1 : 0);
+                        break;
+                    case SEND:
+                    case RECV:
+                        boolean send = opcode == InstructionSet.SEND;
+                        int channel = registers[arg1];
+                        if (channel < 0) {
+                            // the -1 a failed CHAN_OPEN leaves behind
+                            throw new RuntimeException("No channel open in r" + arg1 + " for " + opcode);
+                        }
+                        long transfer = send ? Channel.send(memory, tlb, pid, channel, registers[arg2])
+                            : Channel.receive(memory, tlb, pid, channel);
+                        if (transfer == Channel.PEER_GONE) {
+                            throw new RuntimeException("Channel at address " + channel + " has no peer");
+                        }
+                        if (transfer == Channel.WOULD_BLOCK) {
+                            // the ring is full or empty: sleep until the peer moves, then run
+                            // the instruction again
                             registers[IP_REGISTER] = ip;
                             process.setTimeQuantum(process.getTimeQuantum() - 1);
-                            return;
+                            int event = Channel.prepareWait(memory, tlb, pid, channel, send);
+                            if (event >= 0 && processManager.waitForChannel(this, process, event)) {
+                                channelSleeps++;
+                                syscall(pid, opcode, channel, event, 1);
+                                return;
+                            }
+                            continue;
+                        }
+                        if (!send) {
+                            registers[arg2] = Channel.value(transfer);
+                        }
+                        int wake = Channel.wakeEvent(transfer);
+                        if (wake >= 0) {
+                            processManager.signalChannel(wake);
+                            channelWakes++;
+                            syscall(pid, opcode, channel, wake, 0);
                         }
+                        channelMessages++;
                         break;
                     case ALLOC:
                         int size = registers[arg1];
                         int address = processManager.getMemoryManager().allocateHeap(process, size);
                         registers[arg2] = (address != 0) ? address : 0;
+                        syscall(pid, opcode, arg1, arg2, address);
                         break;
                     case FREE_MEMORY:
                         int addrToFree = registers[arg1];
                         processManager.getMemoryManager().freeHeap(process, addrToFree);
+                        codePageNumber = -1;
+                        syscall(pid, opcode, arg1, arg2, addrToFree);
                         break;
                     case MEMORY_STATS:
                         processManager.getMemoryManager().printMemoryStats();
@@ -154,18 +449,27 @@ public class CPU {
                         try {
                             int writeAddress = registers[arg1];
                             int value = registers[arg2];
-                            processManager.getMemoryManager().writeMemory(process.getProcessId(), writeAddress, value);
+                            processManager.getMemoryManager().writeMemory(tlb, process.getProcessId(), writeAddress, value);
+                            // the write invalidated the decoded copy of its page and the one
+                            // before, and putting back a superinstruction's first instruction
+                            // may reach a page further; if the code page was evicted since it
+                            // was fetched, the array held here is no longer the one cleared
+                            int writePage = writeAddress / pageSize;
+                            if (writePage >= codePageNumber && writePage <= codePageNumber + 2) {
+                                codePageNumber = -1;
+                            }
                             if (debugMode) {
                                 System.out.printf(" | Wrote %d to address %d", value, writeAddress);
                             }
                         } catch (RuntimeException e) {
                             System.out.println("\nMemory write failed: " + e.getMessage());
-                            process.setState(PCB.ProcessState.TERMINATED);
+                            process.terminate(-1);
+                            return;
                         }
                         break;
                     default:
                         System.out.println("Unknown opcode: " + opcode);
-                        process.setState(PCB.ProcessState.TERMINATED);
+                        process.terminate(-1);
                         return;
                 }
 
@@ -183,7 +487,7 @@ public class CPU {
 
             } catch (Exception e) {
                 System.out.println("\nCPU Exception: " + e.getMessage());
-                process.setState(PCB.ProcessState.TERMINATED);
+                process.terminate(-1);
                 break;
             }
         }
@@ -194,4 +498,36 @@ public class CPU {
             process.printStatistics();
         }
     }
-}
\ No newline at end of file
+
+    // fills a decoded slot from memory on a miss
+    private void decode(MemoryManager memory, int pid, int[] code, int slot, int address) {
+        if (code[slot] != 0) return;
+        int opcode = memory.readMemory(tlb, pid, address);
+        code[slot + 1] = memory.readMemory(tlb, pid, address + 4);
+        code[slot + 2] = memory.readMemory(tlb, pid, address + 8);
+        code[slot] = opcode + 1;
+        memory.getInstructionCache().recordDecode();
+    }
+
+    // the number of compilable instructions from ip on, decoding ahead as it goes;
+    // a run ends at the first instruction that is not compilable or leaves the page
+    private int scanRun(MemoryManager memory, int pid, int[] code, int slot, int ip, int pageSize) {
+        int length = 0;
+        int pageEnd = ip - ip % pageSize + pageSize;
+        for (int address = ip; length < JitCompiler.MAX_BLOCK_INSTRUCTIONS && address + 12 <= pageEnd;
+                address += 12) {
+            int s = slot + length * 3 * InstructionCache.SLOT_INTS;
+            decode(memory, pid, code, s, address);
+            if (!JitCompiler.isCompilable(code[s] - 1, code[s + 1])) break;
+            length++;
+        }
+        return length;
+    }
+
+    private void syscall(int pid, InstructionSet opcode, int arg1, int arg2, int result) {
+        if (trace != null) {
+            trace.record(quantumStart + quantumCycles, TraceLog.Event.SYSCALL.ordinal(), pid,
+                opcode.ordinal(), arg1, arg2, result);
+        }
+    }
+}
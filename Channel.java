@@ -0,0 +1,117 @@
+// single producer, single consumer ring of ints laid out in a shared memory region, so
+// SEND and RECV move a message with a few volatile loads and stores and no kernel call.
+// the kernel is entered only to sleep on a full or empty ring and to wake the peer that
+// went to sleep, which happens on the full or empty transition rather than per message.
+// a channel has two ends: once either process lets go of it, by unmapping it or exiting,
+// the kernel marks it closed and wakes the other, whose SEND and RECV then fail instead of
+// sleeping for a peer that is gone. messages already in the ring can still be received.
+// a peer that has not opened the channel yet looks no different from one that never will
+public final class Channel {
+    public static final int MAX_CAPACITY = 1 << 20;
+    // header words; head and tail are free running counters, the slot index is counter & mask
+    private static final int HEAD = 0;
+    private static final int TAIL = 4;
+    private static final int MASK = 8;
+    private static final int CONSUMER_WAITING = 12;
+    private static final int PRODUCER_WAITING = 16;
+    private static final int NOT_EMPTY_EVENT = 20;
+    private static final int NOT_FULL_EVENT = 24;
+    private static final int CLOSED = 28;
+    private static final int DATA = 32;
+
+    // send and receive results: the received value in the low word and, above it, one
+    // more than the id of the event to set for a sleeping peer, or 0 if nobody sleeps
+    public static final long WOULD_BLOCK = Long.MIN_VALUE;
+    public static final long PEER_GONE = Long.MIN_VALUE + 1;
+
+    private Channel() {
+    }
+
+    public static int bytes(int capacity) {
+        return DATA + capacity * 4;
+    }
+
+    public static boolean isValidCapacity(int capacity) {
+        return capacity > 0 && capacity <= MAX_CAPACITY && Integer.bitCount(capacity) == 1;
+    }
+
+    static void initialize(MemoryManager memory, TLB tlb, int pid, int channel, int capacity,
+                           int notEmptyEvent, int notFullEvent) {
+        memory.writeShared(tlb, pid, channel + HEAD, 0);
+        memory.writeShared(tlb, pid, channel + TAIL, 0);
+        memory.writeShared(tlb, pid, channel + CONSUMER_WAITING, 0);
+        memory.writeShared(tlb, pid, channel + PRODUCER_WAITING, 0);
+        memory.writeShared(tlb, pid, channel + CLOSED, 0);
+        memory.writeShared(tlb, pid, channel + NOT_EMPTY_EVENT, notEmptyEvent);
+        memory.writeShared(tlb, pid, channel + NOT_FULL_EVENT, notFullEvent);
+        memory.writeShared(tlb, pid, channel + MASK, capacity - 1);
+    }
+
+    static long send(MemoryManager memory, TLB tlb, int pid, int channel, int value) {
+        int mask = mask(memory, tlb, pid, channel);
+        if (memory.readShared(tlb, pid, channel + CLOSED) != 0) return PEER_GONE;
+        int tail = memory.readShared(tlb, pid, channel + TAIL);
+        if (tail - memory.readShared(tlb, pid, channel + HEAD) > mask) return WOULD_BLOCK;
+        memory.writeShared(tlb, pid, channel + DATA + (tail & mask) * 4, value);
+        // the volatile tail store publishes the slot written above
+        memory.writeShared(tlb, pid, channel + TAIL, tail + 1);
+        return wakePeer(memory, tlb, pid, channel, CONSUMER_WAITING, NOT_EMPTY_EVENT) << 32;
+    }
+
+    static long receive(MemoryManager memory, TLB tlb, int pid, int channel) {
+        int mask = mask(memory, tlb, pid, channel);
+        int head = memory.readShared(tlb, pid, channel + HEAD);
+        if (head == memory.readShared(tlb, pid, channel + TAIL)) {
+            return memory.readShared(tlb, pid, channel + CLOSED) != 0 ? PEER_GONE : WOULD_BLOCK;
+        }
+        int value = memory.readShared(tlb, pid, channel + DATA + (head & mask) * 4);
+        memory.writeShared(tlb, pid, channel + HEAD, head + 1);
+        return wakePeer(memory, tlb, pid, channel, PRODUCER_WAITING, NOT_FULL_EVENT) << 32
+            | (value & 0xFFFFFFFFL);
+    }
+
+    public static int value(long result) {
+        return (int) result;
+    }
+
+    // -1 when no peer needs waking
+    public static int wakeEvent(long result) {
+        return (int) (result >>> 32) - 1;
+    }
+
+    // announces that the caller is about to sleep, then looks at the ring once more so a
+    // peer that moved or went away in between is not missed. returns the event to sleep
+    // on, or -1 if the operation can be retried straight away
+    static int prepareWait(MemoryManager memory, TLB tlb, int pid, int channel, boolean send) {
+        int flag = channel + (send ? PRODUCER_WAITING : CONSUMER_WAITING);
+        memory.writeShared(tlb, pid, flag, 1);
+        int head = memory.readShared(tlb, pid, channel + HEAD);
+        int tail = memory.readShared(tlb, pid, channel + TAIL);
+        boolean blocked = send ? tail - head > mask(memory, tlb, pid, channel) : head == tail;
+        if (!blocked || memory.readShared(tlb, pid, channel + CLOSED) != 0) {
+            memory.writeShared(tlb, pid, flag, 0);
+            return -1;
+        }
+        return memory.readShared(tlb, pid, channel + (send ? NOT_FULL_EVENT : NOT_EMPTY_EVENT));
+    }
+
+    // called by the kernel for the region named key once one end has let go of it
+    static void close(MemoryManager memory, int key) {
+        memory.writeSharedRegion(key, CLOSED, 1);
+    }
+
+    private static long wakePeer(MemoryManager memory, TLB tlb, int pid, int channel,
+                                 int flag, int event) {
+        if (memory.readShared(tlb, pid, channel + flag) == 0) return 0;
+        memory.writeShared(tlb, pid, channel + flag, 0);
+        return memory.readShared(tlb, pid, channel + event) + 1L;
+    }
+
+    private static int mask(MemoryManager memory, TLB tlb, int pid, int channel) {
+        int mask = memory.readShared(tlb, pid, channel + MASK);
+        if (mask < 0 || mask >= MAX_CAPACITY || (mask & (mask + 1)) != 0) {
+            throw new RuntimeException("No channel at address " + channel);
+        }
+        return mask;
+    }
+}
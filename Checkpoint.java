@@ -0,0 +1,316 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// periodic snapshots of the whole machine: the clock, every PCB with its registers and
+// flags, the scheduler, timer, lock and sync object queues, page tables, frame metadata,
+// heaps, frames and swap. checkpoint n goes to <base>.n; a full one holds every frame,
+// the ones in between only the frames and swap pages written since the checkpoint before
+// them and name that file as their parent. snapshots are taken with every process off
+// its CPU, so CPU registers live in the PCBs. statistics are not saved and restart at 0
+public class Checkpoint {
+    public static final int MAGIC = 0x4F53434B; // "OSCK"
+    public static final int VERSION = 3;
+    public static final int DEFAULT_FULL_INTERVAL = 8;
+    private static final int HEADER_BYTES = 64;
+    private static final int FULL = 0;
+    private static final int INCREMENTAL = 1;
+
+    enum Section { PROCESSES, MEMORY, FRAMES, SWAP }
+
+    private final Path base;
+    private final long intervalCycles;
+    private final int fullInterval;
+    private long nextCycle;
+    private int sequence;
+    private Path previous;
+
+    public Checkpoint(Path base, long intervalCycles) {
+        this(base, intervalCycles, DEFAULT_FULL_INTERVAL);
+    }
+
+    // every fullInterval-th checkpoint is a full one, which bounds the chain a restore reads
+    public Checkpoint(Path base, long intervalCycles, int fullInterval) {
+        if (intervalCycles <= 0 || fullInterval <= 0) {
+            throw new IllegalArgumentException("Invalid checkpoint interval: " + intervalCycles
+                + " cycles, full every " + fullInterval);
+        }
+        this.base = base;
+        this.intervalCycles = intervalCycles;
+        this.fullInterval = fullInterval;
+        this.nextCycle = CPU.getClockCycleCount() + intervalCycles;
+    }
+
+    boolean isDue(long now) {
+        return now >= nextCycle;
+    }
+
+    // called under the ProcessManager monitor once no process is on a CPU; the image is
+    // built in memory so the memory locks are only held for the copy, not the disk write
+    void write(ProcessManager pm) {
+        long start = System.nanoTime();
+        long now = CPU.getClockCycleCount();
+        nextCycle = now + intervalCycles;
+        boolean full = previous == null || sequence % fullInterval == 0;
+        Path file = Paths.get(base + "." + sequence);
+
+        Output out = new Output();
+        out.reserve(HEADER_BYTES);
+        out.putBytes(full ? new byte[0] : previous.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+        out.section(Section.PROCESSES);
+        pm.save(out);
+        MemoryManager memory = pm.getMemoryManager();
+        int pages = memory.save(out, full);
+
+        ByteBuffer image = out.finish();
+        image.putInt(0, MAGIC);
+        image.putInt(4, VERSION);
+        image.putInt(8, full ? FULL : INCREMENTAL);
+        image.putInt(12, memory.getPageSize());
+        image.putInt(16, memory.getFrameStore().getFrameCount());
+        image.putInt(20, sequence);
+        image.putLong(24, now);
+        for (Section section : Section.values()) {
+            image.putLong(32 + section.ordinal() * 8, out.sections[section.ordinal()]);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (image.hasRemaining()) {
+                channel.write(image);
+            }
+        } catch (IOException e) {
+            System.out.println("Checkpoint to " + file + " failed: " + e.getMessage());
+            return;
+        }
+        System.out.printf("Checkpoint %d (%s) at cycle %d: %d pages, %d B in %.2f ms\n",
+            sequence, full ? "full" : "incremental", now, pages, image.limit(),
+            (System.nanoTime() - start) / 1e6);
+        previous = file;
+        sequence++;
+    }
+
+    public static Input open(Path file) throws IOException {
+        return new Input(file);
+    }
+
+    // loads a snapshot into a freshly built, not yet running system whose memory manager
+    // has the snapshot's geometry; incremental snapshots pull in their parents as well
+    public static void restore(Input snapshot, ProcessManager pm) throws IOException {
+        long start = System.nanoTime();
+        ArrayDeque<Input> chain = new ArrayDeque<>();
+        chain.addFirst(snapshot);
+        try {
+            for (Input in = snapshot; !in.isFull(); ) {
+                Input parent = open(in.file.resolveSibling(in.parent));
+                chain.addFirst(parent);
+                if (parent.pageSize != in.pageSize || parent.frameCount != in.frameCount
+                        || parent.sequence >= in.sequence) {
+                    throw new IOException("Checkpoint " + parent.file + " is not the parent of " + in.file);
+                }
+                in = parent;
+            }
+            pm.getMemoryManager().restore(new ArrayList<>(chain));
+            snapshot.seek(Section.PROCESSES);
+            pm.restore(snapshot);
+        } finally {
+            for (Input in : chain) {
+                in.close();
+            }
+        }
+        System.out.printf("Restored %s at cycle %d from %d files in %.2f ms\n",
+            snapshot.file, snapshot.cycle, chain.size(), (System.nanoTime() - start) / 1e6);
+    }
+
+    // a growing image of the file; every position in it is the file offset
+    static final class Output {
+        private ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        private final long[] sections = new long[Section.values().length];
+
+        void section(Section section) {
+            sections[section.ordinal()] = buffer.position();
+        }
+
+        long sectionOffset(Section section) {
+            return sections[section.ordinal()];
+        }
+
+        // skips bytes and returns where they start, for bulk copies straight into the image
+        int reserve(int bytes) {
+            ensure(bytes);
+            int index = buffer.position();
+            buffer.position(index + bytes);
+            return index;
+        }
+
+        void align(int bytes) {
+            reserve((bytes - buffer.position() % bytes) % bytes);
+        }
+
+        ByteBuffer buffer() { return buffer; }
+
+        void putInt(int value) {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void putBoolean(boolean value) {
+            ensure(1);
+            buffer.put(value ? (byte) 1 : 0);
+        }
+
+        void putInts(int[] values) {
+            putInts(values, values.length);
+        }
+
+        void putInts(int[] values, int count) {
+            putInt(count);
+            ensure(count * 4);
+            buffer.asIntBuffer().put(values, 0, count);
+            buffer.position(buffer.position() + count * 4);
+        }
+
+        void putLongs(long[] values, int count) {
+            putInt(count);
+            ensure(count * 8);
+            buffer.asLongBuffer().put(values, 0, count);
+            buffer.position(buffer.position() + count * 8);
+        }
+
+        void putBytes(byte[] values) {
+            putInt(values.length);
+            ensure(values.length);
+            buffer.put(values);
+        }
+
+        void putBooleans(boolean[] values) {
+            byte[] bytes = new byte[values.length];
+            for (int i = 0; i < values.length; i++) {
+                bytes[i] = values[i] ? (byte) 1 : 0;
+            }
+            putBytes(bytes);
+        }
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+        }
+
+        ByteBuffer finish() {
+            ByteBuffer image = buffer.duplicate();
+            image.flip();
+            return image;
+        }
+    }
+
+    // a snapshot file mapped read only, read from the current position of one section
+    public static final class Input implements Closeable {
+        private final Path file;
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final boolean full;
+        private final int pageSize;
+        private final int frameCount;
+        private final int sequence;
+        private final long cycle;
+        private final long[] sections = new long[Section.values().length];
+        private final String parent;
+
+        private Input(Path file) throws IOException {
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+                    throw new IOException(file + " is not a checkpoint");
+                }
+                if (buffer.getInt(4) != VERSION) {
+                    throw new IOException(file + " has unsupported checkpoint version " + buffer.getInt(4));
+                }
+                this.full = buffer.getInt(8) == FULL;
+                this.pageSize = buffer.getInt(12);
+                this.frameCount = buffer.getInt(16);
+                this.sequence = buffer.getInt(20);
+                this.cycle = buffer.getLong(24);
+                for (Section section : Section.values()) {
+                    sections[section.ordinal()] = buffer.getLong(32 + section.ordinal() * 8);
+                }
+                buffer.position(HEADER_BYTES);
+                this.parent = new String(getBytes(), StandardCharsets.UTF_8);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        public int getPageSize() { return pageSize; }
+        public int getFrameCount() { return frameCount; }
+        public long getCycle() { return cycle; }
+        boolean isFull() { return full; }
+        Path file() { return file; }
+        ByteBuffer buffer() { return buffer; }
+
+        long sectionOffset(Section section) {
+            return sections[section.ordinal()];
+        }
+
+        void seek(Section section) {
+            buffer.position((int) sections[section.ordinal()]);
+        }
+
+        // skips bytes and returns where they start, for bulk copies straight out of the file
+        int skip(int bytes) {
+            int index = buffer.position();
+            buffer.position(index + bytes);
+            return index;
+        }
+
+        int getInt() { return buffer.getInt(); }
+        long getLong() { return buffer.getLong(); }
+        boolean getBoolean() { return buffer.get() != 0; }
+
+        int[] getInts() {
+            int[] values = new int[buffer.getInt()];
+            buffer.asIntBuffer().get(values);
+            buffer.position(buffer.position() + values.length * 4);
+            return values;
+        }
+
+        long[] getLongs() {
+            long[] values = new long[buffer.getInt()];
+            buffer.asLongBuffer().get(values);
+            buffer.position(buffer.position() + values.length * 8);
+            return values;
+        }
+
+        byte[] getBytes() {
+            byte[] values = new byte[buffer.getInt()];
+            buffer.get(values);
+            return values;
+        }
+
+        boolean[] getBooleans() {
+            byte[] bytes = getBytes();
+            boolean[] values = new boolean[bytes.length];
+            for (int i = 0; i < bytes.length; i++) {
+                values[i] = bytes[i] != 0;
+            }
+            return values;
+        }
+
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
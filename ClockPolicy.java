@@ -0,0 +1,53 @@
+import java.util.*;
+
+// second-chance replacement: the hand clears reference bits until it finds an unreferenced frame
+public class ClockPolicy implements PageReplacementPolicy {
+    private final boolean[] resident;
+    private final boolean[] referenced;
+    private int residentCount;
+    private int hand;
+
+    public ClockPolicy(int frameCount) {
+        this.resident = new boolean[frameCount];
+        this.referenced = new boolean[frameCount];
+    }
+
+    public Kind getKind() { return Kind.CLOCK; }
+
+    public void pageLoaded(int frame, long key) {
+        if (!resident[frame]) {
+            resident[frame] = true;
+            residentCount++;
+        }
+        referenced[frame] = true;
+    }
+
+    public void pageAccessed(int frame) {
+        referenced[frame] = true;
+    }
+
+    public int selectVictim(long incomingKey) {
+        if (residentCount == 0) {
+            throw new NoSuchElementException("No resident frames to evict");
+        }
+        while (true) {
+            int frame = hand;
+            hand = (hand + 1) % resident.length;
+            if (!resident[frame]) continue;
+            if (referenced[frame]) {
+                referenced[frame] = false;
+            } else {
+                pageRemoved(frame);
+                return frame;
+            }
+        }
+    }
+
+    public void pageRemoved(int frame) {
+        if (resident[frame]) {
+            resident[frame] = false;
+            referenced[frame] = false;
+            residentCount--;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+// swap in a sparse file, mapped a region at a time so pages are copied straight
+// between frames and the page cache without passing through the Java heap
+public class FileSwapStore implements SwapStore {
+    private static final long REGION_BYTES = 64L << 20;
+
+    private final int pageSize;
+    private final int slotsPerRegion;
+    private final FileChannel channel;
+    private final SwapSlotAllocator slots;
+    private MappedByteBuffer[] regions = new MappedByteBuffer[4];
+
+    FileSwapStore(int pageSize, Path file) throws IOException {
+        if (REGION_BYTES % pageSize != 0) {
+            throw new IllegalArgumentException("Swap page size must divide the region size: " + pageSize);
+        }
+        this.pageSize = pageSize;
+        this.slotsPerRegion = (int) (REGION_BYTES / pageSize);
+        this.slots = new SwapSlotAllocator(PageTable.NUMBER_MASK + 1);
+        // the contents only mean something to this run
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    public Kind getKind() { return Kind.FILE; }
+    public int getPageSize() { return pageSize; }
+
+    public int allocateSlot() {
+        return slots.allocate();
+    }
+
+    public void freeSlot(int slot) {
+        slots.free(slot);
+    }
+
+    public int getUsedSlots() { return slots.getUsedSlots(); }
+    public int getCapacitySlots() { return slots.getMaxSlots(); }
+
+    public void writePage(int slot, FrameStore frames, int frame) {
+        frames.readFrame(frame, region(slot), (slot % slotsPerRegion) * pageSize);
+    }
+
+    public void readPage(int slot, FrameStore frames, int frame) {
+        frames.writeFrame(frame, region(slot), (slot % slotsPerRegion) * pageSize);
+    }
+
+    public void saveSlot(int slot, ByteBuffer dst, int dstIndex) {
+        dst.put(dstIndex, region(slot), (slot % slotsPerRegion) * pageSize, pageSize);
+    }
+
+    public void loadSlot(int slot, ByteBuffer src, int srcIndex) {
+        region(slot).put((slot % slotsPerRegion) * pageSize, src, srcIndex, pageSize);
+    }
+
+    // mapping a region past the end of the file grows it sparsely
+    private MappedByteBuffer region(int slot) {
+        int index = slot / slotsPerRegion;
+        if (index >= regions.length) {
+            regions = Arrays.copyOf(regions, Math.max(index + 1, regions.length * 2));
+        }
+        MappedByteBuffer region = regions[index];
+        if (region == null) {
+            try {
+                region = channel.map(FileChannel.MapMode.READ_WRITE, index * REGION_BYTES, REGION_BYTES);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot map swap region " + index, e);
+            }
+            regions[index] = region;
+        }
+        return region;
+    }
+
+    public void close() {
+        Arrays.fill(regions, null);
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+import java.util.*;
+
+// intrusive doubly linked list of frame numbers, head is the most recently inserted
+public class FrameList {
+    private static final int NONE = -1;
+
+    private final int[] prev;
+    private final int[] next;
+    private final boolean[] linked;
+    private int head = NONE;
+    private int tail = NONE;
+    private int size;
+
+    public FrameList(int frameCount) {
+        this.prev = new int[frameCount];
+        this.next = new int[frameCount];
+        this.linked = new boolean[frameCount];
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public boolean contains(int frame) { return linked[frame]; }
+    public int peekLast() { return tail; }
+
+    public void addFirst(int frame) {
+        prev[frame] = NONE;
+        next[frame] = head;
+        if (head != NONE) {
+            prev[head] = frame;
+        } else {
+            tail = frame;
+        }
+        head = frame;
+        linked[frame] = true;
+        size++;
+    }
+
+    public void remove(int frame) {
+        if (!linked[frame]) return;
+        if (prev[frame] != NONE) {
+            next[prev[frame]] = next[frame];
+        } else {
+            head = next[frame];
+        }
+        if (next[frame] != NONE) {
+            prev[next[frame]] = prev[frame];
+        } else {
+            tail = prev[frame];
+        }
+        linked[frame] = false;
+        size--;
+    }
+
+    public void moveToFront(int frame) {
+        if (head == frame) return;
+        remove(frame);
+        addFirst(frame);
+    }
+
+    public int removeLast() {
+        int frame = tail;
+        if (frame == NONE) {
+            throw new NoSuchElementException("Frame list is empty");
+        }
+        remove(frame);
+        return frame;
+    }
+}
@@ -0,0 +1,70 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+public interface FrameStore {
+    enum Kind { HEAP, OFF_HEAP }
+
+    static FrameStore create(Kind kind, int frameCount, int pageSize) {
+        if (frameCount <= 0 || pageSize <= 0 || pageSize % 4 != 0) {
+            throw new IllegalArgumentException("Invalid frame store geometry: "
+                + frameCount + " frames of " + pageSize + " bytes");
+        }
+        int capacity = Math.multiplyExact(frameCount, pageSize);
+        switch (kind) {
+            case OFF_HEAP:
+                return new OffHeapFrameStore(frameCount, pageSize, capacity);
+            case HEAP:
+            default:
+                return new HeapFrameStore(frameCount, pageSize, capacity);
+        }
+    }
+
+    // frames saved back to back at position in file: off-heap frames map the file privately,
+    // so pages are only read in as they are touched and writes never reach the file
+    static FrameStore restore(Kind kind, int frameCount, int pageSize, Path file, long position)
+            throws IOException {
+        int capacity = Math.multiplyExact(frameCount, pageSize);
+        if (kind == Kind.OFF_HEAP) {
+            // a private mapping still needs a channel opened for writing
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return new OffHeapFrameStore(frameCount, pageSize,
+                    channel.map(FileChannel.MapMode.PRIVATE, position, capacity));
+            }
+        }
+        HeapFrameStore frames = new HeapFrameStore(frameCount, pageSize, capacity);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            frames.load(channel, position);
+        }
+        return frames;
+    }
+
+    Kind getKind();
+    int getFrameCount();
+    int getPageSize();
+
+    // word access, offset is a byte offset inside the frame
+    int readInt(int frame, int offset);
+    void writeInt(int frame, int offset, int value);
+
+    // sequentially consistent word access for memory CPUs share without a lock
+    int readIntVolatile(int frame, int offset);
+    void writeIntVolatile(int frame, int offset, int value);
+
+    void clearFrame(int frame);
+    void copyFrame(int srcFrame, int dstFrame);
+    void readFrame(int frame, byte[] dst, int dstOffset);
+    void writeFrame(int frame, byte[] src, int srcOffset);
+
+    // absolute bulk copies, so swap can move pages straight between buffers
+    void readFrame(int frame, ByteBuffer dst, int dstIndex);
+    void writeFrame(int frame, ByteBuffer src, int srcIndex, int length);
+
+    // true if frame was written since the previous call for it, for incremental checkpoints
+    boolean takeModified(int frame);
+
+    default void writeFrame(int frame, ByteBuffer src, int srcIndex) {
+        writeFrame(frame, src, srcIndex, getPageSize());
+    }
+}
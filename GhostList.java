@@ -0,0 +1,127 @@
+import java.util.*;
+
+// bounded LRU list of page keys that are no longer resident, with O(1) membership tests
+public class GhostList {
+    private static final int NONE = -1;
+
+    private final long[] keys;
+    private final int[] prev;
+    private final int[] next;
+    private final int[] index;
+    private final int indexMask;
+    private int freeHead;
+    private int head = NONE;
+    private int tail = NONE;
+    private int size;
+
+    public GhostList(int capacity) {
+        int cap = Math.max(capacity, 1);
+        this.keys = new long[cap];
+        this.prev = new int[cap];
+        this.next = new int[cap];
+        for (int i = 0; i < cap; i++) {
+            next[i] = i + 1 < cap ? i + 1 : NONE;
+        }
+        this.freeHead = 0;
+        int tableSize = Integer.highestOneBit(cap * 2 - 1) << 1;
+        this.index = new int[tableSize];
+        this.indexMask = tableSize - 1;
+        Arrays.fill(index, NONE);
+    }
+
+    public int size() { return size; }
+    public int capacity() { return keys.length; }
+
+    public boolean contains(long key) {
+        return find(key) >= 0;
+    }
+
+    public boolean remove(long key) {
+        int pos = find(key);
+        if (pos < 0) return false;
+        int node = index[pos];
+        unlinkNode(node);
+        deleteSlot(pos);
+        return true;
+    }
+
+    public void addFirst(long key) {
+        if (contains(key)) {
+            remove(key);
+        }
+        if (size == keys.length) {
+            removeLast();
+        }
+        int node = freeHead;
+        freeHead = next[node];
+        keys[node] = key;
+        prev[node] = NONE;
+        next[node] = head;
+        if (head != NONE) {
+            prev[head] = node;
+        } else {
+            tail = node;
+        }
+        head = node;
+        size++;
+        
+        int pos = slot(key);
+        while (index[pos] != NONE) {
+            pos = (pos + 1) & indexMask;
+        }
+        index[pos] = node;
+    }
+
+    public void removeLast() {
+        if (tail != NONE) {
+            remove(keys[tail]);
+        }
+    }
+
+    private void unlinkNode(int node) {
+        if (prev[node] != NONE) {
+            next[prev[node]] = next[node];
+        } else {
+            head = next[node];
+        }
+        if (next[node] != NONE) {
+            prev[next[node]] = prev[node];
+        } else {
+            tail = prev[node];
+        }
+        next[node] = freeHead;
+        freeHead = node;
+        size--;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & indexMask;
+    }
+
+    private int find(long key) {
+        int pos = slot(key);
+        while (index[pos] != NONE) {
+            if (keys[index[pos]] == key) {
+                return pos;
+            }
+            pos = (pos + 1) & indexMask;
+        }
+        return -1;
+    }
+
+    // backward-shift deletion keeps linear probe chains intact without tombstones
+    private void deleteSlot(int pos) {
+        int hole = pos;
+        int cur = (pos + 1) & indexMask;
+        while (index[cur] != NONE) {
+            int home = slot(keys[index[cur]]);
+            if (((cur - home) & indexMask) >= ((cur - hole) & indexMask)) {
+                index[hole] = index[cur];
+                hole = cur;
+            }
+            cur = (cur + 1) & indexMask;
+        }
+        index[hole] = NONE;
+    }
+}
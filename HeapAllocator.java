@@ -0,0 +1,244 @@
+import java.util.*;
+
+// binary buddy allocator for one process heap. offsets are bytes from the heap base and
+// block metadata lives in arrays indexed by offset / MIN_BLOCK, so alloc and free are O(log n)
+public class HeapAllocator {
+    public static final int MIN_BLOCK_SHIFT = 4;
+    public static final int MIN_BLOCK = 1 << MIN_BLOCK_SHIFT;
+    public static final int MAX_ORDER = 20; // 16 MiB of heap per process
+    private static final int NONE = -1;
+
+    private int arenaOrder = -1;
+    private byte[] freeOrder = new byte[0]; // order + 1 at the head of a free block
+    private byte[] usedOrder = new byte[0]; // order + 1 at the head of an allocated block
+    private int[] requested = new int[0];
+    private int[] next = new int[0];
+    private int[] prev = new int[0];
+    private final int[] freeHeads = new int[MAX_ORDER + 1];
+    private int freeMask;
+
+    private long allocations;
+    private long frees;
+    private long failedAllocations;
+    private long allocNanos;
+    private long freeNanos;
+    private long requestedBytes;
+    private long allocatedBytes;
+    private long freeBytes;
+
+    public HeapAllocator() {
+        Arrays.fill(freeHeads, NONE);
+    }
+
+    // an independent copy with the same blocks, for a forked process
+    public HeapAllocator(HeapAllocator other) {
+        this.arenaOrder = other.arenaOrder;
+        this.freeOrder = other.freeOrder.clone();
+        this.usedOrder = other.usedOrder.clone();
+        this.requested = other.requested.clone();
+        this.next = other.next.clone();
+        this.prev = other.prev.clone();
+        System.arraycopy(other.freeHeads, 0, freeHeads, 0, freeHeads.length);
+        this.freeMask = other.freeMask;
+        this.requestedBytes = other.requestedBytes;
+        this.allocatedBytes = other.allocatedBytes;
+        this.freeBytes = other.freeBytes;
+    }
+
+    // a heap as save() wrote it, for a restored checkpoint
+    HeapAllocator(Checkpoint.Input in) {
+        this.arenaOrder = in.getInt();
+        this.freeOrder = in.getBytes();
+        this.usedOrder = in.getBytes();
+        this.requested = in.getInts();
+        this.next = in.getInts();
+        this.prev = in.getInts();
+        int[] heads = in.getInts();
+        System.arraycopy(heads, 0, freeHeads, 0, freeHeads.length);
+        this.freeMask = in.getInt();
+        this.requestedBytes = in.getLong();
+        this.allocatedBytes = in.getLong();
+        this.freeBytes = in.getLong();
+    }
+
+    void save(Checkpoint.Output out) {
+        out.putInt(arenaOrder);
+        out.putBytes(freeOrder);
+        out.putBytes(usedOrder);
+        out.putInts(requested);
+        out.putInts(next);
+        out.putInts(prev);
+        out.putInts(freeHeads);
+        out.putInt(freeMask);
+        out.putLong(requestedBytes);
+        out.putLong(allocatedBytes);
+        out.putLong(freeBytes);
+    }
+
+    // returns the byte offset of a block holding at least size bytes, or -1
+    public int allocate(int size) {
+        long start = System.nanoTime();
+        int order = orderFor(size);
+        if (order < 0) {
+            failedAllocations++;
+            return -1;
+        }
+        while ((freeMask & -(1 << order)) == 0) {
+            if (!grow(order)) {
+                failedAllocations++;
+                allocNanos += System.nanoTime() - start;
+                return -1;
+            }
+        }
+
+        int available = Integer.numberOfTrailingZeros(freeMask & -(1 << order));
+        int block = freeHeads[available];
+        unlink(block, available);
+        // split down to the requested order, returning the upper halves
+        while (available > order) {
+            available--;
+            link(block + (1 << available), available);
+        }
+
+        usedOrder[block] = (byte) (order + 1);
+        requested[block] = size;
+        allocations++;
+        requestedBytes += size;
+        allocatedBytes += (long) MIN_BLOCK << order;
+        freeBytes -= (long) MIN_BLOCK << order;
+        allocNanos += System.nanoTime() - start;
+        return block << MIN_BLOCK_SHIFT;
+    }
+
+    // returns false if offset is not the start of a live block
+    public boolean free(int offset) {
+        long start = System.nanoTime();
+        if (offset < 0 || (offset & (MIN_BLOCK - 1)) != 0) return false;
+        int block = offset >>> MIN_BLOCK_SHIFT;
+        if (block >= usedOrder.length || usedOrder[block] == 0) return false;
+
+        int order = usedOrder[block] - 1;
+        usedOrder[block] = 0;
+        frees++;
+        requestedBytes -= requested[block];
+        allocatedBytes -= (long) MIN_BLOCK << order;
+        freeBytes += (long) MIN_BLOCK << order;
+        requested[block] = 0;
+        release(block, order);
+        freeNanos += System.nanoTime() - start;
+        return true;
+    }
+
+    public int blockSize(int offset) {
+        int block = offset >>> MIN_BLOCK_SHIFT;
+        if (offset < 0 || block >= usedOrder.length || usedOrder[block] == 0) return 0;
+        return MIN_BLOCK << (usedOrder[block] - 1);
+    }
+
+    public long getArenaSize() {
+        return arenaOrder < 0 ? 0 : (long) MIN_BLOCK << arenaOrder;
+    }
+
+    public long getRequestedBytes() { return requestedBytes; }
+    public long getAllocatedBytes() { return allocatedBytes; }
+    public long getFreeBytes() { return freeBytes; }
+    public long getAllocations() { return allocations; }
+    public long getFrees() { return frees; }
+    public long getFailedAllocations() { return failedAllocations; }
+
+    public long getLargestFreeBlock() {
+        return freeMask == 0 ? 0 : (long) MIN_BLOCK << (31 - Integer.numberOfLeadingZeros(freeMask));
+    }
+
+    // share of allocated bytes lost to rounding up to a power of two
+    public double getInternalFragmentation() {
+        return allocatedBytes == 0 ? 0.0 : 1.0 - (double) requestedBytes / allocatedBytes;
+    }
+
+    // share of free bytes that cannot be handed out as one block
+    public double getExternalFragmentation() {
+        return freeBytes == 0 ? 0.0 : 1.0 - (double) getLargestFreeBlock() / freeBytes;
+    }
+
+    public double getAverageAllocNanos() {
+        return allocations == 0 ? 0.0 : (double) allocNanos / allocations;
+    }
+
+    public double getAverageFreeNanos() {
+        return frees == 0 ? 0.0 : (double) freeNanos / frees;
+    }
+
+    private static int orderFor(int size) {
+        if (size <= 0) return -1;
+        int blocks = (int) ((size + (long) MIN_BLOCK - 1) >>> MIN_BLOCK_SHIFT);
+        int order = 32 - Integer.numberOfLeadingZeros(blocks - 1);
+        return order > MAX_ORDER ? -1 : order;
+    }
+
+    // doubles the arena; the old arena becomes the lower buddy of the new upper half
+    private boolean grow(int order) {
+        if (arenaOrder < 0) {
+            resize(order);
+            arenaOrder = order;
+            freeBytes += (long) MIN_BLOCK << order;
+            link(0, order);
+            return true;
+        }
+        if (arenaOrder >= MAX_ORDER) return false;
+        int half = arenaOrder;
+        resize(half + 1);
+        arenaOrder = half + 1;
+        freeBytes += (long) MIN_BLOCK << half;
+        release(1 << half, half);
+        return true;
+    }
+
+    private void resize(int order) {
+        int blocks = 1 << order;
+        freeOrder = Arrays.copyOf(freeOrder, blocks);
+        usedOrder = Arrays.copyOf(usedOrder, blocks);
+        requested = Arrays.copyOf(requested, blocks);
+        next = Arrays.copyOf(next, blocks);
+        prev = Arrays.copyOf(prev, blocks);
+    }
+
+    // frees a block, merging with its buddy for as long as the buddy is free and whole
+    private void release(int block, int order) {
+        while (order < arenaOrder) {
+            int buddy = block ^ (1 << order);
+            if (freeOrder[buddy] != order + 1) break;
+            unlink(buddy, order);
+            block = Math.min(block, buddy);
+            order++;
+        }
+        link(block, order);
+    }
+
+    private void link(int block, int order) {
+        freeOrder[block] = (byte) (order + 1);
+        int head = freeHeads[order];
+        next[block] = head;
+        prev[block] = NONE;
+        if (head != NONE) prev[head] = block;
+        freeHeads[order] = block;
+        freeMask |= 1 << order;
+    }
+
+    private void unlink(int block, int order) {
+        freeOrder[block] = 0;
+        int n = next[block];
+        int p = prev[block];
+        if (p != NONE) next[p] = n; else freeHeads[order] = n;
+        if (n != NONE) prev[n] = p;
+        if (freeHeads[order] == NONE) freeMask &= ~(1 << order);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("arena %d B, %d live B in %d B of blocks, %d free B (largest %d), "
+                + "internal frag %.1f%%, external frag %.1f%%, %d allocs (%d failed, %.0f ns avg), %d frees (%.0f ns avg)",
+            getArenaSize(), requestedBytes, allocatedBytes, freeBytes, getLargestFreeBlock(),
+            getInternalFragmentation() * 100, getExternalFragmentation() * 100,
+            allocations, failedAllocations, getAverageAllocNanos(), frees, getAverageFreeNanos());
+    }
+}
@@ -0,0 +1,91 @@
+import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+public class HeapFrameStore implements FrameStore {
+    private static final VarHandle INT_VIEW =
+        MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private final byte[] memory;
+    private final int frameCount;
+    private final int pageSize;
+    // plain stores to separate elements, so CPUs writing different frames do not race
+    private final boolean[] modified;
+
+    HeapFrameStore(int frameCount, int pageSize, int capacity) {
+        this.frameCount = frameCount;
+        this.pageSize = pageSize;
+        this.memory = new byte[capacity];
+        this.modified = new boolean[frameCount];
+    }
+
+    void load(FileChannel file, long position) throws IOException {
+        ByteBuffer dst = ByteBuffer.wrap(memory);
+        while (dst.hasRemaining()) {
+            if (file.read(dst, position + dst.position()) < 0) {
+                throw new EOFException("Frame image ends after " + dst.position() + " bytes");
+            }
+        }
+    }
+
+    public Kind getKind() { return Kind.HEAP; }
+    public int getFrameCount() { return frameCount; }
+    public int getPageSize() { return pageSize; }
+
+    public int readInt(int frame, int offset) {
+        return (int) INT_VIEW.get(memory, frame * pageSize + offset);
+    }
+
+    public void writeInt(int frame, int offset, int value) {
+        modified[frame] = true;
+        INT_VIEW.set(memory, frame * pageSize + offset, value);
+    }
+
+    public int readIntVolatile(int frame, int offset) {
+        return (int) INT_VIEW.getVolatile(memory, frame * pageSize + offset);
+    }
+
+    public void writeIntVolatile(int frame, int offset, int value) {
+        modified[frame] = true;
+        INT_VIEW.setVolatile(memory, frame * pageSize + offset, value);
+    }
+
+    public void clearFrame(int frame) {
+        modified[frame] = true;
+        int base = frame * pageSize;
+        Arrays.fill(memory, base, base + pageSize, (byte) 0);
+    }
+
+    public void copyFrame(int srcFrame, int dstFrame) {
+        modified[dstFrame] = true;
+        System.arraycopy(memory, srcFrame * pageSize, memory, dstFrame * pageSize, pageSize);
+    }
+
+    public void readFrame(int frame, byte[] dst, int dstOffset) {
+        System.arraycopy(memory, frame * pageSize, dst, dstOffset, pageSize);
+    }
+
+    public void writeFrame(int frame, byte[] src, int srcOffset) {
+        modified[frame] = true;
+        System.arraycopy(src, srcOffset, memory, frame * pageSize, pageSize);
+    }
+
+    public void readFrame(int frame, ByteBuffer dst, int dstIndex) {
+        dst.put(dstIndex, memory, frame * pageSize, pageSize);
+    }
+
+    public void writeFrame(int frame, ByteBuffer src, int srcIndex, int length) {
+        modified[frame] = true;
+        src.get(srcIndex, memory, frame * pageSize, length);
+    }
+
+    public boolean takeModified(int frame) {
+        boolean written = modified[frame];
+        modified[frame] = false;
+        return written;
+    }
+}
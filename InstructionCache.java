@@ -0,0 +1,86 @@
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+// pre-decoded instructions per (pid, code page); each 4-byte word of a page has a
+// 4-int slot holding opcode + 1 (0 = not decoded yet), arg1 and arg2 of the instruction
+// starting at that word, and the id of the compiled block that starts there (0 = none)
+public class InstructionCache {
+    public static final int SLOT_INTS = 4;
+    public static final int BLOCK_INT = 3;
+
+    private final int slotsPerPage;
+    // grown under the monitor; the CPU running a process is the only reader of its pages
+    private volatile int[][][] pages = new int[16][][];
+    private final LongAdder decodes = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public InstructionCache(int pageSize) {
+        this.slotsPerPage = pageSize / 4;
+    }
+
+    public int[] page(int pid, int virtualPage) {
+        int[][][] all = pages;
+        if (pid < all.length) {
+            int[][] process = all[pid];
+            if (process != null && virtualPage < process.length && process[virtualPage] != null) {
+                return process[virtualPage];
+            }
+        }
+        return createPage(pid, virtualPage);
+    }
+
+    private synchronized int[] createPage(int pid, int virtualPage) {
+        if (pid >= pages.length) {
+            pages = Arrays.copyOf(pages, Math.max(pid + 1, pages.length * 2));
+        }
+        int[][] process = pages[pid];
+        if (process == null || virtualPage >= process.length) {
+            process = process == null ? new int[Math.max(virtualPage + 1, 4)][]
+                : Arrays.copyOf(process, Math.max(virtualPage + 1, process.length * 2));
+            pages[pid] = process;
+        }
+        int[] page = process[virtualPage];
+        if (page == null) {
+            page = new int[slotsPerPage * SLOT_INTS];
+            process[virtualPage] = page;
+        }
+        return page;
+    }
+
+    public void recordDecode() { decodes.increment(); }
+
+    // instructions may straddle into the next page, so the previous page is dropped too;
+    // clearing in place lets a CPU holding the page array see the invalidation
+    public void invalidate(int pid, int virtualPage) {
+        int[][][] all = pages;
+        if (pid >= all.length || all[pid] == null) return;
+        int[][] process = all[pid];
+        for (int page = Math.max(virtualPage - 1, 0); page <= virtualPage && page < process.length; page++) {
+            if (process[page] != null) {
+                Arrays.fill(process[page], 0);
+                invalidations.increment();
+            }
+        }
+    }
+
+    // an evicted page still holds the same code, so a CPU may keep executing its old array
+    // until it writes to or unmaps memory, after which it looks the page up again; clearing
+    // it here instead would race with that CPU reading a slot. later lookups decode afresh
+    public void drop(int pid, int virtualPage) {
+        int[][][] all = pages;
+        if (pid < all.length && all[pid] != null && virtualPage < all[pid].length
+                && all[pid][virtualPage] != null) {
+            all[pid][virtualPage] = null;
+            invalidations.increment();
+        }
+    }
+
+    public synchronized void removeProcess(int pid) {
+        if (pid < pages.length) {
+            pages[pid] = null;
+        }
+    }
+
+    public long getDecodes() { return decodes.sum(); }
+    public long getInvalidations() { return invalidations.sum(); }
+}
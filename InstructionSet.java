@@ -13,5 +13,79 @@ public enum InstructionSet {
     ALLOC,
     FREE_MEMORY,
     MEMORY_STATS,
-    WRITE_MEM
+    WRITE_MEM,
+    EVENT_CREATE,
+    EVENT_SET,
+    EVENT_RESET,
+    EVENT_WAIT,
+    SEM_CREATE,
+    SEM_WAIT,
+    SEM_POST,
+    COND_CREATE,
+    COND_WAIT,
+    COND_SIGNAL,
+    COND_BROADCAST,
+    SYNC_DESTROY,
+    FORK,
+    WAIT_CHILD,
+    SHM_MAP,
+    SHM_UNMAP,
+    CHAN_OPEN,
+    SEND,
+    RECV,
+    // superinstructions written by PeepholeOptimizer, never by the assembler
+    FUSED_LOAD,
+    FUSED_ADD,
+    FUSED_LOAD_SHOW,
+    FUSED_ADD_SHOW;
+
+    private static final InstructionSet[] VALUES = values();
+
+    public boolean isInternal() {
+        return ordinal() >= FUSED_LOAD.ordinal();
+    }
+
+    // whether operand 1 or 2 names a register rather than an immediate, lock, event or
+    // region id; images are checked against this before they load
+    public boolean isRegisterOperand(int operand) {
+        switch (this) {
+            case LOAD_VALUE:
+            case INCREMENT:
+            case ADD_VALUE:
+            case SHOW_REG:
+            case FREE_MEMORY:
+            case EVENT_CREATE:
+            case EVENT_SET:
+            case EVENT_RESET:
+            case EVENT_WAIT:
+            case SEM_CREATE:
+            case SEM_WAIT:
+            case SEM_POST:
+            case COND_CREATE:
+            case COND_WAIT:
+            case COND_SIGNAL:
+            case COND_BROADCAST:
+            case SYNC_DESTROY:
+            case FORK:
+            case SHM_UNMAP:
+                return operand == 1;
+            case MAP_SHARED_MEM:
+                return operand == 2;
+            case ALLOC:
+            case WRITE_MEM:
+            case WAIT_CHILD:
+            case SHM_MAP:
+            case CHAN_OPEN:
+            case SEND:
+            case RECV:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // values() clones its array on every call, which the fetch loop cannot afford
+    public static InstructionSet fromOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
 }
\ No newline at end of file
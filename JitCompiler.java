@@ -0,0 +1,433 @@
+import java.io.*;
+import java.lang.invoke.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+// second execution tier: straight-line runs of register-only instructions (LOAD_VALUE,
+// INCREMENT, ADD_VALUE, SHOW_REG) are profiled by content, so every process running
+// the same code warms the same run, and once a run has been entered threshold times it
+// is compiled to a hidden class. a compiled block keeps the registers it touches in
+// locals and writes them back once on the way out; everything else, syscalls included,
+// stays in the interpreter
+public class JitCompiler {
+    public static final int DEFAULT_THRESHOLD = 8;
+    public static final int MAX_BLOCK_INSTRUCTIONS = 64;
+    // cold runs are not profiled past this many, so a workload of unique code cannot
+    // grow the table without bound
+    private static final int MAX_PROFILES = 1 << 16;
+
+    // runs at most budget instructions of the block and returns how many it ran
+    interface Block {
+        int run(int[] registers, int budget);
+    }
+
+    private static final class Profile {
+        final AtomicInteger entries = new AtomicInteger();
+        volatile int id;
+        volatile boolean failed;
+    }
+
+    // the decoded words of a run: opcode, arg1 and arg2 per instruction
+    private static final class Key {
+        final int[] words;
+        final int hash;
+
+        Key(int[] words) {
+            this.words = words;
+            this.hash = Arrays.hashCode(words);
+        }
+
+        @Override
+        public int hashCode() { return hash; }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && Arrays.equals(words, ((Key) other).words);
+        }
+    }
+
+    private final int threshold;
+    private final ConcurrentHashMap<Key, Profile> profiles = new ConcurrentHashMap<>();
+    private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+    // compiled blocks by id - 1; the decoded code pages remember the id of the block
+    // starting at each instruction, so a warm entry is an array load
+    private volatile Block[] blocks = new Block[64];
+    private final LongAdder lookups = new LongAdder();
+    private int compiled;
+    private int compiledInstructions;
+    private long compiledBytes;
+    private long compileNanos;
+    private int failures;
+
+    public JitCompiler() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    public JitCompiler(int threshold) {
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("Invalid JIT threshold: " + threshold);
+        }
+        this.threshold = threshold;
+    }
+
+    public int getThreshold() { return threshold; }
+
+    // the IP register is rewritten after every instruction, so a block never touches it
+    static boolean isCompilable(int opcode, int arg1) {
+        if (arg1 < 0 || arg1 >= 16 || arg1 == CPU.IP_REGISTER) return false;
+        return opcode == InstructionSet.LOAD_VALUE.ordinal() || opcode == InstructionSet.INCREMENT.ordinal()
+            || opcode == InstructionSet.ADD_VALUE.ordinal() || opcode == InstructionSet.SHOW_REG.ordinal();
+    }
+
+    Block block(int id) {
+        return blocks[id - 1];
+    }
+
+    // counts an entry into the run of length instructions starting at slot of a decoded
+    // code page and returns the id of its compiled block, compiling it on the entry that
+    // makes it hot, or 0 while it is cold
+    int enter(int[] code, int slot, int length) {
+        lookups.increment();
+        int[] words = new int[length * 3];
+        for (int i = 0; i < length; i++) {
+            int s = slot + i * 3 * InstructionCache.SLOT_INTS;
+            words[i * 3] = code[s] - 1;
+            words[i * 3 + 1] = code[s + 1];
+            words[i * 3 + 2] = code[s + 2];
+        }
+        Key key = new Key(words);
+        Profile profile = profiles.get(key);
+        if (profile == null) {
+            if (profiles.size() >= MAX_PROFILES) return 0;
+            profile = profiles.computeIfAbsent(key, k -> new Profile());
+        }
+        int id = profile.id;
+        if (id != 0 || profile.failed) return id;
+        if (profile.entries.incrementAndGet() != threshold) return 0;
+        return compile(profile, words, length);
+    }
+
+    private synchronized int compile(Profile profile, int[] words, int length) {
+        long start = System.nanoTime();
+        try {
+            byte[] bytes = generate(words, length);
+            MethodHandles.Lookup hidden = lookup.defineHiddenClass(bytes, true);
+            Block block = (Block) hidden.findConstructor(hidden.lookupClass(),
+                MethodType.methodType(void.class)).invoke();
+            if (compiled == blocks.length) {
+                blocks = Arrays.copyOf(blocks, compiled * 2);
+            }
+            blocks[compiled++] = block;
+            compiledInstructions += length;
+            compiledBytes += bytes.length;
+            profile.id = compiled;
+            return compiled;
+        } catch (Throwable e) {
+            // the run stays interpreted; nothing about it is worth stopping the machine
+            failures++;
+            profile.failed = true;
+            if (failures == 1) {
+                System.out.println("JIT: could not compile block: " + e);
+            }
+            return 0;
+        } finally {
+            compileNanos += System.nanoTime() - start;
+        }
+    }
+
+    public synchronized void printStatistics() {
+        System.out.println("\nJIT Statistics:");
+        System.out.println("---------------");
+        System.out.printf("Blocks: %d compiled (%d instructions, %d B of class files) in %.2f ms, %d failed\n",
+            compiled, compiledInstructions, compiledBytes, compileNanos / 1e6, failures);
+        System.out.printf("Profiles: %d runs seen, %d entries, threshold %d\n",
+            profiles.size(), lookups.sum(), threshold);
+    }
+
+    // class file emission. the class is version 49 so it needs no stack map frames:
+    //
+    //   final class JitBlock implements JitCompiler.Block {
+    //       public int run(int[] r, int budget) {
+    //           int rA = r[A], rB = r[B], ...;      // every register the block touches
+    //           <instruction 0>
+    //           if (budget <= 1) { n = 1; goto out; }
+    //           <instruction 1>
+    //           ...
+    //           n = length;
+    //       out:
+    //           r[A] = rA; ...                      // every register the block writes
+    //           return n;
+    //       }
+    //   }
+    private static final int MAJOR_VERSION = 49;
+    private static final int FIRST_REGISTER_LOCAL = 3;
+
+    static byte[] generate(int[] words, int length) throws IOException {
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.classRef("JitBlock");
+        int superClass = pool.classRef("java/lang/Object");
+        int blockInterface = pool.classRef("JitCompiler$Block");
+        int objectInit = pool.methodRef("java/lang/Object", "<init>", "()V");
+        int showRegister = pool.methodRef("CPU", "showRegister", "(II)V");
+        int initName = pool.utf8("<init>");
+        int initType = pool.utf8("()V");
+        int runName = pool.utf8("run");
+        int runType = pool.utf8("([II)I");
+        int codeName = pool.utf8("Code");
+
+        int[] locals = new int[16];
+        boolean[] written = new boolean[16];
+        int nextLocal = FIRST_REGISTER_LOCAL;
+        for (int i = 0; i < length; i++) {
+            int register = words[i * 3 + 1];
+            if (locals[register] == 0) {
+                locals[register] = nextLocal++;
+            }
+            written[register] |= words[i * 3] != InstructionSet.SHOW_REG.ordinal();
+        }
+        int countLocal = nextLocal++;
+
+        Bytecode code = new Bytecode(pool);
+        for (int register = 0; register < 16; register++) {
+            if (locals[register] == 0) continue;
+            code.op(0x2B); // aload_1
+            code.pushInt(register);
+            code.op(0x2E); // iaload
+            code.local(0x36, locals[register]); // istore
+        }
+        int[] exits = new int[length];
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                code.op(0x1C); // iload_2
+                code.pushInt(i);
+                exits[i] = code.branch(0xA4); // if_icmple
+            }
+            InstructionSet opcode = InstructionSet.fromOrdinal(words[i * 3]);
+            int local = locals[words[i * 3 + 1]];
+            int value = words[i * 3 + 2];
+            switch (opcode) {
+                case LOAD_VALUE:
+                    code.pushInt(value);
+                    code.local(0x36, local); // istore
+                    break;
+                case INCREMENT:
+                    code.increment(local, 1);
+                    break;
+                case ADD_VALUE:
+                    code.increment(local, value);
+                    break;
+                case SHOW_REG:
+                    code.pushInt(words[i * 3 + 1]);
+                    code.local(0x15, local); // iload
+                    code.op(0xB8); // invokestatic
+                    code.u2(showRegister);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Not compilable: " + opcode);
+            }
+        }
+        code.pushInt(length);
+        code.local(0x36, countLocal);
+        int done = code.branch(0xA7); // goto
+        for (int i = 1; i < length; i++) {
+            code.patch(exits[i]);
+            code.pushInt(i);
+            code.local(0x36, countLocal);
+            exits[i] = code.branch(0xA7);
+        }
+        code.patch(done);
+        for (int i = 1; i < length; i++) {
+            code.patch(exits[i]);
+        }
+        for (int register = 0; register < 16; register++) {
+            if (!written[register]) continue;
+            code.op(0x2B); // aload_1
+            code.pushInt(register);
+            code.local(0x15, locals[register]); // iload
+            code.op(0x4F); // iastore
+        }
+        code.local(0x15, countLocal);
+        code.op(0xAC); // ireturn
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + code.size());
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(MAJOR_VERSION);
+        pool.write(out);
+        out.writeShort(0x0010 | 0x0020); // ACC_FINAL | ACC_SUPER
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(1);
+        out.writeShort(blockInterface);
+        out.writeShort(0); // fields
+        out.writeShort(2); // methods
+
+        out.writeShort(0x0001); // ACC_PUBLIC
+        out.writeShort(initName);
+        out.writeShort(initType);
+        out.writeShort(1);
+        byte[] init = { 0x2A, (byte) 0xB7, (byte) (objectInit >> 8), (byte) objectInit, (byte) 0xB1 };
+        writeCode(out, codeName, 1, 1, init);
+
+        out.writeShort(0x0001); // ACC_PUBLIC
+        out.writeShort(runName);
+        out.writeShort(runType);
+        out.writeShort(1);
+        writeCode(out, codeName, 3, countLocal + 1, code.toByteArray());
+
+        out.writeShort(0); // attributes
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeCode(DataOutputStream out, int codeName, int maxStack, int maxLocals,
+            byte[] code) throws IOException {
+        out.writeShort(codeName);
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // attributes
+    }
+
+    private static final class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> entries = new HashMap<>();
+        private int count = 1;
+
+        int utf8(String value) throws IOException {
+            Integer index = entries.get("U" + value);
+            if (index != null) return index;
+            out.writeByte(1);
+            out.writeUTF(value);
+            return add("U" + value);
+        }
+
+        int classRef(String name) throws IOException {
+            Integer index = entries.get("C" + name);
+            if (index != null) return index;
+            int nameIndex = utf8(name);
+            out.writeByte(7);
+            out.writeShort(nameIndex);
+            return add("C" + name);
+        }
+
+        int methodRef(String owner, String name, String type) throws IOException {
+            int ownerIndex = classRef(owner);
+            int nameIndex = utf8(name);
+            int typeIndex = utf8(type);
+            out.writeByte(12);
+            out.writeShort(nameIndex);
+            out.writeShort(typeIndex);
+            int nameAndType = add("N" + name + type);
+            out.writeByte(10);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+            return add("M" + owner + "." + name + type);
+        }
+
+        int integer(int value) throws IOException {
+            Integer index = entries.get("I" + value);
+            if (index != null) return index;
+            out.writeByte(3);
+            out.writeInt(value);
+            return add("I" + value);
+        }
+
+        private int add(String key) {
+            entries.put(key, count);
+            return count++;
+        }
+
+        void write(DataOutputStream to) throws IOException {
+            to.writeShort(count);
+            bytes.writeTo(to);
+        }
+    }
+
+    private static final class Bytecode {
+        private final ConstantPool pool;
+        private byte[] code = new byte[256];
+        private int size;
+
+        Bytecode(ConstantPool pool) {
+            this.pool = pool;
+        }
+
+        int size() { return size; }
+
+        void op(int opcode) {
+            if (size == code.length) {
+                code = Arrays.copyOf(code, size * 2);
+            }
+            code[size++] = (byte) opcode;
+        }
+
+        void u2(int value) {
+            op(value >> 8);
+            op(value);
+        }
+
+        void pushInt(int value) throws IOException {
+            if (value >= -1 && value <= 5) {
+                op(0x03 + value); // iconst_m1 .. iconst_5
+            } else if (value == (byte) value) {
+                op(0x10); // bipush
+                op(value);
+            } else if (value == (short) value) {
+                op(0x11); // sipush
+                u2(value);
+            } else {
+                op(0x13); // ldc_w
+                u2(pool.integer(value));
+            }
+        }
+
+        void local(int opcode, int index) {
+            op(opcode);
+            op(index);
+        }
+
+        void increment(int local, int value) throws IOException {
+            if (value == (byte) value) {
+                op(0x84); // iinc
+                op(local);
+                op(value);
+            } else if (value == (short) value) {
+                op(0xC4); // wide iinc
+                op(0x84);
+                u2(local);
+                u2(value);
+            } else {
+                local(0x15, local); // iload
+                pushInt(value);
+                op(0x60); // iadd
+                local(0x36, local); // istore
+            }
+        }
+
+        // emits a branch with its offset left open and returns where it is
+        int branch(int opcode) {
+            int at = size;
+            op(opcode);
+            u2(0);
+            return at;
+        }
+
+        // points the branch at the current end of the code
+        void patch(int at) {
+            int offset = size - at;
+            code[at + 1] = (byte) (offset >> 8);
+            code[at + 2] = (byte) offset;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(code, size);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+// fixed log2 buckets: bucket 0 holds 0, bucket i holds values in [2^(i-1), 2^i)
+public class LatencyHistogram {
+    static final int BUCKETS = 64;
+
+    private final long[] counts;
+    private long total;
+    private long sum;
+    private long max;
+
+    public LatencyHistogram() {
+        this.counts = new long[BUCKETS];
+    }
+
+    // a frozen copy of bucket counts taken elsewhere, e.g. from an AtomicHistogram
+    LatencyHistogram(long[] counts, long sum, long max) {
+        this.counts = counts;
+        this.sum = sum;
+        this.max = max;
+        for (long count : counts) {
+            total += count;
+        }
+    }
+
+    static int bucket(long value) {
+        return 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    public void record(long value) {
+        long v = Math.max(value, 0);
+        counts[bucket(v)]++;
+        total++;
+        sum += v;
+        max = Math.max(max, v);
+    }
+
+    public long getCount() { return total; }
+    public long getMax() { return max; }
+    public long getSum() { return sum; }
+    public long[] getBuckets() { return counts.clone(); }
+
+    public double getMean() {
+        return total == 0 ? 0.0 : (double) sum / total;
+    }
+
+    // upper bound of the bucket holding the given percentile
+    public long getPercentile(double percentile) {
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return i == 0 ? 0 : Math.min(max, (1L << i) - 1);
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d mean=%.1f p50<=%d p99<=%d max=%d",
+            total, getMean(), getPercentile(50), getPercentile(99), max);
+    }
+}
@@ -0,0 +1,162 @@
+import java.util.*;
+import java.util.function.*;
+
+// working-set load control. the working sets of the active processes must fit in the
+// frames the replacement policy can hand out; while their sum is larger, processes are
+// suspended, the lowest priority one with the largest working set first, and held out of
+// the ready queue until the others leave room for their working set again. a suspended
+// process's pages age out through the replacement policy like any others. new processes
+// are admitted the same way. one active process is always allowed however large its
+// working set. a process holding a lock or on a CPU is never picked, nor one that has run
+// less than a quarter window since it was let in, which keeps processes that must run
+// together, such as the two ends of a channel, from trading places on every message.
+// when nothing is ready or running the oldest suspended process resumes, so load control
+// can slow the system down but not stop it. every call is made under the ProcessManager
+// monitor
+public class LoadControl {
+    private final MemoryManager memory;
+    private final ProcessTable processes;
+    private final MetricsRegistry metrics;
+    // suspended processes that came up for a CPU and did not fit, oldest first
+    private final ArrayDeque<PCB> parked = new ArrayDeque<>();
+    private long demand; // working set pages of the active processes
+    private int active;
+    // set when a scan found no process it may suspend; cleared by anything that could
+    // change that, so idle CPUs polling for work do not rescan the process table
+    private boolean noVictims;
+    private long peakDemand;
+    private long admissions;
+    private long deferredAdmissions;
+    private long suspensions;
+    private long resumptions;
+
+    public LoadControl(ProcessManager pm) {
+        this.memory = pm.getMemoryManager();
+        this.processes = pm.getProcessTable();
+        this.metrics = pm.getMetrics();
+    }
+
+    public long getSuspensions() { return suspensions; }
+    public long getResumptions() { return resumptions; }
+    public long getDeferredAdmissions() { return deferredAdmissions; }
+    public long getPeakDemand() { return peakDemand; }
+    int getParkedCount() { return parked.size(); }
+
+    private int capacity() {
+        return memory.getPageableFrameCount();
+    }
+
+    private boolean fits(PCB process) {
+        return active == 0 || demand + process.getWorkingSet().size() <= capacity();
+    }
+
+    // a new or forked process with its working set counted; one that does not fit starts
+    // suspended and is parked when it first comes up for a CPU
+    void admit(PCB process) {
+        if (fits(process)) {
+            activate(process);
+            admissions++;
+        } else {
+            process.setSuspended(true);
+            deferredAdmissions++;
+        }
+    }
+
+    void resized(PCB process, int before, int after) {
+        if (!process.isSuspended()) {
+            demand += after - before;
+            peakDemand = Math.max(peakDemand, demand);
+        }
+        noVictims = false;
+    }
+
+    void exited(PCB process) {
+        if (!process.isSuspended()) {
+            demand -= process.getWorkingSet().size();
+            active--;
+        }
+        noVictims = false;
+    }
+
+    // filters what the scheduler hands out: false parks a suspended process that still
+    // does not fit, and the caller asks the scheduler again
+    boolean dispatchable(PCB process) {
+        if (!process.isSuspended()) return true;
+        if (fits(process)) {
+            resume(process);
+            return true;
+        }
+        parked.add(process);
+        return false;
+    }
+
+    // suspends while the active working sets overflow memory, then resumes parked processes
+    // into whatever room is left; idle means no process is ready or running
+    void balance(boolean idle, Consumer<PCB> ready) {
+        while (demand > capacity() && active > 1 && !noVictims) {
+            PCB victim = victim();
+            if (victim == null) {
+                noVictims = true;
+                break;
+            }
+            victim.setSuspended(true);
+            demand -= victim.getWorkingSet().size();
+            active--;
+            suspensions++;
+            metrics.increment(MetricsRegistry.Counter.SUSPENSIONS, victim);
+        }
+        while (!parked.isEmpty() && (fits(parked.peek()) || idle)) {
+            PCB process = parked.poll();
+            resume(process);
+            ready.accept(process);
+            idle = false;
+        }
+    }
+
+    private PCB victim() {
+        PCB[] victim = new PCB[1];
+        processes.forEach(p -> {
+            WorkingSet workingSet = p.getWorkingSet();
+            if (p.isSuspended() || p.getState() == PCB.ProcessState.RUNNING
+                    || p.getState() == PCB.ProcessState.TERMINATED || !p.getHeldLocks().isEmpty()
+                    || workingSet.getVirtualTime() - p.getActiveSince() < workingSet.getWindow() / WorkingSet.EPOCHS) {
+                return;
+            }
+            PCB best = victim[0];
+            if (best == null || p.getPriority() < best.getPriority() || (p.getPriority() == best.getPriority()
+                    && p.getWorkingSet().size() > best.getWorkingSet().size())) {
+                victim[0] = p;
+            }
+        });
+        return victim[0];
+    }
+
+    private void activate(PCB process) {
+        process.setActiveSince(process.getWorkingSet().getVirtualTime());
+        demand += process.getWorkingSet().size();
+        peakDemand = Math.max(peakDemand, demand);
+        active++;
+        noVictims = false;
+    }
+
+    private void resume(PCB process) {
+        process.setSuspended(false);
+        activate(process);
+        resumptions++;
+        metrics.increment(MetricsRegistry.Counter.RESUMPTIONS, process);
+    }
+
+    void forEachParked(Consumer<PCB> action) {
+        parked.forEach(action);
+    }
+
+    public void printStatistics() {
+        System.out.println("\nLoad Control Statistics:");
+        System.out.println("------------------------");
+        System.out.printf("Working set demand: %d pages now, %d at peak, %d pageable frames\n",
+            demand, peakDemand, capacity());
+        System.out.printf("Admissions: %d immediate, %d deferred\n", admissions, deferredAdmissions);
+        System.out.printf("Suspensions: %d, resumptions: %d, %d still suspended\n",
+            suspensions, resumptions, parked.size());
+    }
+}
@@ -0,0 +1,164 @@
+import java.util.*;
+
+// kernel mutexes with FIFO wait queues. a release hands the lock straight to the
+// oldest waiter, so a woken process never has to race for it again. guarded by the
+// ProcessManager monitor
+public class LockManager {
+    public static final int LOCK_COUNT = 32;
+    // how many times a process retries a lock whose owner is running on another CPU
+    public static final int DEFAULT_SPIN_LIMIT = 4;
+
+    public enum Result { ACQUIRED, SPIN, BLOCKED, INVALID }
+
+    private final PCB[] owners = new PCB[LOCK_COUNT];
+    private final long[] acquiredAt = new long[LOCK_COUNT];
+    private final ArrayDeque<PCB>[] waiters;
+    private final int spinLimit;
+
+    private final long[] acquisitions = new long[LOCK_COUNT];
+    private final long[] contended = new long[LOCK_COUNT];
+    private final long[] spins = new long[LOCK_COUNT];
+    private final long[] handoffs = new long[LOCK_COUNT];
+    private final LatencyHistogram[] waitCycles = new LatencyHistogram[LOCK_COUNT];
+    private final LatencyHistogram[] holdCycles = new LatencyHistogram[LOCK_COUNT];
+
+    public LockManager() {
+        this(DEFAULT_SPIN_LIMIT);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public LockManager(int spinLimit) {
+        this.spinLimit = spinLimit;
+        this.waiters = new ArrayDeque[LOCK_COUNT];
+        for (int i = 0; i < LOCK_COUNT; i++) {
+            waiters[i] = new ArrayDeque<>();
+            waitCycles[i] = new LatencyHistogram();
+            holdCycles[i] = new LatencyHistogram();
+        }
+    }
+
+    public static boolean isValid(int lockId) {
+        return lockId >= 0 && lockId < LOCK_COUNT;
+    }
+
+    public PCB getOwner(int lockId) { return isValid(lockId) ? owners[lockId] : null; }
+    public int getWaiterCount(int lockId) { return isValid(lockId) ? waiters[lockId].size() : 0; }
+    public long getAcquisitions(int lockId) { return acquisitions[lockId]; }
+    public long getContended(int lockId) { return contended[lockId]; }
+    public long getSpins(int lockId) { return spins[lockId]; }
+    public long getHandoffs(int lockId) { return handoffs[lockId]; }
+    public LatencyHistogram getWaitCycles(int lockId) { return waitCycles[lockId]; }
+    public LatencyHistogram getHoldCycles(int lockId) { return holdCycles[lockId]; }
+
+    // SPIN asks the caller to retry the instruction; BLOCKED means the process was queued
+    // and must leave the CPU
+    Result acquire(PCB process, int lockId, long now) {
+        if (!isValid(lockId)) return Result.INVALID;
+        PCB owner = owners[lockId];
+        if (owner == null || owner == process) {
+            if (owner == null) {
+                grant(process, lockId, now);
+            }
+            if (process.getLockSpins() > 0) {
+                contended[lockId]++;
+                process.setLockSpins(0);
+            }
+            return Result.ACQUIRED;
+        }
+        // spinning only pays off while the owner can make progress on another core
+        if (owner.getState() == PCB.ProcessState.RUNNING && process.getLockSpins() < spinLimit) {
+            process.setLockSpins(process.getLockSpins() + 1);
+            spins[lockId]++;
+            return Result.SPIN;
+        }
+        process.setLockSpins(0);
+        enqueue(process, lockId, now);
+        return Result.BLOCKED;
+    }
+
+    // for a process that is off the CPU, such as one woken from a condition wait:
+    // grants the lock if it is free and queues the process otherwise
+    boolean acquireOrQueue(PCB process, int lockId, long now) {
+        if (owners[lockId] == null) {
+            grant(process, lockId, now);
+            return true;
+        }
+        enqueue(process, lockId, now);
+        return false;
+    }
+
+    private void enqueue(PCB process, int lockId, long now) {
+        process.setState(PCB.ProcessState.WAITING_LOCK);
+        process.setWaitingLockId(lockId);
+        process.setLockWaitStart(now);
+        waiters[lockId].add(process);
+        contended[lockId]++;
+    }
+
+    // returns the waiter the lock was handed to, which the caller makes ready, or null
+    PCB release(PCB process, int lockId, long now) {
+        if (!isValid(lockId) || owners[lockId] != process) return null;
+        process.removeHeldLock(lockId);
+        holdCycles[lockId].record(now - acquiredAt[lockId]);
+        owners[lockId] = null;
+        PCB next = waiters[lockId].poll();
+        if (next != null) {
+            next.setWaitingLockId(-1);
+            waitCycles[lockId].record(now - next.getLockWaitStart());
+            handoffs[lockId]++;
+            grant(next, lockId, now);
+        }
+        return next;
+    }
+
+    private void grant(PCB process, int lockId, long now) {
+        owners[lockId] = process;
+        acquiredAt[lockId] = now;
+        acquisitions[lockId]++;
+        process.addHeldLock(lockId);
+    }
+
+    // owners and wait queues; the statistics start over after a restore
+    void save(Checkpoint.Output out) {
+        for (int id = 0; id < LOCK_COUNT; id++) {
+            out.putInt(owners[id] == null ? 0 : owners[id].getProcessId());
+            out.putLong(acquiredAt[id]);
+            out.putInts(waiters[id].stream().mapToInt(PCB::getProcessId).toArray());
+        }
+    }
+
+    void restore(Checkpoint.Input in, ProcessTable processes) {
+        for (int id = 0; id < LOCK_COUNT; id++) {
+            owners[id] = processes.get(in.getInt());
+            acquiredAt[id] = in.getLong();
+            waiters[id].clear();
+            for (int pid : in.getInts()) {
+                waiters[id].add(processes.get(pid));
+            }
+        }
+    }
+
+    public int getBlockedProcesses() {
+        int blocked = 0;
+        for (ArrayDeque<PCB> queue : waiters) {
+            blocked += queue.size();
+        }
+        return blocked;
+    }
+
+    public void printStatistics() {
+        System.out.println("\nLock Statistics:");
+        System.out.println("----------------");
+        for (int id = 0; id < LOCK_COUNT; id++) {
+            if (acquisitions[id] == 0 && waiters[id].isEmpty()) continue;
+            System.out.printf("Lock %d: %d acquisitions, %d contended, %d spins, %d handoffs\n",
+                id, acquisitions[id], contended[id], spins[id], handoffs[id]);
+            System.out.printf("  Wait (cycles): %s\n", waitCycles[id]);
+            System.out.printf("  Hold (cycles): %s\n", holdCycles[id]);
+        }
+        int blocked = getBlockedProcesses();
+        if (blocked > 0) {
+            System.out.printf("%d processes still blocked on locks\n", blocked);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+public class LruPolicy implements PageReplacementPolicy {
+    private final FrameList lru;
+
+    public LruPolicy(int frameCount) {
+        this.lru = new FrameList(frameCount);
+    }
+
+    public Kind getKind() { return Kind.LRU; }
+
+    public void pageLoaded(int frame, long key) {
+        lru.addFirst(frame);
+    }
+
+    public void pageAccessed(int frame) {
+        if (lru.contains(frame)) {
+            lru.moveToFront(frame);
+        }
+    }
+
+    public int selectVictim(long incomingKey) {
+        return lru.removeLast();
+    }
+
+    public void pageRemoved(int frame) {
+        lru.remove(frame);
+    }
+}
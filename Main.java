@@ -1,12 +1,194 @@
+import java.io.*;
+import java.nio.file.*;
 import java.util.*;
 
 public class Main {
     public static void main(String[] args) {
+        int physicalPages = MemoryManager.DEFAULT_PHYSICAL_PAGES;
+        FrameStore.Kind frameStoreKind = FrameStore.Kind.HEAP;
+        PageReplacementPolicy.Kind policyKind = PageReplacementPolicy.Kind.LRU;
+        Scheduler.Kind schedulerKind = Scheduler.Kind.PRIORITY;
+        String swapFile = null;
+        int writebackWatermark = 0;
+        int readahead = 0;
+        List<String> programArgs = new ArrayList<>();
+        String metricsFile = null;
+        String traceFile = null;
+        String checkpointFile = null;
+        long checkpointCycles = 10000;
+        String restoreFile = null;
+        int jitThreshold = 0;
+        PeepholeOptimizer optimizer = null;
+        long workingSetWindow = WorkingSet.DEFAULT_WINDOW;
+        boolean loadControl = false;
+        boolean debugMode = true;
+        int tlbEntries = TLB.DEFAULT_ENTRIES;
+        int tlbWays = TLB.DEFAULT_WAYS;
+        int cpuCount = 1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--frames":
+                    physicalPages = Integer.parseInt(args[++i]);
+                    break;
+                case "--tlb":
+                    tlbEntries = Integer.parseInt(args[++i]);
+                    break;
+                case "--tlb-ways":
+                    tlbWays = Integer.parseInt(args[++i]);
+                    break;
+                case "--policy":
+                    policyKind = PageReplacementPolicy.Kind.valueOf(args[++i].toUpperCase());
+                    break;
+                case "--scheduler":
+                    schedulerKind = Scheduler.Kind.valueOf(args[++i].toUpperCase());
+                    break;
+                case "--cpus":
+                    cpuCount = Integer.parseInt(args[++i]);
+                    break;
+                case "--quiet":
+                    debugMode = false;
+                    break;
+                case "--swap-file":
+                    swapFile = args[++i];
+                    break;
+                case "--writeback":
+                    writebackWatermark = Integer.parseInt(args[++i]);
+                    break;
+                case "--readahead":
+                    readahead = Integer.parseInt(args[++i]);
+                    break;
+                case "--program":
+                    programArgs.add(args[++i]);
+                    break;
+                case "--metrics":
+                    metricsFile = args[++i]; // "-" prints the snapshot instead
+                    break;
+                case "--trace":
+                    traceFile = args[++i]; // binary trace replaces the console debug output
+                    debugMode = false;
+                    break;
+                case "--checkpoint":
+                    checkpointFile = args[++i]; // written as FILE.0, FILE.1, ...
+                    break;
+                case "--checkpoint-every":
+                    checkpointCycles = Long.parseLong(args[++i]);
+                    break;
+                case "--restore":
+                    restoreFile = args[++i]; // resumes a checkpoint instead of loading programs
+                    break;
+                case "--jit":
+                    jitThreshold = JitCompiler.DEFAULT_THRESHOLD;
+                    break;
+                case "--jit-threshold":
+                    jitThreshold = Integer.parseInt(args[++i]); // entries before a run is compiled
+                    break;
+                case "--optimize":
+                    optimizer = new PeepholeOptimizer(true);
+                    break;
+                case "--optimize-quantum":
+                    // exact charges a superinstruction every cycle it replaces, fused just one
+                    optimizer = new PeepholeOptimizer(!args[++i].equalsIgnoreCase("fused"));
+                    break;
+                case "--ws-window":
+                    workingSetWindow = Long.parseLong(args[++i]); // tau in cycles of a process's own running time
+                    break;
+                case "--load-control":
+                    loadControl = true; // suspends processes while working sets overflow memory
+                    break;
+                case "--offheap":
+                    frameStoreKind = FrameStore.Kind.OFF_HEAP;
+                    break;
+                default:
+                    System.out.println("Unknown option: " + args[i]);
+            }
+        }
+
+        Checkpoint.Input snapshot = null;
+        if (restoreFile != null) {
+            try {
+                snapshot = Checkpoint.open(Paths.get(restoreFile));
+            } catch (IOException e) {
+                System.err.println("Could not open checkpoint '" + restoreFile + "': " + e.getMessage());
+                return;
+            }
+            physicalPages = snapshot.getFrameCount(); // memory takes the snapshot's shape
+        }
+
         // start the core OS components
-        MemoryManager memory = new MemoryManager(256);
-        ProcessManager processManager = new ProcessManager(memory);
-        CPU cpu = new CPU(processManager, true); // true = enable debug output
+        SwapStore swap = swapFile == null
+            ? SwapStore.create(SwapStore.Kind.MEMORY, 256, null)
+            : SwapStore.create(SwapStore.Kind.FILE, 256, Paths.get(swapFile));
+        MemoryManager memory = new MemoryManager(256, physicalPages, frameStoreKind, policyKind, swap);
+        memory.setReadahead(readahead);
+        if (writebackWatermark > 0) {
+            memory.startWriteback(writebackWatermark, WritebackDaemon.DEFAULT_BATCH);
+        }
+        MetricsRegistry metrics = metricsFile != null ? new MetricsRegistry(true) : MetricsRegistry.DISABLED;
+        ProcessManager processManager = new ProcessManager(memory, Scheduler.create(schedulerKind), metrics);
+        TraceLog trace = null;
+        if (traceFile != null) {
+            try {
+                trace = new TraceLog(Paths.get(traceFile));
+                processManager.attachTrace(trace);
+            } catch (IOException e) {
+                System.err.println("Could not open trace file '" + traceFile + "': " + e.getMessage());
+            }
+        }
+        JitCompiler jit = jitThreshold > 0 ? new JitCompiler(jitThreshold) : null;
+        processManager.attachJit(jit);
+        processManager.setWorkingSetWindow(workingSetWindow);
+        if (loadControl) {
+            processManager.attachLoadControl(new LoadControl(processManager));
+        }
+        CPU[] cpus = new CPU[cpuCount];
+        for (int i = 0; i < cpuCount; i++) {
+            cpus[i] = new CPU(i, processManager, debugMode, new TLB(tlbEntries, tlbWays)); // --quiet disables debug output
+        }
 
+        if (snapshot != null) {
+            try {
+                Checkpoint.restore(snapshot, processManager);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Could not restore checkpoint '" + restoreFile + "': " + e.getMessage());
+                return;
+            }
+        } else {
+            loadPrograms(processManager, programArgs, optimizer);
+        }
+        if (checkpointFile != null) {
+            processManager.attachCheckpoints(new Checkpoint(Paths.get(checkpointFile), checkpointCycles));
+        }
+
+        System.out.println("\n--- Starting OS Execution ---\n");
+        long runStart = System.nanoTime();
+        if (cpuCount == 1) {
+            cpus[0].run(); // Begin running all loaded processe's
+        } else {
+            // SMP mode: every CPU runs its own dispatch loop on a platform thread
+            Thread[] threads = new Thread[cpuCount];
+            for (int i = 0; i < cpuCount; i++) {
+                threads[i] = new Thread(cpus[i]::run, "cpu-" + i);
+                threads[i].start();
+            }
+            for (Thread thread : threads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        printThroughput(cpus, jit, System.nanoTime() - runStart);
+        processManager.getScheduler().printStatistics();
+        processManager.getLocks().printStatistics();
+        processManager.getSync().printStatistics();
+        printLoadControl(processManager);
+        shutdown(memory, trace, metrics, metricsFile);
+    }
+
+    private static void loadPrograms(ProcessManager processManager, List<String> programArgs,
+            PeepholeOptimizer optimizer) {
         // These are the extrnal programs that will be run by OS
         String[] programFiles = {
             "shared_memory_lock.txt",
@@ -15,22 +197,73 @@ public class Main {
             "heap_allocate_write.txt",
             "countdown.txt"
         };
+        if (!programArgs.isEmpty()) {
+            programFiles = programArgs.toArray(new String[0]); // --program replaces the default set
+        }
 
         // We will assign prioritie's starting from 10 and going down
         int priority = 10;
+        long loadStart = System.nanoTime();
+        long loadedBytes = 0;
 
         for (String filename : programFiles) {
-            List<Instruction> instructions = ProgramLoader.loadProgramFromFile(filename);
+            ProgramImage image = ProgramLoader.loadImageFromFile(filename);
 
-            if (instructions.size() > 0) {
-                processManager.createProcess(instructions, priority);
+            if (image != null && image.getInstructionCount() > 0) {
+                if (optimizer != null) {
+                    image = optimizer.optimize(image);
+                }
+                processManager.createProcess(image, priority);
+                loadedBytes += image.getCodeBytes();
                 priority--; // lower priority for next process
             } else {
                 System.out.println("Could not load program: " + filename);
             }
         }
+        long loadNanos = System.nanoTime() - loadStart;
+        System.out.printf("Startup: loaded %d bytes of code in %.2f ms (%.1f MB/s)\n",
+            loadedBytes, loadNanos / 1e6, loadedBytes * 1e3 / loadNanos);
+        if (optimizer != null) {
+            System.out.println("Optimizer: " + optimizer);
+        }
+    }
 
-        System.out.println("\n--- Starting OS Execution ---\n");
-        cpu.run(); // Begin running all loaded processe's
+    // the same program set run with and without --jit compares the two tiers
+    private static void printThroughput(CPU[] cpus, JitCompiler jit, long nanos) {
+        long instructions = 0;
+        for (CPU cpu : cpus) {
+            instructions += cpu.getInstructions();
+        }
+        System.out.printf("\nExecution: %d instructions in %.2f ms (%.2f M instructions/s, %s)\n",
+            instructions, nanos / 1e6, instructions * 1e3 / nanos,
+            jit == null ? "interpreted" : "JIT threshold " + jit.getThreshold());
+        if (jit != null) {
+            jit.printStatistics();
+        }
+    }
+
+    private static void printLoadControl(ProcessManager processManager) {
+        if (processManager.getLoadControl() != null) {
+            processManager.getLoadControl().printStatistics();
+        }
+    }
+
+    private static void shutdown(MemoryManager memory, TraceLog trace, MetricsRegistry metrics, String metricsFile) {
+        memory.close();
+        if (trace != null) {
+            trace.close();
+            System.out.printf("Trace: %d records written, %d dropped\n", trace.getWritten(), trace.getDropped());
+        }
+        metrics.close();
+        if (metricsFile == null) return;
+        if (metricsFile.equals("-")) {
+            System.out.print(metrics.toJson());
+            return;
+        }
+        try {
+            metrics.writeJson(Paths.get(metricsFile));
+        } catch (IOException e) {
+            System.err.println("Could not write metrics to '" + metricsFile + "': " + e.getMessage());
+        }
     }
 }
@@ -1,282 +1,1367 @@
+import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.stream.*;
+import java.util.concurrent.locks.*;
 
+// Locking: a CPU's TLB lock covers its TLB hit path, which only touches frames its
+// translations already point to. Anything that changes mappings or frame ownership
+// takes the exclusive lock plus every TLB lock, so it never races with a hit.
 public class MemoryManager {
-    private final Map<Integer, byte[]> physicalMemory;
-    private final Map<Integer, byte[]> diskStorage;
-    private final Map<Integer, Map<Integer, Integer>> pageTables;
-    private final Map<Integer, byte[]> sharedMemory;
-    private final int pageSize;
-    private int sharedMemoryBasePage;
-    private final Map<Integer, List<HeapBlock>> processHeapMap;
-    private final Map<Integer, PageInfo> pageInfoMap;
-    private final int maxPhysicalPages = 32;
-
-    class PageInfo {
-        boolean isValid;
-        boolean isDirty;
-        int lastUsed;
-        
-        PageInfo(boolean isValid) {
-            this.isValid = isValid;
-            this.isDirty = false;
-            this.lastUsed = 0;
+    public static final int DEFAULT_PHYSICAL_PAGES = 32;
+    // regions 0 and 1 are the single page regions MAP_SHARED_MEM has always offered; they
+    // exist from boot and survive having no mappings
+    private static final int LEGACY_SHARED_REGIONS = 2;
+    // shared regions are mapped from here up, well clear of code and the heap
+    private static final int SHARED_BASE_ADDRESS = 1 << 30;
+
+    // a named run of pinned frames; every process mapping it holds one reference
+    private static final class SharedRegion {
+        final int key;
+        final int[] frames;
+        final boolean persistent;
+        int mappings;
+
+        SharedRegion(int key, int[] frames, boolean persistent) {
+            this.key = key;
+            this.frames = frames;
+            this.persistent = persistent;
         }
     }
 
+    private FrameStore frameStore; // replaced only by a restore, before any CPU runs
+    private final SwapStore swapStore;
+    private PageTable[] pageTables;
+    private final Map<Integer, SharedRegion> sharedRegions = new HashMap<>();
+    // per process, the first virtual page of each region it has mapped
+    private final Map<Integer, Map<Integer, SharedRegion>> processRegions = new HashMap<>();
+    // per process, the superinstructions still in its code, as ProgramImage.fusedRuns lays
+    // them out; a run that has been put back covers no instructions. only changed under
+    // lockAll, so holding one TLB lock is enough to read it
+    private final Map<Integer, int[]> fusedRuns = new HashMap<>();
+    private long unfusedRuns;
+    private int sharedFrameCount;
+    private long sharedMaps;
+    private long sharedUnmaps;
+    private final int pageSize;
+    private final Map<Integer, HeapAllocator> processHeapMap;
+    private final int maxPhysicalPages;
+    private final int[] freeFrames;
+    private final int[] frameOwnerPid;
+    private final int[] frameOwnerPage;
+    // further (pid, page) keys mapping a frame shared copy-on-write, beyond the owner above
+    private final long[][] frameSharers;
+    private final int[] frameSharerCount;
+    // extra references to swap slots shared by forked processes; absent means one
+    private final Map<Integer, Integer> swapSlotShares = new HashMap<>();
+    private final int[] frameSwapSlot;
+    private final int[] frameLastUsed;
+    private final boolean[] framePinned;
+    private final boolean[] framePrefetched;
+    // swap slots written since the last checkpoint
+    private final BitSet swapWritten = new BitSet();
+    private int[] lastFaultPage;
+    private final ReentrantLock exclusiveLock = new ReentrantLock();
+    private volatile TLB[] tlbs = new TLB[0];
+    private final PageReplacementPolicy replacementPolicy;
+    private final InstructionCache instructionCache;
+    private ProcessTable processTable;
+    private MetricsRegistry metrics = MetricsRegistry.DISABLED;
+    private TraceLog trace;
+    private int freeFrameCount;
+    private long pageFaults;
+    private long evictions;
+    private long dirtyWritebacks;
+    private long swapReads;
+    private long swapWrites;
+    private long swapReadNanos;
+    private long swapWriteNanos;
+    private long faultNanos;
+    private long programLoads;
+    private long programBytesLoaded;
+    private long programLoadNanos;
+    private long backgroundReclaims;
+    private long backgroundWritebacks;
+    private long forks;
+    private long forkNanos;
+    private long framesSharedAtFork;
+    private long copyOnWriteCopies;
+    private long readaheadPages;
+    private long readaheadHits;
+    private int readaheadWindow;
+    private volatile WritebackDaemon writeback;
+
     public MemoryManager(int pageSize) {
+        this(pageSize, DEFAULT_PHYSICAL_PAGES, FrameStore.Kind.HEAP, PageReplacementPolicy.Kind.LRU);
+    }
+
+    public MemoryManager(int pageSize, int maxPhysicalPages, FrameStore.Kind frameStoreKind,
+                         PageReplacementPolicy.Kind policyKind) {
+        this(pageSize, maxPhysicalPages, frameStoreKind, policyKind,
+            SwapStore.create(SwapStore.Kind.MEMORY, pageSize, null));
+    }
+
+    public MemoryManager(int pageSize, int maxPhysicalPages, FrameStore.Kind frameStoreKind,
+                         PageReplacementPolicy.Kind policyKind, SwapStore swapStore) {
+        if (maxPhysicalPages <= LEGACY_SHARED_REGIONS || maxPhysicalPages > PageTable.NUMBER_MASK) {
+            throw new IllegalArgumentException("Unsupported physical page count: " + maxPhysicalPages);
+        }
         this.pageSize = pageSize;
-        this.physicalMemory = new HashMap<>();
-        this.diskStorage = new HashMap<>();
-        this.pageTables = new HashMap<>();
-        this.sharedMemory = new HashMap<>();
+        this.maxPhysicalPages = maxPhysicalPages;
+        this.frameStore = FrameStore.create(frameStoreKind, maxPhysicalPages, pageSize);
+        this.replacementPolicy = PageReplacementPolicy.create(policyKind, maxPhysicalPages);
+        this.instructionCache = new InstructionCache(pageSize);
+        this.swapStore = swapStore;
+        this.pageTables = new PageTable[16];
         this.processHeapMap = new HashMap<>();
-        this.pageInfoMap = new HashMap<>();
-        this.sharedMemoryBasePage = 0;
+        this.freeFrames = new int[maxPhysicalPages];
+        this.frameOwnerPid = new int[maxPhysicalPages];
+        this.frameOwnerPage = new int[maxPhysicalPages];
+        this.frameSharers = new long[maxPhysicalPages][];
+        this.frameSharerCount = new int[maxPhysicalPages];
+        this.frameSwapSlot = new int[maxPhysicalPages];
+        this.frameLastUsed = new int[maxPhysicalPages];
+        this.framePinned = new boolean[maxPhysicalPages];
+        this.framePrefetched = new boolean[maxPhysicalPages];
+        this.lastFaultPage = new int[16];
+        Arrays.fill(frameOwnerPid, -1);
+        Arrays.fill(frameSwapSlot, -1);
+        for (int frame = maxPhysicalPages - 1; frame >= 0; frame--) {
+            freeFrames[freeFrameCount++] = frame;
+        }
         
-        this.sharedMemory.put(sharedMemoryBasePage, new byte[pageSize]);
-        this.sharedMemory.put(sharedMemoryBasePage + 1, new byte[pageSize]);
+        for (int key = 0; key < LEGACY_SHARED_REGIONS; key++) {
+            createSharedRegion(key, 1, true);
+        }
+    }
+
+    // the pages regions mapped at run time can take on a machine with this many frames
+    public static int sharedPagesAvailable(int physicalPages) {
+        return physicalPages / 2 - LEGACY_SHARED_REGIONS;
+    }
+
+    public FrameStore getFrameStore() { return frameStore; }
+    public SwapStore getSwapStore() { return swapStore; }
+    public InstructionCache getInstructionCache() { return instructionCache; }
+    public int getPageSize() { return pageSize; }
+    public PageReplacementPolicy getReplacementPolicy() { return replacementPolicy; }
+    public long getPageFaults() { return pageFaults; }
+    // the frames the replacement policy can hand out, the ones no shared region pins
+    public int getPageableFrameCount() { return maxPhysicalPages - sharedFrameCount; }
+    public long getEvictions() { return evictions; }
+    public long getDirtyWritebacks() { return dirtyWritebacks; }
+
+    public void registerTlb(TLB tlb) {
+        exclusiveLock.lock();
+        try {
+            TLB[] grown = Arrays.copyOf(tlbs, tlbs.length + 1);
+            grown[tlbs.length] = tlb;
+            tlbs = grown;
+        } finally {
+            exclusiveLock.unlock();
+        }
+    }
+
+    private void lockAll() {
+        exclusiveLock.lock();
+        for (TLB tlb : tlbs) {
+            tlb.getLock().lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (TLB tlb : tlbs) {
+            tlb.getLock().unlock();
+        }
+        exclusiveLock.unlock();
+    }
+    public void attachProcessTable(ProcessTable table) { this.processTable = table; }
+    public void attachMetrics(MetricsRegistry registry) { this.metrics = registry; }
+    public void attachTrace(TraceLog log) { this.trace = log; }
+
+    private void invalidateTlbs(int pid, int virtualPage) {
+        for (TLB tlb : tlbs) {
+            tlb.invalidate(pid, virtualPage);
+        }
+    }
+
+    private PageTable pageTable(int pid) {
+        return pid >= 0 && pid < pageTables.length ? pageTables[pid] : null;
     }
 
     public void loadProgram(PCB pcb, List<Instruction> program) {
-        int pagesNeeded = (program.size() * 12 + pageSize - 1) / pageSize;
-        int startPage = allocatePages(pagesNeeded);
-        
-        byte[] currentPage = new byte[pageSize];
-        int currentPageIndex = 0;
-        int currentPageNumber = startPage;
-        int pos = 0;
-        
-        for (Instruction instr : program) {
-            if (pos + 12 > pageSize) {
-                physicalMemory.put(currentPageNumber, currentPage);
-                currentPageNumber = allocatePages(1);
-                currentPage = new byte[pageSize];
-                pos = 0;
-            }
+        loadImage(pcb, ProgramImage.of(program));
+    }
+
+    // copies the image's code page by page straight into freshly mapped frames
+    public void loadImage(PCB pcb, ProgramImage image) {
+        long start = System.nanoTime();
+        lockAll();
+        try {
+            int pid = pcb.getProcessId();
+            PageTable pt = createPageTable(pid);
             
-            packInt(currentPage, pos, instr.opcode.ordinal());
-            packInt(currentPage, pos + 4, instr.arg1);
-            packInt(currentPage, pos + 8, instr.arg2);
-            pos += 12;
+            ByteBuffer code = image.code();
+            int bytes = code.remaining();
+            for (int page = 0; page * pageSize < bytes; page++) {
+                mapNewPage(pid, page);
+                int offset = page * pageSize;
+                frameStore.writeFrame(PageTable.number(pt.get(page)), code, offset,
+                    Math.min(pageSize, bytes - offset));
+                instructionCache.drop(pid, page);
+            }
+            int[] runs = image.fusedRuns();
+            if (runs.length > 0) {
+                fusedRuns.put(pid, runs);
+            }
+            // the entry page is all a new process is known to need; the rest of its code
+            // joins the working set as it is fetched
+            pcb.updateWorkingSet(0);
+            // the heap starts above code longer than its usual base, not on top of it
+            int codeEnd = (bytes + pageSize - 1) / pageSize * pageSize;
+            if (codeEnd > pcb.getHeapNextAddress()) {
+                pcb.setHeapNextAddress(codeEnd);
+            }
+            programLoads++;
+            programBytesLoaded += bytes;
+            programLoadNanos += System.nanoTime() - start;
+        } finally {
+            unlockAll();
         }
-        
-        physicalMemory.put(currentPageNumber, currentPage);
-        
-        Map<Integer, Integer> pt = new HashMap<>();
-        for (int i = 0; i < pagesNeeded; i++) {
-            pt.put(i, startPage + i);
-            pageInfoMap.put(startPage + i, new PageInfo(true));
+    }
+
+    private PageTable createPageTable(int pid) {
+        if (pid >= pageTables.length) {
+            pageTables = Arrays.copyOf(pageTables, Math.max(pid + 1, pageTables.length * 2));
+            lastFaultPage = Arrays.copyOf(lastFaultPage, pageTables.length);
         }
-        pageTables.put(pcb.getProcessId(), pt);
-        
-        for (int i = 0; i < pagesNeeded; i++) {
-            pcb.getWorkingSetPages().add(startPage + i);
+        PageTable pt = new PageTable();
+        pageTables[pid] = pt;
+        lastFaultPage[pid] = -2;
+        return pt;
+    }
+
+    // gives the child the parent's address space without copying any page: resident frames
+    // and swap slots become shared and both sides are marked copy-on-write, so the cost is
+    // one page table entry per mapped page
+    public void forkAddressSpace(PCB parent, PCB child) {
+        long start = System.nanoTime();
+        lockAll();
+        try {
+            int parentPid = parent.getProcessId();
+            int childPid = child.getProcessId();
+            PageTable parentPt = pageTable(parentPid);
+            PageTable childPt = createPageTable(childPid);
+            parentPt.forEachMapped((virtualPage, entry) -> {
+                if ((entry & PageTable.PINNED) == 0) {
+                    if (PageTable.isValid(entry)) {
+                        shareFrame(PageTable.number(entry), childPid, virtualPage);
+                        framesSharedAtFork++;
+                    } else if ((entry & PageTable.SWAPPED) != 0) {
+                        swapSlotShares.merge(PageTable.number(entry), 1, Integer::sum);
+                    }
+                    entry |= PageTable.COPY_ON_WRITE;
+                    parentPt.set(virtualPage, entry);
+                }
+                childPt.set(virtualPage, entry);
+            });
+            // the parent's TLB entries may allow writes that now have to fault
+            for (TLB tlb : tlbs) {
+                tlb.flushProcess(parentPid);
+            }
+            HeapAllocator heap = processHeapMap.get(parentPid);
+            if (heap != null) {
+                processHeapMap.put(childPid, new HeapAllocator(heap));
+            }
+            int[] runs = fusedRuns.get(parentPid);
+            if (runs != null) {
+                fusedRuns.put(childPid, runs.clone());
+            }
+            // the pinned entries copied above keep the parent's shared regions mapped
+            Map<Integer, SharedRegion> mapped = processRegions.get(parentPid);
+            if (mapped != null) {
+                processRegions.put(childPid, new HashMap<>(mapped));
+                for (SharedRegion region : mapped.values()) {
+                    region.mappings++;
+                }
+            }
+            forks++;
+            forkNanos += System.nanoTime() - start;
+        } finally {
+            unlockAll();
         }
     }
 
     public int mapSharedMemory(int pid, int sharedRegionId) {
-        if (sharedRegionId < 0 || sharedRegionId >= 2) {
+        if (sharedRegionId < 0 || sharedRegionId >= LEGACY_SHARED_REGIONS) {
             throw new RuntimeException("Invalid shared region ID");
         }
-        
-        Map<Integer, Integer> pt = pageTables.get(pid);
-        int sharedPage = sharedMemoryBasePage + sharedRegionId;
-        int virtualPage = pt.size();
-        pt.put(virtualPage, sharedPage);
-        pageInfoMap.put(sharedPage, new PageInfo(true));
-        
-        for (PCB p : ProcessManager.getInstance().getAllProcesses()) {
-            if (p.getProcessId() == pid) {
-                p.getWorkingSetPages().add(sharedPage);
-                break;
+        return mapSharedRegion(pid, sharedRegionId, pageSize);
+    }
+
+    public boolean hasSharedRegion(int key) {
+        lockAll();
+        try {
+            return sharedRegions.containsKey(key);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    // maps the region named key into the process, creating it with at least bytes of zeroed
+    // memory if it does not exist yet. returns the address of the mapping, or -1 if the
+    // existing region is smaller than bytes or there are not enough frames to pin
+    public int mapSharedRegion(int pid, int key, int bytes) {
+        if (bytes <= 0) return -1;
+        lockAll();
+        try {
+            PageTable pt = pageTable(pid);
+            if (pt == null) return -1;
+            int pages = (int) ((bytes + (long) pageSize - 1) / pageSize);
+            SharedRegion region = sharedRegions.get(key);
+            if (region == null) {
+                region = createSharedRegion(key, pages, false);
+                if (region == null) return -1;
+            } else if (region.frames.length < pages) {
+                return -1;
             }
+
+            int base = SHARED_BASE_ADDRESS / pageSize;
+            for (int free = 0; free < region.frames.length; ) {
+                if (pt.isMapped(base + free)) {
+                    base += free + 1;
+                    free = 0;
+                } else {
+                    free++;
+                }
+            }
+            for (int i = 0; i < region.frames.length; i++) {
+                pt.set(base + i, region.frames[i] | PageTable.VALID | PageTable.MAPPED | PageTable.PINNED);
+                invalidateTlbs(pid, base + i);
+                instructionCache.drop(pid, base + i);
+            }
+            region.mappings++;
+            processRegions.computeIfAbsent(pid, k -> new HashMap<>()).put(base, region);
+            sharedMaps++;
+            return base * pageSize;
+        } finally {
+            unlockAll();
         }
-        
-        return virtualPage * pageSize;
+    }
+
+    // removes the mapping that starts at address; the region's frames are freed with its
+    // last mapping unless it is one of the boot time regions
+    public boolean unmapSharedRegion(int pid, int address) {
+        if (address < 0 || address % pageSize != 0) return false;
+        lockAll();
+        try {
+            Map<Integer, SharedRegion> mapped = processRegions.get(pid);
+            SharedRegion region = mapped == null ? null : mapped.remove(address / pageSize);
+            if (region == null) return false;
+            if (mapped.isEmpty()) {
+                processRegions.remove(pid);
+            }
+            PageTable pt = pageTables[pid];
+            int base = address / pageSize;
+            for (int i = 0; i < region.frames.length; i++) {
+                pt.set(base + i, 0);
+                invalidateTlbs(pid, base + i);
+                instructionCache.drop(pid, base + i);
+            }
+            dropSharedMapping(region);
+            sharedUnmaps++;
+            return true;
+        } finally {
+            unlockAll();
+        }
+    }
+
+    // keys of the regions the process has mapped
+    public int[] sharedRegionKeys(int pid) {
+        lockAll();
+        try {
+            Map<Integer, SharedRegion> mapped = processRegions.get(pid);
+            return mapped == null ? new int[0] : mapped.values().stream().mapToInt(r -> r.key).toArray();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    // key of the region the process has mapped at address, or null if there is none
+    public Integer sharedRegionKey(int pid, int address) {
+        if (address < 0 || address % pageSize != 0) return null;
+        lockAll();
+        try {
+            Map<Integer, SharedRegion> mapped = processRegions.get(pid);
+            SharedRegion region = mapped == null ? null : mapped.get(address / pageSize);
+            return region == null ? null : region.key;
+        } finally {
+            unlockAll();
+        }
+    }
+
+    // writes into a region by key rather than through a mapping, for the kernel's own
+    // bookkeeping; a region that no longer exists is left alone
+    void writeSharedRegion(int key, int offset, int value) {
+        lockAll();
+        try {
+            SharedRegion region = sharedRegions.get(key);
+            if (region != null) {
+                frameStore.writeIntVolatile(region.frames[offset / pageSize], offset % pageSize, value);
+            }
+        } finally {
+            unlockAll();
+        }
+    }
+
+    // pinned frames are never evicted, so regions other than the boot time ones may take
+    // at most half of physical memory between them, leaving the rest to page
+    private SharedRegion createSharedRegion(int key, int pages, boolean persistent) {
+        if (!persistent && sharedFrameCount + pages > maxPhysicalPages / 2) return null;
+        int[] frames = new int[pages];
+        for (int i = 0; i < pages; i++) {
+            int frame = obtainFrame(-1L);
+            frameStore.clearFrame(frame);
+            framePinned[frame] = true;
+            frames[i] = frame;
+        }
+        sharedFrameCount += pages;
+        SharedRegion region = new SharedRegion(key, frames, persistent);
+        sharedRegions.put(key, region);
+        return region;
+    }
+
+    private void dropSharedMapping(SharedRegion region) {
+        if (--region.mappings > 0 || region.persistent) return;
+        sharedRegions.remove(region.key);
+        for (int frame : region.frames) {
+            framePinned[frame] = false;
+            freeFrames[freeFrameCount++] = frame;
+        }
+        sharedFrameCount -= region.frames.length;
     }
 
     public int readMemory(int pid, int address) {
+        int offset = checkOffset(address);
+        lockAll();
+        try {
+            int frame = translate(pid, address / pageSize, false);
+            return frameStore.readInt(frame, offset);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    public int readMemory(TLB tlb, int pid, int address) {
         int virtualPage = address / pageSize;
-        int offset = address % pageSize;
+        int offset = checkOffset(address);
         
-        Map<Integer, Integer> pt = pageTables.get(pid);
-        if (pt == null || !pt.containsKey(virtualPage)) {
-            throw new RuntimeException("Page fault for PID " + pid);
+        Lock lock = tlb.getLock();
+        lock.lock();
+        try {
+            int frame = tlb.lookup(pid, virtualPage, false);
+            if (frame >= 0) {
+                touchFrame(frame);
+                return frameStore.readInt(frame, offset);
+            }
+        } finally {
+            lock.unlock();
         }
         
-        int physicalPage = pt.get(virtualPage);
-        PageInfo info = pageInfoMap.get(physicalPage);
-        
-        if (!info.isValid) {
-            handlePageFault(physicalPage);
+        lockAll();
+        try {
+            int frame = translate(pid, virtualPage, false);
+            tlb.insert(pid, virtualPage, frame, PageTable.isWritable(pageTables[pid].get(virtualPage)));
+            return frameStore.readInt(frame, offset);
+        } finally {
+            unlockAll();
         }
-        
-        info.lastUsed = CPU.clockCycleCount;
-        byte[] data = physicalMemory.get(physicalPage);
-        return unpackInt(data, offset);
+    }
+
+    // the index of the superinstruction whose run covers address, or -1
+    private int fusedRun(int[] runs, int address) {
+        int low = 0;
+        int high = runs.length / ProgramImage.FUSED_RUN_INTS - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int run = mid * ProgramImage.FUSED_RUN_INTS;
+            if (address < runs[run]) {
+                high = mid - 1;
+            } else if (address >= runs[run] + runs[run + 1] * ProgramImage.INSTRUCTION_BYTES) {
+                low = mid + 1;
+            } else {
+                return run;
+            }
+        }
+        return -1;
+    }
+
+    private boolean inFusedRun(int pid, int address) {
+        if (fusedRuns.isEmpty()) return false;
+        int[] runs = fusedRuns.get(pid);
+        return runs != null && fusedRun(runs, address) >= 0;
+    }
+
+    // a write into the instructions a superinstruction covers would be lost behind the
+    // constants folded into it, so the original first instruction is put back first
+    private void unfuse(int pid, int address) {
+        int[] runs = fusedRuns.get(pid);
+        int run = runs == null ? -1 : fusedRun(runs, address);
+        if (run < 0) return;
+        int start = runs[run];
+        for (int word = 0; word < 3; word++) {
+            int wordAddress = start + word * 4;
+            int frame = translate(pid, wordAddress / pageSize, true);
+            frameStore.writeInt(frame, wordAddress % pageSize, runs[run + 2 + word]);
+            instructionCache.invalidate(pid, wordAddress / pageSize);
+        }
+        runs[run + 1] = 0;
+        unfusedRuns++;
     }
 
     public void writeMemory(int pid, int address, int value) {
         int virtualPage = address / pageSize;
-        int offset = address % pageSize;
+        int offset = checkOffset(address);
+        lockAll();
+        try {
+            unfuse(pid, address);
+            int frame = translate(pid, virtualPage, true);
+            frameStore.writeInt(frame, offset, value);
+            instructionCache.invalidate(pid, virtualPage);
+            updateWorkingSet(pid, virtualPage);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    public void writeMemory(TLB tlb, int pid, int address, int value) {
+        int virtualPage = address / pageSize;
+        int offset = checkOffset(address);
         
-        Map<Integer, Integer> pt = pageTables.get(pid);
-        if (pt == null || !pt.containsKey(virtualPage)) {
-            throw new RuntimeException("Page fault for PID " + pid);
+        Lock lock = tlb.getLock();
+        lock.lock();
+        try {
+            int frame = tlb.lookup(pid, virtualPage, true);
+            if (frame >= 0 && !inFusedRun(pid, address)) {
+                touchFrame(frame);
+                frameStore.writeInt(frame, offset, value);
+                instructionCache.invalidate(pid, virtualPage);
+                updateWorkingSet(pid, virtualPage);
+                return;
+            }
+        } finally {
+            lock.unlock();
         }
         
-        int physicalPage = pt.get(virtualPage);
-        PageInfo info = pageInfoMap.get(physicalPage);
+        lockAll();
+        try {
+            unfuse(pid, address);
+            int frame = translate(pid, virtualPage, true);
+            tlb.insert(pid, virtualPage, frame, true);
+            frameStore.writeInt(frame, offset, value);
+            instructionCache.invalidate(pid, virtualPage);
+            updateWorkingSet(pid, virtualPage);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    // volatile word access for memory other CPUs read and write without taking a lock, such
+    // as the indices of a channel ring; only pinned pages qualify, since a page that can be
+    // evicted or copied on write has no stable frame to publish through
+    public int readShared(TLB tlb, int pid, int address) {
+        return frameStore.readIntVolatile(sharedFrame(tlb, pid, address), checkOffset(address));
+    }
+
+    public void writeShared(TLB tlb, int pid, int address, int value) {
+        frameStore.writeIntVolatile(sharedFrame(tlb, pid, address), checkOffset(address), value);
+    }
+
+    // the frame outlives the TLB lock: a mapping can only be removed by its own process,
+    // which is the one running here
+    private int sharedFrame(TLB tlb, int pid, int address) {
+        int virtualPage = address / pageSize;
+        Lock lock = tlb.getLock();
+        lock.lock();
+        try {
+            int frame = tlb.lookup(pid, virtualPage, false);
+            if (frame >= 0 && framePinned[frame]) {
+                return frame;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        lockAll();
+        try {
+            PageTable pt = pageTable(pid);
+            int entry = pt == null || address < 0 ? 0 : pt.get(virtualPage);
+            if ((entry & PageTable.PINNED) == 0) {
+                throw new RuntimeException("Address " + address + " is not in shared memory");
+            }
+            tlb.insert(pid, virtualPage, PageTable.number(entry), PageTable.isWritable(entry));
+            return PageTable.number(entry);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    // decoded instructions of a code page, or null when the page cannot be cached because
+    // other address spaces may write to it; counts as a reference so cached code stays hot
+    public int[] decodedCodePage(TLB tlb, int pid, int virtualPage) {
+        Lock lock = tlb.getLock();
+        lock.lock();
+        try {
+            int frame = tlb.lookup(pid, virtualPage, false);
+            if (frame >= 0) {
+                touchFrame(frame);
+                return framePinned[frame] ? null : instructionCache.page(pid, virtualPage);
+            }
+        } finally {
+            lock.unlock();
+        }
         
-        if (!info.isValid) {
-            handlePageFault(physicalPage);
+        lockAll();
+        try {
+            PageTable pt = pageTable(pid);
+            int entry = pt == null ? 0 : pt.get(virtualPage);
+            if ((entry & PageTable.MAPPED) == 0 || (entry & PageTable.PINNED) != 0) {
+                return null;
+            }
+            int frame = translate(pid, virtualPage, false);
+            tlb.insert(pid, virtualPage, frame, PageTable.isWritable(pt.get(virtualPage)));
+            return instructionCache.page(pid, virtualPage);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    // page table walk, faulting the page in if needed; returns the frame holding it
+    private int translate(int pid, int virtualPage, boolean write) {
+        PageTable pt = pageTable(pid);
+        int entry = pt == null ? 0 : pt.get(virtualPage);
+        if ((entry & PageTable.MAPPED) == 0) {
+            throw new RuntimeException("Page fault for PID " + pid);
         }
         
-        info.isDirty = true;
-        info.lastUsed = CPU.clockCycleCount;
-        byte[] data = physicalMemory.get(physicalPage);
-        packInt(data, offset, value);
+        if (!PageTable.isValid(entry)) {
+            long start = System.nanoTime();
+            pageFaults++;
+            // read ahead first so its evictions can never pick the page being faulted in
+            readAhead(pid, pt, virtualPage);
+            entry = handlePageFault(pid, virtualPage, entry);
+            long nanos = System.nanoTime() - start;
+            faultNanos += nanos;
+            PCB faulting = process(pid);
+            if (faulting != null) {
+                faulting.getWorkingSet().fault();
+            }
+            metrics.pageFault(faulting, pid, virtualPage, nanos);
+            if (trace != null) {
+                trace.emit(TraceLog.Event.PAGE_FAULT, pid, virtualPage, PageTable.number(entry),
+                    (int) Math.min(nanos, Integer.MAX_VALUE), 0);
+            }
+        } else if ((entry & PageTable.PINNED) == 0) {
+            int frame = PageTable.number(entry);
+            if (framePrefetched[frame]) {
+                framePrefetched[frame] = false;
+                readaheadHits++;
+            }
+            touchFrame(frame);
+        }
+        if (write && (entry & PageTable.COPY_ON_WRITE) != 0) {
+            entry = breakCopyOnWrite(pid, pt, virtualPage, entry);
+        }
         
-        PCB p = ProcessManager.getInstance().getAllProcesses().stream()
-            .filter(proc -> proc.getProcessId() == pid)
-            .findFirst()
-            .orElse(null);
+        entry |= PageTable.REFERENCED;
+        if (write) {
+            entry |= PageTable.DIRTY;
+        }
+        pt.set(virtualPage, entry);
+        return PageTable.number(entry);
+    }
+
+    // gives the writer a private copy of a frame it still shares with forked processes;
+    // the last process left on a shared frame keeps it without a copy
+    private int breakCopyOnWrite(int pid, PageTable pt, int virtualPage, int entry) {
+        if (frameSharerCount[PageTable.number(entry)] > 0) {
+            long key = PageReplacementPolicy.pageKey(pid, virtualPage);
+            int copy = obtainFrame(key);
+            entry = pt.get(virtualPage);
+            if (!PageTable.isValid(entry)) {
+                // making room evicted the shared frame, so fault the page back in privately
+                freeFrames[freeFrameCount++] = copy;
+                return handlePageFault(pid, virtualPage, entry);
+            }
+            int shared = PageTable.number(entry);
+            frameStore.copyFrame(shared, copy);
+            unshareFrame(shared, pid, virtualPage);
+            frameOwnerPid[copy] = pid;
+            frameOwnerPage[copy] = virtualPage;
+            framePrefetched[copy] = false;
+            frameSwapSlot[copy] = -1;
+            frameLastUsed[copy] = (int) CPU.getClockCycleCount();
+            replacementPolicy.pageLoaded(copy, key);
+            entry = (entry & ~PageTable.NUMBER_MASK) | copy;
+            invalidateTlbs(pid, virtualPage);
+            copyOnWriteCopies++;
+        }
+        return entry & ~PageTable.COPY_ON_WRITE;
+    }
+
+    private void shareFrame(int frame, int pid, int virtualPage) {
+        long[] sharers = frameSharers[frame];
+        int count = frameSharerCount[frame];
+        if (sharers == null || count == sharers.length) {
+            sharers = sharers == null ? new long[2] : Arrays.copyOf(sharers, count * 2);
+            frameSharers[frame] = sharers;
+        }
+        sharers[count] = PageReplacementPolicy.pageKey(pid, virtualPage);
+        frameSharerCount[frame] = count + 1;
+    }
+
+    // drops one mapping of a shared frame; when the owner leaves, the last sharer takes over
+    private void unshareFrame(int frame, int pid, int virtualPage) {
+        long[] sharers = frameSharers[frame];
+        int count = frameSharerCount[frame] - 1;
+        if (frameOwnerPid[frame] == pid && frameOwnerPage[frame] == virtualPage) {
+            frameOwnerPid[frame] = (int) (sharers[count] >>> 32);
+            frameOwnerPage[frame] = (int) sharers[count];
+        } else {
+            long key = PageReplacementPolicy.pageKey(pid, virtualPage);
+            int i = 0;
+            while (sharers[i] != key) {
+                i++;
+            }
+            sharers[i] = sharers[count];
+        }
+        frameSharerCount[frame] = count;
+        if (count == 0) {
+            frameSharers[frame] = null;
+        }
+    }
+
+    // accesses within one clock tick count as a single reference; the policy has its own
+    // monitor because TLB hits on different CPUs report references concurrently
+    private void touchFrame(int frame) {
+        int now = (int) CPU.getClockCycleCount();
+        if (frameLastUsed[frame] != now) {
+            frameLastUsed[frame] = now;
+            if (!framePinned[frame]) {
+                synchronized (replacementPolicy) {
+                    replacementPolicy.pageAccessed(frame);
+                }
+            }
+        }
+    }
+
+    private PCB process(int pid) {
+        return processTable != null ? processTable.get(pid) : null;
+    }
+
+    // shared regions are pinned, so they are left out of working sets and out of the
+    // frames load control shares between them
+    private void updateWorkingSet(int pid, int virtualPage) {
+        if (virtualPage >= SHARED_BASE_ADDRESS / pageSize) return;
+        PCB p = process(pid);
         if (p != null) {
-            p.updateWorkingSet(physicalPage);
+            p.updateWorkingSet(virtualPage);
         }
     }
 
-    private void handlePageFault(int physicalPage) {
-        if (physicalMemory.size() >= maxPhysicalPages) {
-            evictPage();
+    private int checkOffset(int address) {
+        int offset = address % pageSize;
+        if (address < 0 || (offset & 3) != 0) {
+            throw new RuntimeException("Unaligned memory access at address " + address);
         }
+        return offset;
+    }
+
+    private int handlePageFault(int pid, int virtualPage, int entry) {
+        long key = PageReplacementPolicy.pageKey(pid, virtualPage);
+        int frame = obtainFrame(key);
         
-        if (diskStorage.containsKey(physicalPage)) {
-            physicalMemory.put(physicalPage, diskStorage.get(physicalPage));
+        int slot = -1;
+        if ((entry & PageTable.SWAPPED) != 0) {
+            slot = PageTable.number(entry);
+            swapIn(slot, frame);
+            if (swapSlotShares.containsKey(slot)) {
+                // other processes still need the slot, so this copy has no backing of its own
+                releaseSwapSlot(slot);
+                slot = -1;
+            }
         } else {
-            physicalMemory.put(physicalPage, new byte[pageSize]);
+            frameStore.clearFrame(frame);
+        }
+        frameOwnerPid[frame] = pid;
+        frameOwnerPage[frame] = virtualPage;
+        framePrefetched[frame] = false;
+        frameSwapSlot[frame] = slot;
+        frameLastUsed[frame] = (int) CPU.getClockCycleCount();
+        replacementPolicy.pageLoaded(frame, key);
+        return (entry & ~(PageTable.NUMBER_MASK | PageTable.SWAPPED | PageTable.COPY_ON_WRITE))
+            | PageTable.VALID | frame;
+    }
+
+    // a fault on the page after the previous fault (or after the last page read ahead)
+    // is treated as a sequential scan, and the next swapped-out pages come in with it
+    private void readAhead(int pid, PageTable pt, int virtualPage) {
+        if (readaheadWindow == 0) return;
+        boolean sequential = lastFaultPage[pid] == virtualPage - 1;
+        lastFaultPage[pid] = virtualPage;
+        if (!sequential) return;
+
+        for (int page = virtualPage + 1; page <= virtualPage + readaheadWindow; page++) {
+            int entry = pt.get(page);
+            if ((entry & PageTable.SWAPPED) == 0) break;
+            entry = handlePageFault(pid, page, entry);
+            pt.set(page, entry);
+            framePrefetched[PageTable.number(entry)] = true;
+            lastFaultPage[pid] = page;
+            readaheadPages++;
+        }
+    }
+
+    private void mapNewPage(int pid, int virtualPage) {
+        int entry = handlePageFault(pid, virtualPage, PageTable.MAPPED);
+        pageTables[pid].set(virtualPage, entry);
+        invalidateTlbs(pid, virtualPage);
+    }
+
+    private int obtainFrame(long incomingKey) {
+        if (freeFrameCount == 0) {
+            evictPage(incomingKey);
+        }
+        WritebackDaemon daemon = writeback;
+        if (daemon != null && freeFrameCount <= daemon.getLowWatermark()) {
+            daemon.wake();
+        }
+        return freeFrames[--freeFrameCount];
+    }
+
+    // evicts up to maxPages pages while free frames are below the watermark, so faults
+    // find a free frame instead of evicting on their own path; only pages that have no
+    // up to date copy in swap are written. the locks are taken per page so CPUs are held
+    // off for one eviction at a time. returns the number of frames freed
+    int reclaimFrames(int lowWatermark, int maxPages) {
+        int reclaimed = 0;
+        while (reclaimed < maxPages) {
+            lockAll();
+            try {
+                if (freeFrameCount >= lowWatermark) break;
+                int victim;
+                try {
+                    victim = replacementPolicy.selectVictim(-1L);
+                } catch (NoSuchElementException e) {
+                    break; // everything resident is pinned
+                }
+                if (evict(victim)) {
+                    backgroundWritebacks++;
+                }
+                backgroundReclaims++;
+                reclaimed++;
+            } finally {
+                unlockAll();
+            }
+        }
+        return reclaimed;
+    }
+
+    public void startWriteback(int lowWatermark, int batch) {
+        if (writeback != null) return;
+        // the daemon keeps this many frames empty, so at least one must be left to use
+        if (lowWatermark >= maxPhysicalPages) {
+            throw new IllegalArgumentException("Writeback watermark " + lowWatermark
+                + " leaves none of the " + maxPhysicalPages + " frames in use");
         }
-        pageInfoMap.get(physicalPage).isValid = true;
+        WritebackDaemon daemon = new WritebackDaemon(this, lowWatermark, batch);
+        writeback = daemon;
+        daemon.start();
     }
 
-    private void evictPage() {
-        int lruPage = pageInfoMap.entrySet().stream()
-            .filter(e -> e.getValue().isValid)
-            .min(Comparator.comparingInt(e -> e.getValue().lastUsed))
-            .map(Map.Entry::getKey)
-            .orElseThrow();
+    public void setReadahead(int pages) {
+        if (pages < 0) {
+            throw new IllegalArgumentException("Readahead window must not be negative: " + pages);
+        }
+        lockAll();
+        try {
+            readaheadWindow = pages;
+        } finally {
+            unlockAll();
+        }
+    }
+
+    private void evictPage(long incomingKey) {
+        int victim;
+        try {
+            victim = replacementPolicy.selectVictim(incomingKey);
+        } catch (NoSuchElementException e) {
+            throw new RuntimeException("No evictable page in physical memory");
+        }
+        evict(victim);
+    }
+
+    // frees a frame the replacement policy gave up; returns whether it was written to swap
+    private boolean evict(int victim) {
+        evictions++;
+        
+        int pid = frameOwnerPid[victim];
+        metrics.increment(MetricsRegistry.Counter.EVICTIONS, process(pid));
+        int virtualPage = frameOwnerPage[victim];
+        PageTable pt = pageTables[pid];
+        int entry = pt.get(virtualPage);
+        for (TLB tlb : tlbs) {
+            tlb.invalidateFrame(victim);
+        }
+        instructionCache.drop(pid, virtualPage);
         
-        PageInfo info = pageInfoMap.get(lruPage);
-        if (info.isDirty) {
-            diskStorage.put(lruPage, physicalMemory.get(lruPage));
+        // pages that never reached disk have no other copy, so they are saved even when clean
+        int slot = frameSwapSlot[victim];
+        boolean written = PageTable.isDirty(entry) || slot < 0;
+        if (written) {
+            if (slot < 0) {
+                slot = swapStore.allocateSlot();
+            }
+            swapOut(slot, victim);
+            dirtyWritebacks++;
+            metrics.increment(MetricsRegistry.Counter.DIRTY_WRITEBACKS, process(pid));
+        }
+        pt.set(virtualPage, (entry & PageTable.MAPPED) | PageTable.SWAPPED | slot);
+        // every process sharing the frame now shares the slot instead
+        int sharers = frameSharerCount[victim];
+        if (sharers > 0) {
+            for (int i = 0; i < sharers; i++) {
+                long key = frameSharers[victim][i];
+                int sharerPid = (int) (key >>> 32);
+                int sharerPage = (int) key;
+                PageTable sharerPt = pageTables[sharerPid];
+                sharerPt.set(sharerPage, (sharerPt.get(sharerPage) & PageTable.MAPPED) | PageTable.SWAPPED | slot);
+                instructionCache.drop(sharerPid, sharerPage);
+            }
+            swapSlotShares.merge(slot, sharers, Integer::sum);
+            frameSharers[victim] = null;
+            frameSharerCount[victim] = 0;
         }
-        physicalMemory.remove(lruPage);
-        info.isValid = false;
-        info.isDirty = false;
+        
+        frameOwnerPid[victim] = -1;
+        frameSwapSlot[victim] = -1;
+        freeFrames[freeFrameCount++] = victim;
+        return written;
     }
 
-    public int allocateHeap(PCB pcb, int size) {
-        int pid = pcb.getProcessId();
-        List<HeapBlock> heap = processHeapMap.computeIfAbsent(pid, k -> new ArrayList<>());
+    // returns every frame and swap slot of a finished process; its PID may be reused afterwards
+    public void releaseProcess(int pid) {
+        lockAll();
+        try {
+            PageTable pt = pageTable(pid);
+            if (pt == null) return;
         
-        for (int i = 0; i < heap.size(); i++) {
-            HeapBlock block = heap.get(i);
-            if (block.isFree && block.size >= size) {
-                if (block.size > size) {
-                    heap.add(i + 1, new HeapBlock(block.size - size, true));
+            pt.forEachMapped((virtualPage, entry) -> {
+                if ((entry & PageTable.PINNED) != 0) return;
+                if (PageTable.isValid(entry)) {
+                    int frame = PageTable.number(entry);
+                    if (frameSharerCount[frame] > 0) {
+                        unshareFrame(frame, pid, virtualPage);
+                        return;
+                    }
+                    replacementPolicy.pageRemoved(frame);
+                    releaseSwapSlot(frameSwapSlot[frame]);
+                    frameOwnerPid[frame] = -1;
+                    frameSwapSlot[frame] = -1;
+                    framePrefetched[frame] = false;
+                    freeFrames[freeFrameCount++] = frame;
+                } else if ((entry & PageTable.SWAPPED) != 0) {
+                    releaseSwapSlot(PageTable.number(entry));
                 }
-                block.size = size;
-                block.isFree = false;
-                int address = pcb.getHeapNextAddress() + (i * pageSize);
-                pcb.addHeapAllocation(address, block);
-                
-                int page = address / pageSize;
-                if (!pageTables.get(pid).containsKey(page)) {
-                    int physicalPage = allocatePages(1);
-                    pageTables.get(pid).put(page, physicalPage);
-                    pageInfoMap.put(physicalPage, new PageInfo(true));
-                    pcb.updateWorkingSet(physicalPage);
+            });
+            Map<Integer, SharedRegion> mapped = processRegions.remove(pid);
+            if (mapped != null) {
+                for (SharedRegion region : mapped.values()) {
+                    dropSharedMapping(region);
                 }
-                return address;
             }
+            pageTables[pid] = null;
+            processHeapMap.remove(pid);
+            fusedRuns.remove(pid);
+            instructionCache.removeProcess(pid);
+            for (TLB tlb : tlbs) {
+                tlb.flushProcess(pid);
+            }
+        } finally {
+            unlockAll();
         }
-        
-        int pagesNeeded = (size + pageSize - 1) / pageSize;
-        int startPage = allocatePages(pagesNeeded);
-        for (int i = 0; i < pagesNeeded; i++) {
-            heap.add(new HeapBlock(pageSize, false));
-            int virtualPage = (pcb.getHeapNextAddress() / pageSize) + i;
-            pageTables.get(pid).put(virtualPage, startPage + i);
-            pageInfoMap.put(startPage + i, new PageInfo(true));
-            pcb.updateWorkingSet(startPage + i);
+    }
+
+    private void releaseSwapSlot(int slot) {
+        if (slot < 0) return;
+        Integer shares = swapSlotShares.get(slot);
+        if (shares == null) {
+            swapStore.freeSlot(slot);
+        } else if (shares == 1) {
+            swapSlotShares.remove(slot);
+        } else {
+            swapSlotShares.put(slot, shares - 1);
         }
-        int address = pcb.getHeapNextAddress() + ((heap.size() - pagesNeeded) * pageSize);
-        pcb.addHeapAllocation(address, new HeapBlock(size, false));
-        return address;
     }
 
-    public void freeHeap(PCB pcb, int address) {
-        List<HeapBlock> heap = processHeapMap.get(pcb.getProcessId());
-        if (heap == null) return;
+    private void swapIn(int slot, int frame) {
+        long start = System.nanoTime();
+        swapStore.readPage(slot, frameStore, frame);
+        swapReadNanos += System.nanoTime() - start;
+        swapReads++;
+    }
 
-        HeapBlock block = pcb.getHeapAllocations().get(address);
-        if (block != null) {
-            block.isFree = true;
-            pcb.removeHeapAllocation(address);
-            mergeAdjacentBlocks(heap);
+    private void swapOut(int slot, int frame) {
+        long start = System.nanoTime();
+        swapStore.writePage(slot, frameStore, frame);
+        swapWritten.set(slot);
+        swapWriteNanos += System.nanoTime() - start;
+        swapWrites++;
+    }
+
+    // writes the memory, frame and swap sections of a checkpoint and returns the number of
+    // pages in them. an incremental checkpoint holds only the frames and swap slots written
+    // since the previous one; a full one lays every frame out page aligned so a restore
+    // can map them straight from the file
+    int save(Checkpoint.Output out, boolean full) {
+        lockAll();
+        try {
+            out.section(Checkpoint.Section.MEMORY);
+            out.putInts(freeFrames, freeFrameCount);
+            out.putInts(frameOwnerPid);
+            out.putInts(frameOwnerPage);
+            out.putInts(frameSwapSlot);
+            out.putInts(frameLastUsed);
+            out.putBooleans(framePinned);
+            out.putBooleans(framePrefetched);
+            for (int frame = 0; frame < maxPhysicalPages; frame++) {
+                out.putLongs(frameSharers[frame] == null ? new long[0] : frameSharers[frame], frameSharerCount[frame]);
+            }
+            out.putInt(swapSlotShares.size());
+            for (Map.Entry<Integer, Integer> shares : swapSlotShares.entrySet()) {
+                out.putInt(shares.getKey());
+                out.putInt(shares.getValue());
+            }
+            BitSet usedSlots = new BitSet();
+            int tables = 0;
+            for (PageTable pt : pageTables) {
+                tables += pt == null ? 0 : 1;
+            }
+            out.putInt(tables);
+            for (int pid = 0; pid < pageTables.length; pid++) {
+                PageTable pt = pageTables[pid];
+                if (pt == null) continue;
+                out.putInt(pid);
+                out.putInt(lastFaultPage[pid]);
+                out.putInt(pt.getMappedPages());
+                pt.forEachMapped((virtualPage, entry) -> {
+                    out.putInt(virtualPage);
+                    out.putInt(entry);
+                    if ((entry & PageTable.SWAPPED) != 0) {
+                        usedSlots.set(PageTable.number(entry));
+                    }
+                });
+            }
+            for (int slot : frameSwapSlot) {
+                if (slot >= 0) {
+                    usedSlots.set(slot);
+                }
+            }
+            out.putInt(sharedRegions.size());
+            for (SharedRegion region : sharedRegions.values()) {
+                out.putInt(region.key);
+                out.putBoolean(region.persistent);
+                out.putInt(region.mappings);
+                out.putInts(region.frames);
+            }
+            out.putInt(processRegions.size());
+            for (Map.Entry<Integer, Map<Integer, SharedRegion>> mapped : processRegions.entrySet()) {
+                out.putInt(mapped.getKey());
+                out.putInt(mapped.getValue().size());
+                for (Map.Entry<Integer, SharedRegion> mapping : mapped.getValue().entrySet()) {
+                    out.putInt(mapping.getKey());
+                    out.putInt(mapping.getValue().key);
+                }
+            }
+            out.putInt(processHeapMap.size());
+            for (Map.Entry<Integer, HeapAllocator> heap : processHeapMap.entrySet()) {
+                out.putInt(heap.getKey());
+                heap.getValue().save(out);
+            }
+            out.putInt(fusedRuns.size());
+            for (Map.Entry<Integer, int[]> runs : fusedRuns.entrySet()) {
+                out.putInt(runs.getKey());
+                out.putInts(runs.getValue());
+            }
+            out.putInts(usedSlots.stream().toArray());
+
+            int pages = 0;
+            if (full) {
+                out.align(pageSize);
+                out.section(Checkpoint.Section.FRAMES);
+            } else {
+                out.section(Checkpoint.Section.FRAMES);
+                out.putInt(0);
+            }
+            for (int frame = 0; frame < maxPhysicalPages; frame++) {
+                if (!frameStore.takeModified(frame) && !full) continue;
+                if (!full) {
+                    out.putInt(frame);
+                }
+                int index = out.reserve(pageSize); // may grow the buffer, so reserve first
+                frameStore.readFrame(frame, out.buffer(), index);
+                pages++;
+            }
+            if (!full) {
+                out.buffer().putInt((int) out.sectionOffset(Checkpoint.Section.FRAMES), pages);
+            }
+
+            out.section(Checkpoint.Section.SWAP);
+            int countAt = out.reserve(4);
+            int slots = 0;
+            for (int slot = usedSlots.nextSetBit(0); slot >= 0; slot = usedSlots.nextSetBit(slot + 1)) {
+                if (!full && !swapWritten.get(slot)) continue;
+                out.putInt(slot);
+                int index = out.reserve(pageSize);
+                swapStore.saveSlot(slot, out.buffer(), index);
+                slots++;
+            }
+            out.buffer().putInt(countAt, slots);
+            swapWritten.clear();
+            return pages + slots;
+        } finally {
+            unlockAll();
         }
     }
 
-    private void mergeAdjacentBlocks(List<HeapBlock> heap) {
-        for (int i = 0; i < heap.size() - 1; i++) {
-            HeapBlock current = heap.get(i);
-            HeapBlock next = heap.get(i + 1);
-            if (current.isFree && next.isFree) {
-                current.size += next.size;
-                heap.remove(i + 1);
-                i--;
+    // rebuilds memory from a checkpoint chain, full snapshot first: frames come from the
+    // full one and are patched by the rest, everything else comes from the last. the
+    // replacement policy starts over with resident pages loaded in last-use order
+    void restore(List<Checkpoint.Input> chain) throws IOException {
+        Checkpoint.Input last = chain.get(chain.size() - 1);
+        if (last.getPageSize() != pageSize || last.getFrameCount() != maxPhysicalPages) {
+            throw new IllegalArgumentException("Checkpoint has " + last.getFrameCount() + " frames of "
+                + last.getPageSize() + " bytes, memory has " + maxPhysicalPages + " of " + pageSize);
+        }
+        lockAll();
+        try {
+            last.seek(Checkpoint.Section.MEMORY);
+            int[] free = last.getInts();
+            System.arraycopy(free, 0, freeFrames, 0, free.length);
+            freeFrameCount = free.length;
+            System.arraycopy(last.getInts(), 0, frameOwnerPid, 0, maxPhysicalPages);
+            System.arraycopy(last.getInts(), 0, frameOwnerPage, 0, maxPhysicalPages);
+            System.arraycopy(last.getInts(), 0, frameSwapSlot, 0, maxPhysicalPages);
+            System.arraycopy(last.getInts(), 0, frameLastUsed, 0, maxPhysicalPages);
+            System.arraycopy(last.getBooleans(), 0, framePinned, 0, maxPhysicalPages);
+            System.arraycopy(last.getBooleans(), 0, framePrefetched, 0, maxPhysicalPages);
+            for (int frame = 0; frame < maxPhysicalPages; frame++) {
+                long[] sharers = last.getLongs();
+                frameSharers[frame] = sharers.length == 0 ? null : sharers;
+                frameSharerCount[frame] = sharers.length;
+            }
+            swapSlotShares.clear();
+            for (int i = last.getInt(); i > 0; i--) {
+                swapSlotShares.put(last.getInt(), last.getInt());
+            }
+            Arrays.fill(pageTables, null);
+            for (int i = last.getInt(); i > 0; i--) {
+                int pid = last.getInt();
+                PageTable pt = createPageTable(pid);
+                lastFaultPage[pid] = last.getInt();
+                for (int pages = last.getInt(); pages > 0; pages--) {
+                    pt.set(last.getInt(), last.getInt());
+                }
+            }
+            sharedRegions.clear();
+            sharedFrameCount = 0;
+            for (int i = last.getInt(); i > 0; i--) {
+                int key = last.getInt();
+                boolean persistent = last.getBoolean();
+                int mappings = last.getInt();
+                SharedRegion region = new SharedRegion(key, last.getInts(), persistent);
+                region.mappings = mappings;
+                sharedRegions.put(key, region);
+                sharedFrameCount += region.frames.length;
+            }
+            processRegions.clear();
+            for (int i = last.getInt(); i > 0; i--) {
+                Map<Integer, SharedRegion> mapped = new HashMap<>();
+                processRegions.put(last.getInt(), mapped);
+                for (int mappings = last.getInt(); mappings > 0; mappings--) {
+                    mapped.put(last.getInt(), sharedRegions.get(last.getInt()));
+                }
+            }
+            processHeapMap.clear();
+            for (int i = last.getInt(); i > 0; i--) {
+                processHeapMap.put(last.getInt(), new HeapAllocator(last));
             }
+            fusedRuns.clear();
+            for (int i = last.getInt(); i > 0; i--) {
+                fusedRuns.put(last.getInt(), last.getInts());
+            }
+            int[] usedSlots = last.getInts();
+
+            Checkpoint.Input first = chain.get(0);
+            frameStore = FrameStore.restore(frameStore.getKind(), maxPhysicalPages, pageSize,
+                first.file(), first.sectionOffset(Checkpoint.Section.FRAMES));
+            for (Checkpoint.Input delta : chain.subList(1, chain.size())) {
+                delta.seek(Checkpoint.Section.FRAMES);
+                for (int i = delta.getInt(); i > 0; i--) {
+                    int frame = delta.getInt();
+                    frameStore.writeFrame(frame, delta.buffer(), delta.skip(pageSize));
+                }
+            }
+            for (int frame = 0; frame < maxPhysicalPages; frame++) {
+                frameStore.takeModified(frame);
+            }
+
+            // slots keep their numbers: allocate up to the highest one and give back the gaps
+            BitSet used = new BitSet();
+            for (int slot : usedSlots) {
+                used.set(slot);
+            }
+            for (int slot = 0; slot < used.length(); slot++) {
+                swapStore.allocateSlot();
+            }
+            for (int slot = used.length() - 1; slot >= 0; slot--) {
+                if (!used.get(slot)) {
+                    swapStore.freeSlot(slot);
+                }
+            }
+            for (Checkpoint.Input in : chain) {
+                in.seek(Checkpoint.Section.SWAP);
+                for (int i = in.getInt(); i > 0; i--) {
+                    int slot = in.getInt();
+                    int index = in.skip(pageSize);
+                    if (used.get(slot)) {
+                        swapStore.loadSlot(slot, in.buffer(), index);
+                    }
+                }
+            }
+            swapWritten.clear();
+
+            Integer[] resident = new Integer[maxPhysicalPages];
+            int count = 0;
+            for (int frame = 0; frame < maxPhysicalPages; frame++) {
+                if (frameOwnerPid[frame] >= 0 && !framePinned[frame]) {
+                    resident[count++] = frame;
+                }
+            }
+            Arrays.sort(resident, 0, count, Comparator.comparingInt(frame -> frameLastUsed[frame]));
+            for (int i = 0; i < count; i++) {
+                int frame = resident[i];
+                replacementPolicy.pageLoaded(frame, PageReplacementPolicy.pageKey(frameOwnerPid[frame], frameOwnerPage[frame]));
+            }
+            for (TLB tlb : tlbs) {
+                tlb.flushAll();
+            }
+        } finally {
+            unlockAll();
+        }
+    }
+
+    public void close() {
+        WritebackDaemon daemon = writeback;
+        if (daemon != null) {
+            daemon.stop();
+            writeback = null;
         }
+        swapStore.close();
     }
 
-    private int allocatePages(int count) {
-        int startPage = physicalMemory.size();
-        for (int i = 0; i < count; i++) {
-            physicalMemory.put(startPage + i, new byte[pageSize]);
-            pageInfoMap.put(startPage + i, new PageInfo(true));
+    public int allocateHeap(PCB pcb, int size) {
+        long start = System.nanoTime();
+        lockAll();
+        try {
+            int pid = pcb.getProcessId();
+            HeapAllocator heap = processHeapMap.computeIfAbsent(pid, k -> new HeapAllocator());
+            int offset = heap.allocate(size);
+            if (offset < 0) return 0;
+
+            int address = pcb.getHeapNextAddress() + offset;
+            PageTable pt = pageTable(pid);
+            for (int page = address / pageSize; page <= (address + size - 1) / pageSize; page++) {
+                if (!pt.isMapped(page)) {
+                    mapNewPage(pid, page);
+                }
+                pcb.updateWorkingSet(page);
+            }
+            pcb.addHeapAllocation(address, new HeapBlock(size, false));
+            metrics.heapAlloc(pcb, size, address, System.nanoTime() - start);
+            return address;
+        } finally {
+            unlockAll();
         }
-        return startPage;
     }
 
-    private void packInt(byte[] data, int offset, int value) {
-        data[offset] = (byte)(value >> 24);
-        data[offset+1] = (byte)(value >> 16);
-        data[offset+2] = (byte)(value >> 8);
-        data[offset+3] = (byte)value;
+    public void freeHeap(PCB pcb, int address) {
+        lockAll();
+        try {
+            HeapAllocator heap = processHeapMap.get(pcb.getProcessId());
+            if (heap == null) return;
+
+            if (heap.free(address - pcb.getHeapNextAddress())) {
+                pcb.removeHeapAllocation(address);
+                metrics.increment(MetricsRegistry.Counter.HEAP_FREES, pcb);
+            }
+        } finally {
+            unlockAll();
+        }
     }
 
-    private int unpackInt(byte[] data, int offset) {
-        return (data[offset] & 0xFF) << 24 |
-               (data[offset+1] & 0xFF) << 16 |
-               (data[offset+2] & 0xFF) << 8 |
-               (data[offset+3] & 0xFF);
+    public HeapAllocator getHeapAllocator(int pid) {
+        return processHeapMap.get(pid);
     }
 
     public void printMemoryStats() {
-        System.out.println("\nMemory Statistics:");
-        System.out.println("------------------");
-        System.out.printf("Physical Pages: %d/%d (%.1f%% used)\n",
-            physicalMemory.size(), maxPhysicalPages,
-            (physicalMemory.size() * 100.0 / maxPhysicalPages));
-        System.out.printf("Disk Pages: %d\n", diskStorage.size());
-        System.out.println("Page States:");
-        pageInfoMap.forEach((page, info) -> {
-            System.out.printf("Page %d: %s, %s, LastUsed: %d\n",
-                page,
-                info.isValid ? "Valid" : "Invalid",
-                info.isDirty ? "Dirty" : "Clean",
-                info.lastUsed);
-        });
+        lockAll();
+        try {
+            System.out.println("\nMemory Statistics:");
+            System.out.println("------------------");
+            int residentPages = maxPhysicalPages - freeFrameCount;
+            System.out.printf("Physical Pages: %d/%d (%.1f%% used, %s frames)\n",
+                residentPages, maxPhysicalPages,
+                (residentPages * 100.0 / maxPhysicalPages), frameStore.getKind());
+            System.out.printf("Swap (%s): %d pages in use, %d reads (%d B, %.0f ns avg), %d writes (%d B, %.0f ns avg)\n",
+                swapStore.getKind(), swapStore.getUsedSlots(),
+                swapReads, swapReads * pageSize, swapReads == 0 ? 0.0 : (double) swapReadNanos / swapReads,
+                swapWrites, swapWrites * pageSize, swapWrites == 0 ? 0.0 : (double) swapWriteNanos / swapWrites);
+            System.out.printf("Replacement (%s): %d faults, %d evictions, %d dirty writebacks\n",
+                replacementPolicy.getKind(), pageFaults, evictions, dirtyWritebacks);
+            System.out.printf("Fault service: %.0f ns avg, %d frames reclaimed in the background (%d written), "
+                    + "readahead %d pages (%d used)\n",
+                pageFaults == 0 ? 0.0 : (double) faultNanos / pageFaults,
+                backgroundReclaims, backgroundWritebacks, readaheadPages, readaheadHits);
+            System.out.printf("Fork: %d forks (%.0f ns avg), %d frames shared, %d copy-on-write copies\n",
+                forks, forks == 0 ? 0.0 : (double) forkNanos / forks, framesSharedAtFork, copyOnWriteCopies);
+            if (unfusedRuns > 0) {
+                System.out.printf("Superinstructions undone by writes into their runs: %d\n", unfusedRuns);
+            }
+            System.out.printf("Shared memory: %d regions (%d frames pinned), %d maps, %d unmaps\n",
+                sharedRegions.size(), sharedFrameCount, sharedMaps, sharedUnmaps);
+            for (Map.Entry<Integer, HeapAllocator> heap : processHeapMap.entrySet()) {
+                System.out.printf("Heap PID %d: %s\n", heap.getKey(), heap.getValue());
+            }
+            System.out.printf("Program loads: %d images, %d B in %.2f ms (%.1f MB/s)\n",
+                programLoads, programBytesLoaded, programLoadNanos / 1e6,
+                programLoadNanos == 0 ? 0.0 : programBytesLoaded * 1e3 / programLoadNanos);
+            System.out.println("Page States:");
+            for (int pid = 0; pid < pageTables.length; pid++) {
+                if (pageTables[pid] == null) continue;
+                int owner = pid;
+                pageTables[pid].forEachMapped((page, entry) -> {
+                    boolean valid = PageTable.isValid(entry);
+                    System.out.printf("PID %d Page %d: %s, %s, %s, LastUsed: %d\n",
+                        owner, page,
+                        valid ? "Frame " + PageTable.number(entry) : "Invalid",
+                        PageTable.isDirty(entry) ? "Dirty" : "Clean",
+                        (entry & PageTable.PINNED) != 0 ? "Pinned"
+                            : (entry & PageTable.REFERENCED) != 0 ? "Referenced" : "Unreferenced",
+                        valid ? frameLastUsed[PageTable.number(entry)] : 0);
+                });
+            }
+        } finally {
+            unlockAll();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,61 @@
+import java.nio.ByteBuffer;
+import java.util.*;
+
+// swap kept on the Java heap, one array per slot
+public class MemorySwapStore implements SwapStore {
+    private final int pageSize;
+    private final SwapSlotAllocator slots = new SwapSlotAllocator(PageTable.NUMBER_MASK + 1);
+    private byte[][] pages = new byte[16][];
+
+    MemorySwapStore(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public Kind getKind() { return Kind.MEMORY; }
+    public int getPageSize() { return pageSize; }
+
+    public int allocateSlot() {
+        int slot = slots.allocate();
+        if (slot >= pages.length) {
+            pages = Arrays.copyOf(pages, Math.max(slot + 1, pages.length * 2));
+        }
+        return slot;
+    }
+
+    public void freeSlot(int slot) {
+        pages[slot] = null;
+        slots.free(slot);
+    }
+
+    public int getUsedSlots() { return slots.getUsedSlots(); }
+    public int getCapacitySlots() { return slots.getMaxSlots(); }
+
+    public void writePage(int slot, FrameStore frames, int frame) {
+        if (pages[slot] == null) {
+            pages[slot] = new byte[pageSize];
+        }
+        frames.readFrame(frame, pages[slot], 0);
+    }
+
+    public void readPage(int slot, FrameStore frames, int frame) {
+        frames.writeFrame(frame, pages[slot], 0);
+    }
+
+    public void saveSlot(int slot, ByteBuffer dst, int dstIndex) {
+        byte[] page = pages[slot];
+        if (page != null) {
+            dst.put(dstIndex, page, 0, pageSize);
+        }
+    }
+
+    public void loadSlot(int slot, ByteBuffer src, int srcIndex) {
+        if (pages[slot] == null) {
+            pages[slot] = new byte[pageSize];
+        }
+        src.get(srcIndex, pages[slot], 0, pageSize);
+    }
+
+    public void close() {
+        pages = new byte[0][];
+    }
+}
@@ -0,0 +1,74 @@
+import jdk.jfr.*;
+
+// JFR views of the registry; an event costs nothing beyond the shouldCommit check
+// unless a recording has it enabled
+final class MetricEvents {
+    private MetricEvents() {}
+
+    @Name("os.PageFault")
+    @Label("Page Fault")
+    @Category("OS Simulator")
+    static final class PageFault extends Event {
+        @Label("PID") int pid;
+        @Label("Virtual Page") int virtualPage;
+        @Label("Service Time") @Timespan(Timespan.NANOSECONDS) long serviceTime;
+    }
+
+    @Name("os.ContextSwitch")
+    @Label("Context Switch")
+    @Category("OS Simulator")
+    static final class ContextSwitch extends Event {
+        @Label("CPU") int cpu;
+        @Label("PID") int pid;
+        @Label("Ready Wait Cycles") long readyWaitCycles;
+    }
+
+    @Name("os.LockAttempt")
+    @Label("Lock Attempt")
+    @Category("OS Simulator")
+    static final class LockAttempt extends Event {
+        @Label("PID") int pid;
+        @Label("Lock") int lockId;
+        @Label("Acquired") boolean acquired;
+    }
+
+    @Name("os.HeapAlloc")
+    @Label("Heap Allocation")
+    @Category("OS Simulator")
+    static final class HeapAlloc extends Event {
+        @Label("PID") int pid;
+        @Label("Size") @DataAmount int size;
+        @Label("Address") int address;
+        @Label("Service Time") @Timespan(Timespan.NANOSECONDS) long serviceTime;
+    }
+
+    @Name("os.WorkingSet")
+    @Label("Working Set Sample")
+    @Category("OS Simulator")
+    static final class WorkingSet extends Event {
+        @Label("PID") int pid;
+        @Label("Pages") int pages;
+        @Label("Faults per 1000 Cycles") long faultFrequency;
+    }
+
+    // periodic copy of the global counters
+    @Name("os.Counters")
+    @Label("OS Counters")
+    @Category("OS Simulator")
+    @Period("1 s")
+    static final class Counters extends Event {
+        @Label("Instructions Retired") long instructionsRetired;
+        @Label("Page Faults") long pageFaults;
+        @Label("Evictions") long evictions;
+        @Label("Dirty Writebacks") long dirtyWritebacks;
+        @Label("Context Switches") long contextSwitches;
+        @Label("Lock Acquires") long lockAcquires;
+        @Label("Lock Failures") long lockFailures;
+        @Label("Event Waits") long eventWaits;
+        @Label("Event Wakes") long eventWakes;
+        @Label("Heap Allocs") long heapAllocs;
+        @Label("Heap Frees") long heapFrees;
+        @Label("Suspensions") long suspensions;
+        @Label("Resumptions") long resumptions;
+    }
+}
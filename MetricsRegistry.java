@@ -0,0 +1,255 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import jdk.jfr.*;
+
+// system-wide counters and latency histograms, each counter also kept per process.
+// every recording call starts with the enabled check, so a disabled registry costs a
+// field load and a branch; global counters are LongAdders because all CPUs hit them
+public class MetricsRegistry {
+    public enum Counter {
+        INSTRUCTIONS_RETIRED, PAGE_FAULTS, EVICTIONS, DIRTY_WRITEBACKS, CONTEXT_SWITCHES,
+        LOCK_ACQUIRES, LOCK_FAILURES, EVENT_WAITS, EVENT_WAKES, HEAP_ALLOCS, HEAP_FREES,
+        SUSPENSIONS, RESUMPTIONS
+    }
+
+    // the working set timers are samples of a size and a rate, taken each time a process
+    // leaves a CPU, rather than durations
+    public enum Timer {
+        PAGE_FAULT_NANOS, HEAP_ALLOC_NANOS, READY_WAIT_CYCLES, WORKING_SET_PAGES, FAULTS_PER_KILOCYCLE
+    }
+
+    public static final MetricsRegistry DISABLED = new MetricsRegistry(false);
+
+    private final boolean enabled;
+    private final LongAdder[] counters = new LongAdder[Counter.values().length];
+    private final AtomicHistogram[] timers = new AtomicHistogram[Timer.values().length];
+    private final Queue<ProcessMetrics> processes = new ConcurrentLinkedQueue<>();
+    private final Runnable countersHook = this::emitCounters;
+    private volatile LockManager locks;
+
+    public MetricsRegistry(boolean enabled) {
+        this.enabled = enabled;
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        for (int i = 0; i < timers.length; i++) {
+            timers[i] = new AtomicHistogram();
+        }
+        if (enabled) {
+            FlightRecorder.addPeriodicEvent(MetricEvents.Counters.class, countersHook);
+        }
+    }
+
+    public boolean isEnabled() { return enabled; }
+
+    // the lock table's per-lock statistics are exported with the snapshot
+    public void attachLocks(LockManager lockManager) {
+        if (!enabled) return;
+        this.locks = lockManager;
+    }
+
+    public long get(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    public LatencyHistogram getTimer(Timer timer) {
+        return timers[timer.ordinal()].snapshot();
+    }
+
+    public void processStarted(PCB process) {
+        if (!enabled) return;
+        processes.add(process.getMetrics());
+    }
+
+    public void increment(Counter counter, PCB process) {
+        add(counter, process, 1);
+    }
+
+    // process may be null for work no process is charged for
+    public void add(Counter counter, PCB process, long delta) {
+        if (!enabled) return;
+        counters[counter.ordinal()].add(delta);
+        if (process != null) {
+            process.getMetrics().add(counter, delta);
+        }
+    }
+
+    public void record(Timer timer, long value) {
+        if (!enabled) return;
+        timers[timer.ordinal()].record(value);
+    }
+
+    public void pageFault(PCB process, int pid, int virtualPage, long nanos) {
+        if (!enabled) return;
+        increment(Counter.PAGE_FAULTS, process);
+        record(Timer.PAGE_FAULT_NANOS, nanos);
+        MetricEvents.PageFault event = new MetricEvents.PageFault();
+        if (event.shouldCommit()) {
+            event.pid = pid;
+            event.virtualPage = virtualPage;
+            event.serviceTime = nanos;
+            event.commit();
+        }
+    }
+
+    public void contextSwitch(int cpuId, PCB process, long readyWaitCycles) {
+        if (!enabled) return;
+        increment(Counter.CONTEXT_SWITCHES, process);
+        record(Timer.READY_WAIT_CYCLES, readyWaitCycles);
+        MetricEvents.ContextSwitch event = new MetricEvents.ContextSwitch();
+        if (event.shouldCommit()) {
+            event.cpu = cpuId;
+            event.pid = process.getProcessId();
+            event.readyWaitCycles = readyWaitCycles;
+            event.commit();
+        }
+    }
+
+    public void workingSet(PCB process, WorkingSet workingSet) {
+        if (!enabled) return;
+        int pages = workingSet.size();
+        long faultFrequency = workingSet.getFaultFrequency();
+        record(Timer.WORKING_SET_PAGES, pages);
+        record(Timer.FAULTS_PER_KILOCYCLE, faultFrequency);
+        process.getMetrics().sampleWorkingSet(pages, faultFrequency);
+        MetricEvents.WorkingSet event = new MetricEvents.WorkingSet();
+        if (event.shouldCommit()) {
+            event.pid = process.getProcessId();
+            event.pages = pages;
+            event.faultFrequency = faultFrequency;
+            event.commit();
+        }
+    }
+
+    public void lockAttempt(PCB process, int lockId, boolean acquired) {
+        if (!enabled) return;
+        increment(acquired ? Counter.LOCK_ACQUIRES : Counter.LOCK_FAILURES, process);
+        MetricEvents.LockAttempt event = new MetricEvents.LockAttempt();
+        if (event.shouldCommit()) {
+            event.pid = process.getProcessId();
+            event.lockId = lockId;
+            event.acquired = acquired;
+            event.commit();
+        }
+    }
+
+    public void heapAlloc(PCB process, int size, int address, long nanos) {
+        if (!enabled) return;
+        increment(Counter.HEAP_ALLOCS, process);
+        record(Timer.HEAP_ALLOC_NANOS, nanos);
+        MetricEvents.HeapAlloc event = new MetricEvents.HeapAlloc();
+        if (event.shouldCommit()) {
+            event.pid = process.getProcessId();
+            event.size = size;
+            event.address = address;
+            event.serviceTime = nanos;
+            event.commit();
+        }
+    }
+
+    private void emitCounters() {
+        MetricEvents.Counters event = new MetricEvents.Counters();
+        event.instructionsRetired = get(Counter.INSTRUCTIONS_RETIRED);
+        event.pageFaults = get(Counter.PAGE_FAULTS);
+        event.evictions = get(Counter.EVICTIONS);
+        event.dirtyWritebacks = get(Counter.DIRTY_WRITEBACKS);
+        event.contextSwitches = get(Counter.CONTEXT_SWITCHES);
+        event.lockAcquires = get(Counter.LOCK_ACQUIRES);
+        event.lockFailures = get(Counter.LOCK_FAILURES);
+        event.eventWaits = get(Counter.EVENT_WAITS);
+        event.eventWakes = get(Counter.EVENT_WAKES);
+        event.heapAllocs = get(Counter.HEAP_ALLOCS);
+        event.heapFrees = get(Counter.HEAP_FREES);
+        event.suspensions = get(Counter.SUSPENSIONS);
+        event.resumptions = get(Counter.RESUMPTIONS);
+        event.commit();
+    }
+
+    public void close() {
+        if (enabled) {
+            FlightRecorder.removePeriodicEvent(countersHook);
+        }
+    }
+
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"enabled\": ").append(enabled);
+        json.append(",\n  \"clockCycles\": ").append(CPU.getClockCycleCount());
+        json.append(",\n  \"counters\": {");
+        for (Counter counter : Counter.values()) {
+            json.append(counter.ordinal() == 0 ? "\n" : ",\n");
+            json.append("    \"").append(jsonName(counter)).append("\": ").append(get(counter));
+        }
+        json.append("\n  },\n  \"timers\": {");
+        for (Timer timer : Timer.values()) {
+            LatencyHistogram h = getTimer(timer);
+            json.append(timer.ordinal() == 0 ? "\n" : ",\n");
+            json.append("    \"").append(jsonName(timer)).append("\": {")
+                .append("\"count\": ").append(h.getCount())
+                .append(", \"sum\": ").append(h.getSum())
+                .append(", \"max\": ").append(h.getMax())
+                .append(", \"p50\": ").append(h.getPercentile(50))
+                .append(", \"p99\": ").append(h.getPercentile(99))
+                .append(", \"buckets\": ").append(Arrays.toString(trimmed(h.getBuckets())))
+                .append('}');
+        }
+        json.append("\n  },\n  \"processes\": [");
+        boolean first = true;
+        for (ProcessMetrics process : processes) {
+            json.append(first ? "\n" : ",\n");
+            first = false;
+            json.append("    {\"pid\": ").append(process.getProcessId());
+            for (Counter counter : Counter.values()) {
+                json.append(", \"").append(jsonName(counter)).append("\": ").append(process.get(counter));
+            }
+            json.append(", \"working_set_pages\": ").append(process.getWorkingSetPages())
+                .append(", \"faults_per_kilocycle\": ").append(process.getFaultFrequency());
+            json.append('}');
+        }
+        json.append("\n  ],\n  \"locks\": [");
+        LockManager lockManager = locks;
+        first = true;
+        for (int id = 0; lockManager != null && id < LockManager.LOCK_COUNT; id++) {
+            if (lockManager.getAcquisitions(id) == 0 && lockManager.getContended(id) == 0) continue;
+            LatencyHistogram wait = lockManager.getWaitCycles(id);
+            LatencyHistogram hold = lockManager.getHoldCycles(id);
+            json.append(first ? "\n" : ",\n");
+            first = false;
+            json.append("    {\"id\": ").append(id)
+                .append(", \"acquisitions\": ").append(lockManager.getAcquisitions(id))
+                .append(", \"contended\": ").append(lockManager.getContended(id))
+                .append(", \"spins\": ").append(lockManager.getSpins(id))
+                .append(", \"handoffs\": ").append(lockManager.getHandoffs(id))
+                .append(", \"wait_cycles\": {\"count\": ").append(wait.getCount())
+                .append(", \"sum\": ").append(wait.getSum())
+                .append(", \"max\": ").append(wait.getMax())
+                .append("}, \"hold_cycles\": {\"count\": ").append(hold.getCount())
+                .append(", \"sum\": ").append(hold.getSum())
+                .append(", \"max\": ").append(hold.getMax())
+                .append("}}");
+        }
+        json.append("\n  ]\n}\n");
+        return json.toString();
+    }
+
+    public void writeJson(Path file) throws IOException {
+        Files.write(file, toJson().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String jsonName(Enum<?> metric) {
+        return metric.name().toLowerCase();
+    }
+
+    // log2 buckets past the largest recorded value are all empty
+    private static long[] trimmed(long[] buckets) {
+        int length = buckets.length;
+        while (length > 0 && buckets[length - 1] == 0) {
+            length--;
+        }
+        return Arrays.copyOf(buckets, length);
+    }
+}
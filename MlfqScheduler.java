@@ -0,0 +1,147 @@
+import java.util.*;
+import java.util.function.*;
+
+// multi-level feedback queue: level 0 runs first with the shortest quantum.
+// a process that burns its whole quantum drops a level, one that blocks early
+// moves up, and one that has waited too long at the head of its queue is aged up
+public class MlfqScheduler implements Scheduler {
+    public static final int LEVELS = 8;
+    public static final int BASE_QUANTUM = 10;
+    public static final long DEFAULT_AGING_CYCLES = 500;
+
+    private final ArrayDeque<PCB>[] queues;
+    private final int[] quanta = new int[LEVELS];
+    private final long agingCycles;
+    private int readyMask;
+    private int size;
+
+    private final LatencyHistogram[] waitTimes = new LatencyHistogram[LEVELS];
+    private final long[] dispatches = new long[LEVELS];
+    private final long[] cyclesRun = new long[LEVELS];
+    private final long[] demotions = new long[LEVELS];
+    private final long[] promotions = new long[LEVELS];
+    private long agedProcesses;
+
+    public MlfqScheduler() {
+        this(DEFAULT_AGING_CYCLES);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public MlfqScheduler(long agingCycles) {
+        if (agingCycles <= 0) {
+            throw new IllegalArgumentException("Aging threshold must be positive: " + agingCycles);
+        }
+        this.agingCycles = agingCycles;
+        this.queues = new ArrayDeque[LEVELS];
+        for (int level = 0; level < LEVELS; level++) {
+            queues[level] = new ArrayDeque<>();
+            quanta[level] = BASE_QUANTUM << level;
+            waitTimes[level] = new LatencyHistogram();
+        }
+    }
+
+    public Kind getKind() { return Kind.MLFQ; }
+
+    public int getQuantum(int level) { return quanta[level]; }
+
+    public void add(PCB process, long now) {
+        if (process.getState() == PCB.ProcessState.NEW) {
+            // static priority 10 starts at the top, every two points below drops a level
+            int level = (10 - process.getPriority()) / 2;
+            process.setSchedulerLevel(Math.max(0, Math.min(LEVELS - 1, level)));
+        }
+        enqueue(process, now);
+    }
+
+    public void preempted(PCB process, int cycles, long now) {
+        int level = process.getSchedulerLevel();
+        cyclesRun[level] += cycles;
+        if (level < LEVELS - 1) {
+            demotions[level]++;
+            process.setSchedulerLevel(level + 1);
+        }
+        enqueue(process, now);
+    }
+
+    public void blocked(PCB process) {
+        int level = process.getSchedulerLevel();
+        cyclesRun[level] += quanta[level] - Math.max(process.getTimeQuantum(), 0);
+        if (level > 0) {
+            promotions[level]++;
+            process.setSchedulerLevel(level - 1);
+        }
+    }
+
+    public PCB next(long now) {
+        if (readyMask == 0) return null;
+        age(now);
+        int level = Integer.numberOfTrailingZeros(readyMask);
+        PCB process = dequeue(level);
+        waitTimes[level].record(now - process.getReadySince());
+        dispatches[level]++;
+        process.setTimeQuantum(quanta[level]);
+        return process;
+    }
+
+    public int size() { return size; }
+
+    public void forEach(Consumer<PCB> action) {
+        for (ArrayDeque<PCB> queue : queues) {
+            queue.forEach(action);
+        }
+    }
+
+    // queues are FIFO, so only each head can have waited past the threshold;
+    // checking one process per level keeps selection constant time
+    private void age(long now) {
+        int mask = readyMask & ~1;
+        while (mask != 0) {
+            int level = Integer.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            PCB head = queues[level].peekFirst();
+            if (now - head.getReadySince() >= agingCycles) {
+                dequeue(level);
+                agedProcesses++;
+                requeue(head, level - 1);
+            }
+        }
+    }
+
+    // moves an aged process up without restarting its wait time
+    private void requeue(PCB process, int level) {
+        process.setSchedulerLevel(level);
+        queues[level].addLast(process);
+        readyMask |= 1 << level;
+        size++;
+    }
+
+    private void enqueue(PCB process, long now) {
+        process.setReadySince(now);
+        int level = process.getSchedulerLevel();
+        queues[level].addLast(process);
+        readyMask |= 1 << level;
+        size++;
+    }
+
+    private PCB dequeue(int level) {
+        PCB process = queues[level].pollFirst();
+        if (queues[level].isEmpty()) {
+            readyMask &= ~(1 << level);
+        }
+        size--;
+        return process;
+    }
+
+    public void printStatistics() {
+        System.out.println("\nScheduler Statistics (MLFQ):");
+        System.out.println("----------------------------");
+        System.out.printf("Aged Processes: %d\n", agedProcesses);
+        for (int level = 0; level < LEVELS; level++) {
+            if (dispatches[level] == 0 && demotions[level] == 0 && promotions[level] == 0) continue;
+            System.out.printf("Level %d (quantum %d): dispatches=%d cycles=%d demoted=%d promoted=%d\n",
+                level, quanta[level], dispatches[level], cyclesRun[level],
+                demotions[level], promotions[level]);
+            System.out.printf("  Ready wait (cycles): %s\n", waitTimes[level]);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class OffHeapFrameStore implements FrameStore {
+    private static final VarHandle INT_VIEW =
+        MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private final ByteBuffer memory;
+    private final byte[] zeroPage;
+    private final int frameCount;
+    private final int pageSize;
+    // plain stores to separate elements, so CPUs writing different frames do not race
+    private final boolean[] modified;
+
+    OffHeapFrameStore(int frameCount, int pageSize, int capacity) {
+        this(frameCount, pageSize, ByteBuffer.allocateDirect(capacity));
+    }
+
+    // memory may be a file mapping, such as the frame image of a checkpoint
+    OffHeapFrameStore(int frameCount, int pageSize, ByteBuffer memory) {
+        this.frameCount = frameCount;
+        this.pageSize = pageSize;
+        this.memory = memory;
+        this.zeroPage = new byte[pageSize];
+        this.modified = new boolean[frameCount];
+    }
+
+    public Kind getKind() { return Kind.OFF_HEAP; }
+    public int getFrameCount() { return frameCount; }
+    public int getPageSize() { return pageSize; }
+
+    public int readInt(int frame, int offset) {
+        return (int) INT_VIEW.get(memory, frame * pageSize + offset);
+    }
+
+    public void writeInt(int frame, int offset, int value) {
+        modified[frame] = true;
+        INT_VIEW.set(memory, frame * pageSize + offset, value);
+    }
+
+    public int readIntVolatile(int frame, int offset) {
+        return (int) INT_VIEW.getVolatile(memory, frame * pageSize + offset);
+    }
+
+    public void writeIntVolatile(int frame, int offset, int value) {
+        modified[frame] = true;
+        INT_VIEW.setVolatile(memory, frame * pageSize + offset, value);
+    }
+
+    public void clearFrame(int frame) {
+        modified[frame] = true;
+        memory.put(frame * pageSize, zeroPage, 0, pageSize);
+    }
+
+    public void copyFrame(int srcFrame, int dstFrame) {
+        modified[dstFrame] = true;
+        memory.put(dstFrame * pageSize, memory, srcFrame * pageSize, pageSize);
+    }
+
+    public void readFrame(int frame, byte[] dst, int dstOffset) {
+        memory.get(frame * pageSize, dst, dstOffset, pageSize);
+    }
+
+    public void writeFrame(int frame, byte[] src, int srcOffset) {
+        modified[frame] = true;
+        memory.put(frame * pageSize, src, srcOffset, pageSize);
+    }
+
+    public void readFrame(int frame, ByteBuffer dst, int dstIndex) {
+        dst.put(dstIndex, memory, frame * pageSize, pageSize);
+    }
+
+    public void writeFrame(int frame, ByteBuffer src, int srcIndex, int length) {
+        modified[frame] = true;
+        memory.put(frame * pageSize, src, srcIndex, length);
+    }
+
+    public boolean takeModified(int frame) {
+        boolean written = modified[frame];
+        modified[frame] = false;
+        return written;
+    }
+}
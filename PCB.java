@@ -1,28 +1,47 @@
 import java.util.*;
+import java.util.stream.*;
 
 public class PCB {
-    public enum ProcessState { NEW, READY, RUNNING, WAITING_SLEEP, WAITING_EVENT, TERMINATED }
+    public enum ProcessState { NEW, READY, RUNNING, WAITING_SLEEP, WAITING_EVENT, WAITING_LOCK, WAITING_CHILD, TERMINATED }
     
     private final int processId;
     private final int[] registers = new int[16];
-    private ProcessState state;
+    private volatile ProcessState state;
     private final int priority;
     private int timeQuantum;
-    private final List<Integer> workingSetPages = new ArrayList<>();
-    private int sleepCounter;
+    private int schedulerLevel;
+    private long readySince;
+    private final WorkingSet workingSet = new WorkingSet();
+    private boolean suspended;
+    private long activeSince; // working set time of the last admission or resumption
+    private long wakeUpCycle;
+    private PCB timerNext;
     private int contextSwitchCount;
     private boolean signFlag;
     private boolean zeroFlag;
     private final Set<Integer> heldLocks = new HashSet<>();
     private int waitingEventId = -1;
+    private int waitingLockId = -1;
+    private long lockWaitStart;
+    private int lockSpins;
+    private int conditionLockId = -1;
+    private PCB parent;
+    private final Map<Integer, PCB> children = new HashMap<>();
+    private final Map<Integer, Integer> exitedChildren = new LinkedHashMap<>(); // pid -> exit status
+    private int exitStatus;
+    private int waitingChildPid;
+    private int waitPidRegister;
+    private int waitStatusRegister;
     private final Map<Integer, HeapBlock> heapAllocations = new HashMap<>();
     private int heapNextAddress = 0x1000;
+    private final ProcessMetrics metrics;
 
     public PCB(int pid, int priority) {
         this.processId = pid;
         this.priority = priority;
         this.state = ProcessState.NEW;
         this.timeQuantum = 10;
+        this.metrics = new ProcessMetrics(pid);
     }
 
     public int getProcessId() { return processId; }
@@ -30,25 +49,54 @@ public class PCB {
     public int getTimeQuantum() { return timeQuantum; }
     public ProcessState getState() { return state; }
     public int[] getRegisters() { return registers.clone(); }
-    public List<Integer> getWorkingSetPages() { return new ArrayList<>(workingSetPages); }
-    public int getSleepCounter() { return sleepCounter; }
+    public List<Integer> getWorkingSetPages() { return Arrays.stream(workingSet.pages()).boxed().collect(Collectors.toList()); }
+    public WorkingSet getWorkingSet() { return workingSet; }
+    boolean isSuspended() { return suspended; }
+    long getActiveSince() { return activeSince; }
+    public long getWakeUpCycle() { return wakeUpCycle; }
+    PCB getTimerNext() { return timerNext; }
+    int getSchedulerLevel() { return schedulerLevel; }
+    long getReadySince() { return readySince; }
     public boolean getSignFlag() { return signFlag; }
     public boolean getZeroFlag() { return zeroFlag; }
     public int getContextSwitchCount() { return contextSwitchCount; }
     public Set<Integer> getHeldLocks() { return new HashSet<>(heldLocks); }
     public int getWaitingEventId() { return waitingEventId; }
+    public int getWaitingLockId() { return waitingLockId; }
+    long getLockWaitStart() { return lockWaitStart; }
+    int getLockSpins() { return lockSpins; }
+    int getConditionLockId() { return conditionLockId; }
+    PCB getParent() { return parent; }
+    public int getExitStatus() { return exitStatus; }
+    int getWaitingChildPid() { return waitingChildPid; }
+    int getWaitPidRegister() { return waitPidRegister; }
+    int getWaitStatusRegister() { return waitStatusRegister; }
+    Collection<PCB> getChildren() { return children.values(); }
     public Map<Integer, HeapBlock> getHeapAllocations() { return new HashMap<>(heapAllocations); }
     public int getHeapNextAddress() { return heapNextAddress; }
+    public ProcessMetrics getMetrics() { return metrics; }
 
     public void setTimeQuantum(int quantum) { this.timeQuantum = quantum; }
     public void setState(ProcessState state) { this.state = state; }
-    public void setSleepCounter(int count) { 
-        this.sleepCounter = Math.max(count, 1);
+    public void sleepUntil(long cycle) {
+        this.wakeUpCycle = cycle;
         this.state = ProcessState.WAITING_SLEEP;
     }
+    void setWakeUpCycle(long cycle) { this.wakeUpCycle = cycle; }
+    void setTimerNext(PCB next) { this.timerNext = next; }
+    void setSchedulerLevel(int level) { this.schedulerLevel = level; }
+    void setReadySince(long cycle) { this.readySince = cycle; }
     public void setSignFlag(boolean flag) { this.signFlag = flag; }
     public void setZeroFlag(boolean flag) { this.zeroFlag = flag; }
     public void setWaitingEventId(int eventId) { this.waitingEventId = eventId; }
+    void setWaitingLockId(int lockId) { this.waitingLockId = lockId; }
+    void setLockWaitStart(long cycle) { this.lockWaitStart = cycle; }
+    void setLockSpins(int spins) { this.lockSpins = spins; }
+    void setConditionLockId(int lockId) { this.conditionLockId = lockId; }
+    void setParent(PCB parent) { this.parent = parent; }
+    void setSuspended(boolean suspended) { this.suspended = suspended; }
+    void setActiveSince(long time) { this.activeSince = time; }
+    void setRegister(int register, int value) { registers[register] = value; }
     public void setHeapNextAddress(int addr) { this.heapNextAddress = addr; }
 
     public void incrementContextSwitches() { contextSwitchCount++; }
@@ -57,32 +105,147 @@ public class PCB {
     public boolean isHoldingLock(int lockId) { return heldLocks.contains(lockId); }
     public void addHeapAllocation(int address, HeapBlock block) { heapAllocations.put(address, block); }
     public void removeHeapAllocation(int address) { heapAllocations.remove(address); }
-    public void updateWorkingSet(int page) { 
-        if (!workingSetPages.contains(page)) {
-            workingSetPages.add(page);
-            Collections.sort(workingSetPages);
-        }
+    public void updateWorkingSet(int page) { workingSet.reference(page); }
+
+    public void saveRegisters(int[] cpuRegisters) {
+        System.arraycopy(cpuRegisters, 0, registers, 0, 16);
     }
 
-    public void decrementSleep() {
-        if (sleepCounter > 0) {
-            sleepCounter--;
-            if (sleepCounter == 0) {
-                state = ProcessState.READY;
-            }
+    // held locks stay recorded until the process is reaped, which hands them to their waiters
+    public void terminate() {
+        terminate(0);
+    }
+
+    public void terminate(int status) {
+        this.exitStatus = status;
+        setState(ProcessState.TERMINATED);
+    }
+
+    // a forked child starts as a copy of the parent's user state; locks are not inherited
+    void forkFrom(PCB parent) {
+        System.arraycopy(parent.registers, 0, registers, 0, registers.length);
+        this.signFlag = parent.signFlag;
+        this.zeroFlag = parent.zeroFlag;
+        this.heapAllocations.putAll(parent.heapAllocations);
+        this.heapNextAddress = parent.heapNextAddress;
+        this.workingSet.copyFrom(parent.workingSet);
+        this.parent = parent;
+        parent.children.put(processId, this);
+    }
+
+    void childExited(PCB child) {
+        children.remove(child.processId);
+        exitedChildren.put(child.processId, child.exitStatus);
+    }
+
+    boolean hasChildren() {
+        return !children.isEmpty() || !exitedChildren.isEmpty();
+    }
+
+    // an exited child matching pid (any child when pid <= 0) whose status is not yet
+    // collected, or -1
+    int exitedChild(int pid) {
+        if (pid > 0) {
+            return exitedChildren.containsKey(pid) ? pid : -1;
         }
+        Iterator<Integer> it = exitedChildren.keySet().iterator();
+        return it.hasNext() ? it.next() : -1;
     }
 
-    public void saveRegisters(int[] cpuRegisters) {
-        System.arraycopy(cpuRegisters, 0, registers, 0, 16);
+    int takeExitStatus(int childPid) {
+        return exitedChildren.remove(childPid);
     }
 
-    public void terminate() {
-        for (int lockId : heldLocks) {
-            CPU.releaseLock(lockId);
+    boolean isChild(int pid) {
+        return pid <= 0 ? hasChildren() : children.containsKey(pid) || exitedChildren.containsKey(pid);
+    }
+
+    void waitForChild(int pid, int pidRegister, int statusRegister) {
+        this.waitingChildPid = pid;
+        this.waitPidRegister = pidRegister;
+        this.waitStatusRegister = statusRegister;
+        this.state = ProcessState.WAITING_CHILD;
+    }
+
+    // everything but the parent link, which needs the whole process table to resolve
+    void save(Checkpoint.Output out) {
+        out.putInt(processId);
+        out.putInt(priority);
+        out.putInts(registers);
+        out.putInt(state.ordinal());
+        out.putInt(timeQuantum);
+        out.putInt(schedulerLevel);
+        out.putLong(readySince);
+        out.putLong(wakeUpCycle);
+        out.putInt(contextSwitchCount);
+        out.putBoolean(signFlag);
+        out.putBoolean(zeroFlag);
+        out.putInts(workingSet.pages());
+        out.putInts(heldLocks.stream().mapToInt(Integer::intValue).toArray());
+        out.putInt(waitingEventId);
+        out.putInt(waitingLockId);
+        out.putLong(lockWaitStart);
+        out.putInt(lockSpins);
+        out.putInt(conditionLockId);
+        out.putInt(exitedChildren.size());
+        for (Map.Entry<Integer, Integer> child : exitedChildren.entrySet()) {
+            out.putInt(child.getKey());
+            out.putInt(child.getValue());
         }
-        heldLocks.clear();
-        setState(ProcessState.TERMINATED);
+        out.putInt(exitStatus);
+        out.putInt(waitingChildPid);
+        out.putInt(waitPidRegister);
+        out.putInt(waitStatusRegister);
+        out.putInt(heapAllocations.size());
+        for (Map.Entry<Integer, HeapBlock> block : heapAllocations.entrySet()) {
+            out.putInt(block.getKey());
+            out.putInt(block.getValue().size);
+            out.putBoolean(block.getValue().isFree);
+        }
+        out.putInt(heapNextAddress);
+    }
+
+    static PCB restore(Checkpoint.Input in) {
+        PCB pcb = new PCB(in.getInt(), in.getInt());
+        int[] registers = in.getInts();
+        System.arraycopy(registers, 0, pcb.registers, 0, pcb.registers.length);
+        pcb.state = ProcessState.values()[in.getInt()];
+        pcb.timeQuantum = in.getInt();
+        pcb.schedulerLevel = in.getInt();
+        pcb.readySince = in.getLong();
+        pcb.wakeUpCycle = in.getLong();
+        pcb.contextSwitchCount = in.getInt();
+        pcb.signFlag = in.getBoolean();
+        pcb.zeroFlag = in.getBoolean();
+        for (int page : in.getInts()) {
+            pcb.workingSet.reference(page);
+        }
+        for (int lockId : in.getInts()) {
+            pcb.heldLocks.add(lockId);
+        }
+        pcb.waitingEventId = in.getInt();
+        pcb.waitingLockId = in.getInt();
+        pcb.lockWaitStart = in.getLong();
+        pcb.lockSpins = in.getInt();
+        pcb.conditionLockId = in.getInt();
+        for (int i = in.getInt(); i > 0; i--) {
+            pcb.exitedChildren.put(in.getInt(), in.getInt());
+        }
+        pcb.exitStatus = in.getInt();
+        pcb.waitingChildPid = in.getInt();
+        pcb.waitPidRegister = in.getInt();
+        pcb.waitStatusRegister = in.getInt();
+        for (int i = in.getInt(); i > 0; i--) {
+            int address = in.getInt();
+            pcb.heapAllocations.put(address, new HeapBlock(in.getInt(), in.getBoolean()));
+        }
+        pcb.heapNextAddress = in.getInt();
+        return pcb;
+    }
+
+    void restoreParent(PCB parent) {
+        this.parent = parent;
+        parent.children.put(processId, this);
     }
 
     public void printStatistics() {
@@ -92,11 +255,12 @@ public class PCB {
         System.out.printf("State: %s\n", state);
         System.out.printf("Context Switches: %d\n", contextSwitchCount);
         System.out.printf("Time Quantum: %d\n", timeQuantum);
-        System.out.printf("Sleep Counter: %d\n", sleepCounter);
+        System.out.printf("Wake-up Cycle: %d\n", wakeUpCycle);
         System.out.printf("Waiting Event: %d\n", waitingEventId);
+        System.out.printf("Waiting Lock: %d\n", waitingLockId);
         System.out.printf("Held Locks: %s\n", heldLocks);
         System.out.printf("Heap Allocations: %s\n", heapAllocations);
-        System.out.printf("Working Set Pages: %s\n", workingSetPages);
+        System.out.printf("Working Set: %s %s\n", workingSet, getWorkingSetPages());
         System.out.printf("Flags: [SIGN: %b, ZERO: %b]\n", signFlag, zeroFlag);
         System.out.println("Register Dump:");
         for (int i = 0; i < registers.length; i++) {
@@ -0,0 +1,35 @@
+public interface PageReplacementPolicy {
+    enum Kind { LRU, CLOCK, TWO_Q, ARC }
+
+    static PageReplacementPolicy create(Kind kind, int frameCount) {
+        switch (kind) {
+            case CLOCK:
+                return new ClockPolicy(frameCount);
+            case TWO_Q:
+                return new TwoQueuePolicy(frameCount);
+            case ARC:
+                return new ArcPolicy(frameCount);
+            case LRU:
+            default:
+                return new LruPolicy(frameCount);
+        }
+    }
+
+    // page keys identify the page independently of the frame it lives in
+    static long pageKey(int pid, int virtualPage) {
+        return ((long) pid << 32) | (virtualPage & 0xFFFFFFFFL);
+    }
+
+    Kind getKind();
+
+    // a page identified by key was just brought into frame
+    void pageLoaded(int frame, long key);
+
+    void pageAccessed(int frame);
+
+    // picks and forgets a resident frame to make room for incomingKey
+    int selectVictim(long incomingKey);
+
+    // frame was released without being chosen as a victim
+    void pageRemoved(int frame);
+}
@@ -0,0 +1,94 @@
+import java.util.*;
+
+public class PageTable {
+    // page table entry layout: low 24 bits hold the frame while VALID, otherwise the swap slot
+    public static final int NUMBER_MASK = (1 << 24) - 1;
+    public static final int VALID = 1 << 24;
+    public static final int DIRTY = 1 << 25;
+    public static final int REFERENCED = 1 << 26;
+    public static final int MAPPED = 1 << 27;
+    public static final int SWAPPED = 1 << 28;
+    public static final int PINNED = 1 << 29;
+    public static final int COPY_ON_WRITE = 1 << 30; // frame or swap slot shared after a fork
+
+    private static final int LEVEL_BITS = 10;
+    private static final int LEVEL_SIZE = 1 << LEVEL_BITS;
+    private static final int LEVEL_MASK = LEVEL_SIZE - 1;
+
+    private int[][] directory = new int[1][];
+    private int mappedPages;
+
+    public int get(int virtualPage) {
+        int top = virtualPage >>> LEVEL_BITS;
+        if (top >= directory.length) {
+            return 0;
+        }
+        int[] table = directory[top];
+        return table == null ? 0 : table[virtualPage & LEVEL_MASK];
+    }
+
+    public void set(int virtualPage, int entry) {
+        int top = virtualPage >>> LEVEL_BITS;
+        if (top >= directory.length) {
+            directory = Arrays.copyOf(directory, Math.max(top + 1, directory.length * 2));
+        }
+        int[] table = directory[top];
+        if (table == null) {
+            table = new int[LEVEL_SIZE];
+            directory[top] = table;
+        }
+        int index = virtualPage & LEVEL_MASK;
+        if ((table[index] & MAPPED) == 0 && (entry & MAPPED) != 0) {
+            mappedPages++;
+        } else if ((table[index] & MAPPED) != 0 && (entry & MAPPED) == 0) {
+            mappedPages--;
+        }
+        table[index] = entry;
+    }
+
+    public void setFlags(int virtualPage, int flags) {
+        set(virtualPage, get(virtualPage) | flags);
+    }
+
+    public void clearFlags(int virtualPage, int flags) {
+        set(virtualPage, get(virtualPage) & ~flags);
+    }
+
+    public boolean isMapped(int virtualPage) {
+        return (get(virtualPage) & MAPPED) != 0;
+    }
+
+    public int getMappedPages() { return mappedPages; }
+
+    public int firstUnmapped(int fromPage) {
+        int page = fromPage;
+        while (isMapped(page)) {
+            page++;
+        }
+        return page;
+    }
+
+    // calls the visitor for every mapped page, in virtual page order
+    public void forEachMapped(EntryVisitor visitor) {
+        for (int top = 0; top < directory.length; top++) {
+            int[] table = directory[top];
+            if (table == null) continue;
+            for (int i = 0; i < LEVEL_SIZE; i++) {
+                if ((table[i] & MAPPED) != 0) {
+                    visitor.visit((top << LEVEL_BITS) | i, table[i]);
+                }
+            }
+        }
+    }
+
+    public interface EntryVisitor {
+        void visit(int virtualPage, int entry);
+    }
+
+    public static int number(int entry) { return entry & NUMBER_MASK; }
+    public static boolean isValid(int entry) { return (entry & VALID) != 0; }
+    public static boolean isDirty(int entry) { return (entry & DIRTY) != 0; }
+
+    // TLBs may only cache write access for pages that are dirty and not shared
+    public static boolean isWritable(int entry) { return (entry & (DIRTY | COPY_ON_WRITE)) == DIRTY; }
+}
@@ -0,0 +1,111 @@
+import java.util.*;
+
+// load-time pass between the loader and MemoryManager.loadProgram. runs of up to
+// MAX_FUSED instructions that only write one register (LOAD_VALUE, ADD_VALUE and
+// INCREMENT, optionally ending with a SHOW_REG of that register) are constant folded
+// into one superinstruction in the slot of the first. the instructions it covers stay
+// in place behind it, so no address moves and a process preempted inside the run
+// resumes on the originals. the image remembers each replaced first instruction, and a
+// write into a run puts it back so the run executes one instruction at a time again.
+// code written at run time is not optimized again
+public class PeepholeOptimizer {
+    public static final int MAX_FUSED = 3;
+
+    // a superinstruction's arg1 packs the register, the number of instructions it covers
+    // and the cycles it is charged; arg2 is the folded constant
+    static int register(int packed) { return packed & 0xFF; }
+    static int length(int packed) { return Math.max((packed >>> 8) & 0xFF, 1); }
+    static int charge(int packed) { return Math.max((packed >>> 16) & 0xFF, 1); }
+
+    private static int pack(int register, int length, int charge) {
+        return register | length << 8 | charge << 16;
+    }
+
+    // exact charges a superinstruction every cycle it replaces, so scheduling sees the
+    // same cycle counts as unoptimized code, but a quantum may end up to MAX_FUSED - 1
+    // cycles late; otherwise it costs one cycle like any other instruction
+    private final boolean exactQuantum;
+    private long instructions;
+    private long superinstructions;
+    private long eliminated;
+
+    public PeepholeOptimizer(boolean exactQuantum) {
+        this.exactQuantum = exactQuantum;
+    }
+
+    public ProgramImage optimize(ProgramImage image) {
+        List<Instruction> program = image.toInstructions();
+        int fused = 0;
+        int[] runs = new int[0];
+        for (int i = 0; i < program.size(); ) {
+            Instruction first = program.get(i);
+            if (!isFoldable(first)) {
+                i++;
+                continue;
+            }
+            int register = first.arg1;
+            boolean load = false;
+            int value = 0;
+            int end = i;
+            // an ADD after a LOAD folds into the loaded constant and a later LOAD makes
+            // everything before it dead; additions wrap exactly as they would one by one
+            while (end < program.size() && end - i < MAX_FUSED && isFoldable(program.get(end))
+                    && program.get(end).arg1 == register) {
+                Instruction next = program.get(end);
+                if (next.opcode == InstructionSet.LOAD_VALUE) {
+                    load = true;
+                    value = next.arg2;
+                } else {
+                    value += next.opcode == InstructionSet.INCREMENT ? 1 : next.arg2;
+                }
+                end++;
+            }
+            boolean show = end < program.size() && end - i < MAX_FUSED
+                && program.get(end).opcode == InstructionSet.SHOW_REG && program.get(end).arg1 == register;
+            if (show) {
+                end++;
+            }
+            int length = end - i;
+            if (length > 1) {
+                InstructionSet opcode = load
+                    ? (show ? InstructionSet.FUSED_LOAD_SHOW : InstructionSet.FUSED_LOAD)
+                    : (show ? InstructionSet.FUSED_ADD_SHOW : InstructionSet.FUSED_ADD);
+                if ((fused + 1) * ProgramImage.FUSED_RUN_INTS > runs.length) {
+                    runs = Arrays.copyOf(runs, Math.max(runs.length * 2, 8 * ProgramImage.FUSED_RUN_INTS));
+                }
+                int run = fused * ProgramImage.FUSED_RUN_INTS;
+                runs[run] = i * ProgramImage.INSTRUCTION_BYTES;
+                runs[run + 1] = length;
+                runs[run + 2] = first.opcode.ordinal();
+                runs[run + 3] = first.arg1;
+                runs[run + 4] = first.arg2;
+                program.set(i, new Instruction(opcode, pack(register, length, exactQuantum ? length : 1), value));
+                fused++;
+                eliminated += length - 1;
+            }
+            i = end;
+        }
+        instructions += program.size();
+        superinstructions += fused;
+        return fused == 0 ? image
+            : ProgramImage.of(program, Arrays.copyOf(runs, fused * ProgramImage.FUSED_RUN_INTS));
+    }
+
+    // the IP register is rewritten after every instruction, so writes to it stay as they are
+    private static boolean isFoldable(Instruction instr) {
+        if (instr.arg1 < 0 || instr.arg1 >= 16 || instr.arg1 == CPU.IP_REGISTER) return false;
+        return instr.opcode == InstructionSet.LOAD_VALUE || instr.opcode == InstructionSet.ADD_VALUE
+            || instr.opcode == InstructionSet.INCREMENT;
+    }
+
+    public long getInstructions() { return instructions; }
+    public long getSuperinstructions() { return superinstructions; }
+    public long getEliminated() { return eliminated; }
+
+    @Override
+    public String toString() {
+        return String.format("%d superinstructions in %d instructions, %d dispatches eliminated (%.1f%%, %s quantum)",
+            superinstructions, instructions, eliminated, 100.0 * eliminated / Math.max(instructions, 1),
+            exactQuantum ? "exact" : "fused");
+    }
+}
@@ -0,0 +1,47 @@
+import java.util.*;
+import java.util.function.*;
+
+// the original scheduler: one heap ordered by static priority, fixed quantum
+public class PriorityScheduler implements Scheduler {
+    public static final int QUANTUM = 10;
+
+    private final PriorityQueue<PCB> readyQueue = new PriorityQueue<>(
+        Comparator.comparingInt(PCB::getPriority).reversed()
+    );
+    private final LatencyHistogram waitTimes = new LatencyHistogram();
+
+    public Kind getKind() { return Kind.PRIORITY; }
+
+    public void add(PCB process, long now) {
+        process.setReadySince(now);
+        readyQueue.add(process);
+    }
+
+    public void preempted(PCB process, int cycles, long now) {
+        add(process, now);
+    }
+
+    public void blocked(PCB process) {
+    }
+
+    public PCB next(long now) {
+        PCB process = readyQueue.poll();
+        if (process != null) {
+            waitTimes.record(now - process.getReadySince());
+            process.setTimeQuantum(QUANTUM);
+        }
+        return process;
+    }
+
+    public int size() { return readyQueue.size(); }
+
+    public void forEach(Consumer<PCB> action) {
+        readyQueue.forEach(action);
+    }
+
+    public void printStatistics() {
+        System.out.println("\nScheduler Statistics (PRIORITY):");
+        System.out.println("--------------------------------");
+        System.out.printf("Ready wait (cycles): %s\n", waitTimes);
+    }
+}
@@ -1,142 +1,570 @@
 import java.util.*;
 
+// all scheduler state is guarded by this object's monitor so several CPUs can share it
 public class ProcessManager {
-    private static ProcessManager instance;
-    private final PriorityQueue<PCB> readyQueue;
-    private final List<PCB> sleepingProcesses;
-    private final Map<Integer, List<PCB>> eventWaitingProcesses;
-    private PCB currentProcess;
+    private final Scheduler scheduler;
+    private final TimerWheel sleepTimers;
     private final MemoryManager memoryManager;
-    private int nextPid = 1;
-    private final List<PCB> allProcesses = new ArrayList<>();
+    private final ProcessTable processTable = new ProcessTable();
+    private final LockManager locks = new LockManager();
+    private final SyncManager sync = new SyncManager();
+    // the not-empty and not-full events of each channel key, kept when the region goes
+    // away so a channel reopened under the same key does not leak sync objects
+    private final Map<Integer, int[]> channelEvents = new HashMap<>();
+    private final MetricsRegistry metrics;
+    private TraceLog trace;
+    private Checkpoint checkpoints;
+    private JitCompiler jit;
+    private LoadControl loadControl;
+    private long workingSetWindow = WorkingSet.DEFAULT_WINDOW;
+    private boolean verbose = true;
+    private int runningProcesses;
+    private long exitedProcesses;
+    private long failedProcesses;
 
-    public static ProcessManager getInstance() {
-        if (instance == null) {
-            throw new IllegalStateException("ProcessManager not initialized");
-        }
-        return instance;
+    public ProcessManager(MemoryManager mm) {
+        this(mm, Scheduler.create(Scheduler.Kind.PRIORITY));
     }
 
-    public ProcessManager(MemoryManager mm) {
-        instance = this;
+    public ProcessManager(MemoryManager mm, Scheduler scheduler) {
+        this(mm, scheduler, MetricsRegistry.DISABLED);
+    }
+
+    public ProcessManager(MemoryManager mm, Scheduler scheduler, MetricsRegistry metrics) {
         this.memoryManager = mm;
-        this.readyQueue = new PriorityQueue<>(
-            Comparator.comparingInt(PCB::getPriority).reversed()
-        );
-        this.sleepingProcesses = new ArrayList<>();
-        this.eventWaitingProcesses = new HashMap<>();
+        mm.attachProcessTable(processTable);
+        mm.attachMetrics(metrics);
+        metrics.attachLocks(locks);
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+        this.sleepTimers = new TimerWheel(CPU.getClockCycleCount());
+    }
+
+    // must happen before any CPU starts running
+    public void attachTrace(TraceLog log) {
+        this.trace = log;
+        memoryManager.attachTrace(log);
+    }
+
+    // must happen before any CPU starts running
+    public void attachCheckpoints(Checkpoint checkpoint) {
+        this.checkpoints = checkpoint;
+    }
+
+    // false drops the per-event console lines, for headless runs
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    // must happen before the CPUs are created
+    public void attachJit(JitCompiler compiler) {
+        this.jit = compiler;
+    }
+
+    // tau, the cycles of its own running time a process's working set looks back over;
+    // must be set before any process is created
+    public void setWorkingSetWindow(long cycles) {
+        this.workingSetWindow = cycles;
+    }
+
+    // must happen before any process is created
+    public void attachLoadControl(LoadControl control) {
+        this.loadControl = control;
     }
 
     public MemoryManager getMemoryManager() { return memoryManager; }
-    public List<PCB> getAllProcesses() { return new ArrayList<>(allProcesses); }
+    public Scheduler getScheduler() { return scheduler; }
+    public MetricsRegistry getMetrics() { return metrics; }
+    public TraceLog getTrace() { return trace; }
+    public JitCompiler getJit() { return jit; }
+    public LoadControl getLoadControl() { return loadControl; }
+    public LockManager getLocks() { return locks; }
+    public SyncManager getSync() { return sync; }
+    public ProcessTable getProcessTable() { return processTable; }
+    public PCB getProcess(int pid) { return processTable.get(pid); }
+    public synchronized long getExitedProcesses() { return exitedProcesses; }
+    public synchronized long getFailedProcesses() { return failedProcesses; }
+
+    public synchronized void createProcess(List<Instruction> program, int priority) {
+        createProcess(ProgramImage.of(program), priority);
+    }
+
+    public synchronized void createProcess(ProgramImage image, int priority) {
+        PCB pcb = new PCB(processTable.allocatePid(), priority);
+        pcb.getWorkingSet().setWindow(workingSetWindow);
+        processTable.add(pcb);
+        metrics.processStarted(pcb);
+        memoryManager.loadImage(pcb, image);
+        admit(pcb);
+        scheduler.add(pcb, CPU.getClockCycleCount());
+        if (verbose) {
+            System.out.printf("Created process %d with priority %d\n", pcb.getProcessId(), priority);
+        }
+    }
+
+    // clones the running process with its address space shared copy-on-write; the child
+    // resumes after the FORK with 0 in the result register, the parent gets the child's pid
+    public synchronized int fork(CPU cpu, PCB parent, int resultRegister) {
+        PCB child = new PCB(processTable.allocatePid(), parent.getPriority());
+        cpu.saveContext(parent);
+        child.forkFrom(parent);
+        child.setRegister(resultRegister, 0);
+        processTable.add(child);
+        metrics.processStarted(child);
+        memoryManager.forkAddressSpace(parent, child);
+        admit(child);
+        scheduler.add(child, CPU.getClockCycleCount());
+        if (verbose) {
+            System.out.printf("Process %d forked child %d\n", parent.getProcessId(), child.getProcessId());
+        }
+        return child.getProcessId();
+    }
+
+    // counts the pages the process starts with, which load control needs to admit it
+    private void admit(PCB process) {
+        process.getWorkingSet().advance(0);
+        if (loadControl != null) {
+            loadControl.admit(process);
+        }
+    }
 
-    public void createProcess(List<Instruction> program, int priority) {
-        PCB pcb = new PCB(nextPid++, priority);
-        memoryManager.loadProgram(pcb, program);
-        readyQueue.add(pcb);
-        allProcesses.add(pcb);
-        System.out.printf("Created process %d with priority %d\n", pcb.getProcessId(), priority);
+    // collects the exit status of a child, any child when childPid <= 0, blocking until one
+    // exits; a process with no such child gets -1 in both registers at once
+    public synchronized boolean waitForChild(CPU cpu, PCB process, int childPid, int pidRegister, int statusRegister) {
+        int exited = process.exitedChild(childPid);
+        if (exited > 0 || !process.isChild(childPid)) {
+            cpu.setRegister(pidRegister, exited);
+            cpu.setRegister(statusRegister, exited > 0 ? process.takeExitStatus(exited) : -1);
+            return false;
+        }
+        process.waitForChild(childPid, pidRegister, statusRegister);
+        scheduler.blocked(process);
+        detach(cpu);
+        if (verbose) {
+            System.out.printf("Process %d waiting for %s\n", process.getProcessId(),
+                childPid > 0 ? "child " + childPid : "any child");
+        }
+        return true;
     }
 
-    public void addSleepingProcess(PCB process) {
-        if (process.getSleepCounter() > 0) {
-            sleepingProcesses.add(process);
-            System.out.printf("Process %d sleeping for %d cycles\n",
-                process.getProcessId(), process.getSleepCounter());
-        } else {
-            readyQueue.add(process);
+    private void notifyParent(PCB child) {
+        PCB parent = child.getParent();
+        if (parent == null) return;
+        parent.childExited(child);
+        if (parent.getState() != PCB.ProcessState.WAITING_CHILD) return;
+        int exited = parent.exitedChild(parent.getWaitingChildPid());
+        if (exited > 0) {
+            parent.setRegister(parent.getWaitPidRegister(), exited);
+            parent.setRegister(parent.getWaitStatusRegister(), parent.takeExitStatus(exited));
+            parent.setState(PCB.ProcessState.READY);
+            scheduler.add(parent, CPU.getClockCycleCount());
+            if (verbose) {
+                System.out.printf("Process %d collected child %d\n", parent.getProcessId(), exited);
+            }
         }
     }
 
-    public void addWaitingProcess(PCB process) {
-        int eventId = process.getWaitingEventId();
-        eventWaitingProcesses.computeIfAbsent(eventId, k -> new ArrayList<>()).add(process);
-        System.out.printf("Process %d waiting for event %d\n",
-            process.getProcessId(), eventId);
+    public synchronized void addSleepingProcess(PCB process) {
+        sleepTimers.schedule(process, process.getWakeUpCycle());
+        if (verbose) {
+            System.out.printf("Process %d sleeping until cycle %d\n",
+                process.getProcessId(), process.getWakeUpCycle());
+        }
     }
 
-    public void notifyEvent(int eventId) {
-        List<PCB> waiting = eventWaitingProcesses.remove(eventId);
-        if (waiting != null) {
-            for (PCB p : waiting) {
-                p.setState(PCB.ProcessState.READY);
-                readyQueue.add(p);
-                System.out.printf("Process %d woke up from event %d\n",
-                    p.getProcessId(), eventId);
+    // maps the channel named key, creating its ring with room for capacity messages if the
+    // key is new; returns the channel address or -1. the monitor keeps two processes that
+    // open a new key at once from both initializing it
+    public synchronized int openChannel(CPU cpu, PCB process, int key, int capacity) {
+        if (!Channel.isValidCapacity(capacity)) return -1;
+        int pid = process.getProcessId();
+        boolean created = !memoryManager.hasSharedRegion(key);
+        int address = memoryManager.mapSharedRegion(pid, key, Channel.bytes(capacity));
+        if (address >= 0 && created) {
+            int[] events = channelEvents.get(key);
+            if (events == null) {
+                events = new int[] { sync.createChannelEvent(), sync.createChannelEvent() };
+                channelEvents.put(key, events);
+            } else {
+                sync.resetChannel(events[0]);
+                sync.resetChannel(events[1]);
             }
+            Channel.initialize(memoryManager, cpu.getTlb(), pid, address, capacity, events[0], events[1]);
         }
+        return address;
     }
 
-    public PCB getNextProcess() {
+    // wakes the peer sleeping on a channel's event
+    public synchronized void signalChannel(int eventId) {
+        sync.setChannel(eventId, this::wakeSyncWaiter);
+    }
+
+    // sleeps on a channel's event unless the peer has set it since
+    public synchronized boolean waitForChannel(CPU cpu, PCB process, int eventId) {
+        if (!sync.waitChannel(process, eventId)) {
+            return false;
+        }
+        block(cpu, process, eventId);
+        return true;
+    }
+
+    public synchronized boolean unmapSharedRegion(int pid, int address) {
+        Integer key = memoryManager.sharedRegionKey(pid, address);
+        if (key == null || !memoryManager.unmapSharedRegion(pid, address)) return false;
+        closeChannel(key);
+        return true;
+    }
+
+    // one end of the channel named key let go of it: the other end finds it closed and is
+    // woken if it sleeps on it
+    private void closeChannel(int key) {
+        int[] events = channelEvents.get(key);
+        if (events == null) return;
+        Channel.close(memoryManager, key);
+        sync.setChannel(events[0], this::wakeSyncWaiter);
+        sync.setChannel(events[1], this::wakeSyncWaiter);
+    }
+
+    public synchronized int createSyncObject(SyncManager.Kind kind, int initial) {
+        return sync.create(kind, initial);
+    }
+
+    public synchronized boolean destroySyncObject(int id) {
+        return sync.destroy(id, this::wakeSyncWaiter);
+    }
+
+    public synchronized void signalEvent(int eventId) {
+        sync.set(eventId, this::wakeSyncWaiter);
+    }
+
+    public synchronized void resetEvent(int eventId) {
+        sync.reset(eventId);
+    }
+
+    public synchronized void postSemaphore(int semaphoreId) {
+        sync.post(semaphoreId, this::wakeSyncWaiter);
+    }
+
+    public synchronized void notifyCondition(int conditionId, boolean all) {
+        sync.notify(conditionId, all, this::wakeSyncWaiter);
+    }
+
+    // waits on an event or semaphore, blocking the process on the CPU unless the event is
+    // set or a permit is free; checking and queueing under one lock keeps a signal on
+    // another core from being lost
+    public synchronized boolean waitForEvent(CPU cpu, PCB process, int id) {
+        SyncManager.Kind kind = sync.getKind(id);
+        if (kind == null || kind == SyncManager.Kind.CONDITION || !sync.wait(process, id)) {
+            return false;
+        }
+        block(cpu, process, id);
+        return true;
+    }
+
+    // atomically releases the lock and waits on the condition; the process reacquires
+    // the lock before it runs again
+    public synchronized boolean waitForCondition(CPU cpu, PCB process, int conditionId, int lockId, long now) {
+        if (sync.getKind(conditionId) != SyncManager.Kind.CONDITION || !process.isHoldingLock(lockId)) {
+            return false;
+        }
+        sync.wait(process, conditionId);
+        process.setConditionLockId(lockId);
+        releaseLock(process, lockId, now);
+        block(cpu, process, conditionId);
+        return true;
+    }
+
+    private void block(CPU cpu, PCB process, int id) {
+        process.setState(PCB.ProcessState.WAITING_EVENT);
+        process.setWaitingEventId(id);
+        scheduler.blocked(process);
+        detach(cpu);
+        metrics.increment(MetricsRegistry.Counter.EVENT_WAITS, process);
+        if (verbose) {
+            System.out.printf("Process %d waiting for event %d\n", process.getProcessId(), id);
+        }
+    }
+
+    private void wakeSyncWaiter(PCB p) {
+        int id = p.getWaitingEventId();
+        p.setWaitingEventId(-1);
+        metrics.increment(MetricsRegistry.Counter.EVENT_WAKES, p);
+        if (verbose) {
+            System.out.printf("Process %d woke up from event %d\n", p.getProcessId(), id);
+        }
+        int lockId = p.getConditionLockId();
+        if (lockId >= 0) {
+            p.setConditionLockId(-1);
+            if (!locks.acquireOrQueue(p, lockId, CPU.getClockCycleCount())) {
+                return; // runs again once the lock is handed over
+            }
+        }
+        p.setState(PCB.ProcessState.READY);
+        scheduler.add(p, CPU.getClockCycleCount());
+    }
+
+    // on BLOCKED the process has been queued on the lock and taken off the CPU
+    public synchronized LockManager.Result acquireLock(CPU cpu, PCB process, int lockId, long now) {
+        LockManager.Result result = locks.acquire(process, lockId, now);
+        if (result == LockManager.Result.BLOCKED) {
+            scheduler.blocked(process);
+            detach(cpu);
+            if (verbose) {
+                System.out.printf("Process %d blocked on lock %d\n", process.getProcessId(), lockId);
+            }
+        }
+        return result;
+    }
+
+    public synchronized void releaseLock(PCB process, int lockId, long now) {
+        PCB next = locks.release(process, lockId, now);
+        if (next != null) {
+            next.setState(PCB.ProcessState.READY);
+            scheduler.add(next, CPU.getClockCycleCount());
+            metrics.increment(MetricsRegistry.Counter.LOCK_ACQUIRES, next);
+            if (verbose) {
+                System.out.printf("Process %d handed lock %d\n", next.getProcessId(), lockId);
+            }
+        }
+    }
+
+    public synchronized void sleep(CPU cpu, PCB process, int cycles) {
+        process.sleepUntil(CPU.getClockCycleCount() + Math.max(cycles, 1));
+        scheduler.blocked(process);
+        detach(cpu);
+        addSleepingProcess(process);
+    }
+
+    public synchronized PCB getNextProcess() {
         updateSleepingProcesses();
-        return readyQueue.poll();
+        long now = CPU.getClockCycleCount();
+        if (loadControl == null) {
+            return scheduler.next(now);
+        }
+        loadControl.balance(scheduler.size() == 0 && runningProcesses == 0, p -> scheduler.add(p, now));
+        PCB next = nextAdmitted(now);
+        if (next == null && runningProcesses == 0 && loadControl.getParkedCount() > 0) {
+            // everything ready was parked: run the oldest suspended process rather than idle
+            loadControl.balance(true, p -> scheduler.add(p, now));
+            next = nextAdmitted(now);
+        }
+        return next;
+    }
+
+    private PCB nextAdmitted(long now) {
+        PCB next = scheduler.next(now);
+        while (next != null && !loadControl.dispatchable(next)) {
+            next = scheduler.next(now);
+        }
+        return next;
     }
 
     private void updateSleepingProcesses() {
-        Iterator<PCB> it = sleepingProcesses.iterator();
-        while (it.hasNext()) {
-            PCB p = it.next();
-            p.decrementSleep();
-            if (p.getState() == PCB.ProcessState.READY) {
-                readyQueue.add(p);
-                it.remove();
-                System.out.printf("Process %d woke up from sleep\n", p.getProcessId());
-            }
+        sleepTimers.advanceTo(CPU.getClockCycleCount(), this::wakeSleeper);
+    }
+
+    private void wakeSleeper(PCB p) {
+        p.setState(PCB.ProcessState.READY);
+        scheduler.add(p, CPU.getClockCycleCount());
+        if (verbose) {
+            System.out.printf("Process %d woke up from sleep\n", p.getProcessId());
+        }
+    }
+
+    // with nothing ready or running, time only passes for sleepers, so jump to the next timer
+    public synchronized boolean idleUntilNextTimer() {
+        if (runningProcesses > 0 || scheduler.size() > 0 || sleepTimers.size() == 0 || parkedProcesses() > 0) {
+            return false;
+        }
+        CPU.advanceClockTo(sleepTimers.nextEventTime());
+        updateSleepingProcesses();
+        return true;
+    }
+
+    private int parkedProcesses() {
+        return loadControl == null ? 0 : loadControl.getParkedCount();
+    }
+
+    // saves the context of the CPU's current process and takes it off the CPU
+    private void detach(CPU cpu) {
+        PCB process = cpu.getCurrentProcess();
+        if (process != null) {
+            cpu.saveContext(process);
+            cpu.setCurrentProcess(null);
+            runningProcesses--;
+            sampleWorkingSet(process, cpu.getQuantumCycles());
         }
     }
 
-    public void contextSwitch(PCB newProcess) {
-        if (currentProcess != null) {
-            currentProcess.saveRegisters(CPU.registers);
-            currentProcess.setSignFlag(CPU.signFlag);
-            currentProcess.setZeroFlag(CPU.zeroFlag);
-            
-            if (currentProcess.getState() == PCB.ProcessState.RUNNING && 
-                currentProcess.getState() != PCB.ProcessState.TERMINATED) {
-                currentProcess.setState(PCB.ProcessState.READY);
-                readyQueue.add(currentProcess);
+    // the window moves on by the cycles the process just ran
+    private void sampleWorkingSet(PCB process, int cycles) {
+        WorkingSet workingSet = process.getWorkingSet();
+        int before = workingSet.size();
+        workingSet.advance(cycles);
+        metrics.workingSet(process, workingSet);
+        if (loadControl != null) {
+            loadControl.resized(process, before, workingSet.size());
+        }
+    }
+
+    // switches the CPU away from its current process and onto the next ready one
+    public synchronized PCB dispatch(CPU cpu) {
+        release(cpu);
+        if (checkpoints != null && checkpoints.isDue(CPU.getClockCycleCount())) {
+            // a checkpoint needs every process off its CPU, so hold back new dispatches
+            // until the other CPUs have finished their quanta
+            if (runningProcesses > 0) return null;
+            checkpoints.write(this);
+        }
+        PCB next = getNextProcess();
+        if (next != null) {
+            cpu.restoreContext(next);
+            next.setState(PCB.ProcessState.RUNNING);
+            cpu.setCurrentProcess(next);
+            runningProcesses++;
+            metrics.contextSwitch(cpu.getCpuId(), next, CPU.getClockCycleCount() - next.getReadySince());
+            if (verbose) {
+                System.out.printf("Switched to process %d (priority %d)\n", 
+                    next.getProcessId(), next.getPriority());
             }
         }
+        return next;
+    }
+
+    public synchronized void release(CPU cpu) {
+        PCB previous = cpu.getCurrentProcess();
+        if (previous == null) return;
+        detach(cpu);
+        
+        if (previous.getState() == PCB.ProcessState.RUNNING) {
+            previous.setState(PCB.ProcessState.READY);
+            scheduler.preempted(previous, cpu.getQuantumCycles(), CPU.getClockCycleCount());
+        } else if (previous.getState() == PCB.ProcessState.TERMINATED) {
+            reapProcess(previous);
+        }
+    }
+
+    // work can still appear while anything is ready, asleep, suspended or running on another CPU
+    public synchronized boolean hasRunnableWork() {
+        return scheduler.size() > 0 || sleepTimers.size() > 0 || runningProcesses > 0 || parkedProcesses() > 0;
+    }
 
-        if (newProcess != null) {
-            System.arraycopy(newProcess.getRegisters(), 0, CPU.registers, 0, 16);
-            CPU.signFlag = newProcess.getSignFlag();
-            CPU.zeroFlag = newProcess.getZeroFlag();
-            newProcess.setState(PCB.ProcessState.RUNNING);
-            System.out.printf("Switched to process %d (priority %d)\n", 
-                newProcess.getProcessId(), newProcess.getPriority());
+    private void reapProcess(PCB process) {
+        exitedProcesses++;
+        if (process.getExitStatus() != 0) {
+            failedProcesses++;
+        }
+        if (loadControl != null) {
+            loadControl.exited(process);
+        }
+        notifyParent(process);
+        for (PCB child : process.getChildren()) {
+            child.setParent(null);
+        }
+        for (int lockId : process.getHeldLocks()) {
+            releaseLock(process, lockId, CPU.getClockCycleCount());
         }
+        int[] regions = memoryManager.sharedRegionKeys(process.getProcessId());
+        memoryManager.releaseProcess(process.getProcessId());
+        for (int key : regions) {
+            closeChannel(key);
+        }
+        processTable.remove(process.getProcessId());
+    }
 
-        currentProcess = newProcess;
+    // process state for a checkpoint, taken while no process is running: the clock, the
+    // processes and which ready, lock or sync object queue each one waits in
+    synchronized void save(Checkpoint.Output out) {
+        out.putLong(CPU.getClockCycleCount());
+        processTable.save(out);
+        out.putInt(processTable.size());
+        processTable.forEach(p -> {
+            out.putInt(p.getParent() == null ? 0 : p.getParent().getProcessId());
+            p.save(out);
+        });
+        List<Integer> ready = new ArrayList<>();
+        scheduler.forEach(p -> ready.add(p.getProcessId()));
+        if (loadControl != null) {
+            loadControl.forEachParked(p -> ready.add(p.getProcessId())); // restored unsuspended
+        }
+        out.putInts(ready.stream().mapToInt(Integer::intValue).toArray());
+        locks.save(out);
+        sync.save(out);
+        out.putInt(channelEvents.size());
+        for (Map.Entry<Integer, int[]> channel : channelEvents.entrySet()) {
+            out.putInt(channel.getKey());
+            out.putInts(channel.getValue());
+        }
     }
 
-    public void printProcessStates() {
+    // fills a freshly built process manager before any CPU starts; sleepers go back on
+    // the timer wheel by their wake-up cycle
+    synchronized void restore(Checkpoint.Input in) {
+        long cycle = in.getLong();
+        CPU.advanceClockTo(cycle);
+        sleepTimers.advanceTo(cycle, this::wakeSleeper);
+        processTable.restore(in);
+        int count = in.getInt();
+        int[] parents = new int[count];
+        PCB[] restored = new PCB[count];
+        for (int i = 0; i < count; i++) {
+            parents[i] = in.getInt();
+            restored[i] = PCB.restore(in);
+            restored[i].getWorkingSet().setWindow(workingSetWindow);
+            processTable.add(restored[i]);
+            metrics.processStarted(restored[i]);
+            admit(restored[i]);
+        }
+        for (int i = 0; i < count; i++) {
+            if (parents[i] > 0) {
+                restored[i].restoreParent(processTable.get(parents[i]));
+            }
+            if (restored[i].getState() == PCB.ProcessState.WAITING_SLEEP) {
+                sleepTimers.schedule(restored[i], restored[i].getWakeUpCycle());
+            }
+        }
+        for (int pid : in.getInts()) {
+            PCB p = processTable.get(pid);
+            scheduler.add(p, p.getReadySince());
+        }
+        locks.restore(in, processTable);
+        sync.restore(in, processTable);
+        for (int i = in.getInt(); i > 0; i--) {
+            channelEvents.put(in.getInt(), in.getInts());
+        }
+    }
+
+    public synchronized void printProcessStates() {
         System.out.println("\nCurrent Process States:");
         System.out.println("----------------------");
         
-        if (currentProcess != null) {
-            System.out.printf("Running: %d (Priority %d)\n", 
-                currentProcess.getProcessId(), currentProcess.getPriority());
-        }
+        processTable.forEach(p -> {
+            if (p.getState() == PCB.ProcessState.RUNNING) {
+                System.out.printf("Running: %d (Priority %d)\n", 
+                    p.getProcessId(), p.getPriority());
+            }
+        });
         
         System.out.println("Ready Queue:");
-        for (PCB p : readyQueue) {
-            System.out.printf("- Process %d (Priority %d)\n", 
-                p.getProcessId(), p.getPriority());
-        }
+        scheduler.forEach(p -> System.out.printf("- Process %d (Priority %d)\n", 
+            p.getProcessId(), p.getPriority()));
         
         System.out.println("Sleeping Processes:");
-        for (PCB p : sleepingProcesses) {
-            System.out.printf("- Process %d (Sleep counter: %d)\n", 
-                p.getProcessId(), p.getSleepCounter());
-        }
+        sleepTimers.forEach(p -> System.out.printf("- Process %d (Wakes at cycle %d)\n", 
+            p.getProcessId(), p.getWakeUpCycle()));
         
+        if (loadControl != null) {
+            System.out.println("Suspended Processes:");
+            loadControl.forEachParked(p -> System.out.printf("- Process %d (Working set %d pages)\n",
+                p.getProcessId(), p.getWorkingSet().size()));
+        }
+
         System.out.println("Event Waiting Processes:");
-        for (Map.Entry<Integer, List<PCB>> entry : eventWaitingProcesses.entrySet()) {
-            for (PCB p : entry.getValue()) {
+        processTable.forEach(p -> {
+            if (p.getState() == PCB.ProcessState.WAITING_EVENT) {
                 System.out.printf("- Process %d (Waiting for event %d)\n",
-                    p.getProcessId(), entry.getKey());
+                    p.getProcessId(), p.getWaitingEventId());
             }
-        }
+        });
     }
-}
\ No newline at end of file
+}
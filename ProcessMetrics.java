@@ -0,0 +1,33 @@
+import java.util.concurrent.atomic.*;
+
+// one process's share of the registry counters. a process runs on one CPU at a time,
+// so its slots see little contention and a plain atomic array is enough
+public class ProcessMetrics {
+    private final int processId;
+    private final AtomicLongArray counts = new AtomicLongArray(MetricsRegistry.Counter.values().length);
+    // the last working set sample
+    private volatile int workingSetPages;
+    private volatile long faultFrequency;
+
+    public ProcessMetrics(int processId) {
+        this.processId = processId;
+    }
+
+    public int getProcessId() { return processId; }
+
+    void add(MetricsRegistry.Counter counter, long delta) {
+        counts.addAndGet(counter.ordinal(), delta);
+    }
+
+    public long get(MetricsRegistry.Counter counter) {
+        return counts.get(counter.ordinal());
+    }
+
+    void sampleWorkingSet(int pages, long faultsPerKilocycle) {
+        this.workingSetPages = pages;
+        this.faultFrequency = faultsPerKilocycle;
+    }
+
+    public int getWorkingSetPages() { return workingSetPages; }
+    public long getFaultFrequency() { return faultFrequency; }
+}
@@ -0,0 +1,90 @@
+import java.util.*;
+import java.util.function.*;
+
+// dense PID-indexed table of live processes; released PIDs are reused oldest-first.
+// Updates are synchronized, lookups read the current array without locking.
+public class ProcessTable {
+    private volatile PCB[] slots = new PCB[16];
+    private int[] freePids = new int[16];
+    private int freeHead;
+    private int freeCount;
+    private int nextPid = 1;
+    private int size;
+
+    public synchronized int allocatePid() {
+        if (freeCount > 0) {
+            int pid = freePids[freeHead];
+            freeHead = (freeHead + 1) % freePids.length;
+            freeCount--;
+            return pid;
+        }
+        return nextPid++;
+    }
+
+    public synchronized void add(PCB pcb) {
+        int pid = pcb.getProcessId();
+        if (pid >= slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(pid + 1, slots.length * 2));
+        }
+        if (slots[pid] != null) {
+            throw new IllegalStateException("PID " + pid + " is already in use");
+        }
+        slots[pid] = pcb;
+        size++;
+    }
+
+    public PCB get(int pid) {
+        PCB[] current = slots;
+        return pid > 0 && pid < current.length ? current[pid] : null;
+    }
+
+    public synchronized PCB remove(int pid) {
+        PCB pcb = get(pid);
+        if (pcb == null) {
+            return null;
+        }
+        slots[pid] = null;
+        size--;
+        if (freeCount == freePids.length) {
+            int[] grown = new int[freePids.length * 2];
+            for (int i = 0; i < freeCount; i++) {
+                grown[i] = freePids[(freeHead + i) % freePids.length];
+            }
+            freePids = grown;
+            freeHead = 0;
+        }
+        freePids[(freeHead + freeCount) % freePids.length] = pid;
+        freeCount++;
+        return pcb;
+    }
+
+    // pid allocation state; the processes themselves are saved by the ProcessManager
+    synchronized void save(Checkpoint.Output out) {
+        out.putInt(nextPid);
+        int[] free = new int[freeCount];
+        for (int i = 0; i < freeCount; i++) {
+            free[i] = freePids[(freeHead + i) % freePids.length];
+        }
+        out.putInts(free);
+    }
+
+    synchronized void restore(Checkpoint.Input in) {
+        nextPid = in.getInt();
+        int[] free = in.getInts();
+        freePids = Arrays.copyOf(free, Math.max(free.length, 16));
+        freeHead = 0;
+        freeCount = free.length;
+    }
+
+    public int size() { return size; }
+
+    // iterates live processes in PID order without copying the table
+    public void forEach(Consumer<PCB> action) {
+        PCB[] current = slots;
+        for (int pid = 1; pid < current.length; pid++) {
+            if (current[pid] != null) {
+                action.accept(current[pid]);
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+// binary program image: a 16 byte header (magic, version, instruction count, reserved)
+// followed by the code exactly as it sits in memory, three big-endian words per
+// instruction, so loading is a straight copy into frames
+public class ProgramImage {
+    public static final int MAGIC = 0x4F53494D; // "OSIM"
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 16;
+    public static final int INSTRUCTION_BYTES = 12;
+    private static final int REGISTERS = 16;
+
+    // what PeepholeOptimizer folded away, FUSED_RUN_INTS ints per superinstruction: its
+    // address, the number of instructions it covers and the three words of the original
+    // first instruction it replaced, ascending by address. never written to image files
+    public static final int FUSED_RUN_INTS = 5;
+
+    private final ByteBuffer code;
+    private final int instructionCount;
+    private final int[] fusedRuns;
+
+    private ProgramImage(ByteBuffer code, int instructionCount, int[] fusedRuns) {
+        this.code = code;
+        this.instructionCount = instructionCount;
+        this.fusedRuns = fusedRuns;
+    }
+
+    public static ProgramImage of(List<Instruction> program) {
+        return of(program, new int[0]);
+    }
+
+    static ProgramImage of(List<Instruction> program, int[] fusedRuns) {
+        ByteBuffer code = ByteBuffer.allocate(Math.multiplyExact(program.size(), INSTRUCTION_BYTES));
+        for (Instruction instr : program) {
+            code.putInt(instr.opcode.ordinal()).putInt(instr.arg1).putInt(instr.arg2);
+        }
+        code.flip();
+        return new ProgramImage(code.asReadOnlyBuffer(), program.size(), fusedRuns);
+    }
+
+    // maps an image file read-only and checks it before anything is copied out of it
+    public static ProgramImage map(Path file) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(file + ": not a program image");
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (mapped.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException(file + ": not a program image");
+        }
+        int version = mapped.getInt(4);
+        if (version != VERSION) {
+            throw new IllegalArgumentException(file + ": unsupported image version " + version);
+        }
+        int count = mapped.getInt(8);
+        if (count < 0 || (long) count * INSTRUCTION_BYTES != mapped.capacity() - HEADER_BYTES) {
+            throw new IllegalArgumentException(file + ": truncated program image");
+        }
+
+        // errors name the file offset of the bad word, as the assembler names the line
+        ByteBuffer code = mapped.slice(HEADER_BYTES, mapped.capacity() - HEADER_BYTES);
+        int opcodes = InstructionSet.values().length;
+        for (int i = 0; i < count; i++) {
+            int base = i * INSTRUCTION_BYTES;
+            int opcode = code.getInt(base);
+            if (opcode < 0 || opcode >= opcodes) {
+                throw error(file, base, "bad opcode " + opcode);
+            }
+            InstructionSet instr = InstructionSet.fromOrdinal(opcode);
+            // superinstructions are only written in memory by the optimizer, and the CPU
+            // trusts the length and charge they carry
+            if (instr.isInternal()) {
+                throw error(file, base, "'" + instr + "' is internal to the optimizer");
+            }
+            for (int operand = 1; operand <= 2; operand++) {
+                int register = code.getInt(base + operand * 4);
+                if (instr.isRegisterOperand(operand) && (register < 0 || register >= REGISTERS)) {
+                    throw error(file, base + operand * 4, "no such register r" + register + " in " + instr);
+                }
+            }
+        }
+        return new ProgramImage(code.asReadOnlyBuffer(), count, new int[0]);
+    }
+
+    private static IllegalArgumentException error(Path file, int codeOffset, String message) {
+        return new IllegalArgumentException(file + ":" + (HEADER_BYTES + codeOffset) + ": " + message);
+    }
+
+    public void write(Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putInt(instructionCount).putInt(0);
+        header.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] parts = { header, code() };
+            while (parts[0].hasRemaining() || parts[1].hasRemaining()) {
+                channel.write(parts);
+            }
+        }
+    }
+
+    public int getInstructionCount() { return instructionCount; }
+    public int getCodeBytes() { return instructionCount * INSTRUCTION_BYTES; }
+    int[] fusedRuns() { return fusedRuns.clone(); }
+
+    // a fresh view positioned at the first instruction; index 0 is address 0
+    public ByteBuffer code() {
+        return code.duplicate();
+    }
+
+    public List<Instruction> toInstructions() {
+        List<Instruction> program = new ArrayList<>(instructionCount);
+        for (int i = 0; i < instructionCount; i++) {
+            int base = i * INSTRUCTION_BYTES;
+            program.add(new Instruction(InstructionSet.fromOrdinal(code.getInt(base)),
+                code.getInt(base + 4), code.getInt(base + 8)));
+        }
+        return program;
+    }
+}
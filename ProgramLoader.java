@@ -1,24 +1,21 @@
 import java.io.*;
+import java.nio.file.*;
 import java.util.*;
 
 public class ProgramLoader {
     public static List<Instruction> loadProgramFromFile(String filename) {
-        List<Instruction> program = new ArrayList<>();
-        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                line = line.trim();
-                if (line.isEmpty() || line.startsWith(";")) continue; // skip empty lines or comments
-                String[] parts = line.split("\\s+");
-                if (parts.length < 3) continue;
-                InstructionSet opcode = InstructionSet.valueOf(parts[0].toUpperCase());
-                int arg1 = Integer.parseInt(parts[1]);
-                int arg2 = Integer.parseInt(parts[2]);
-                program.add(new Instruction(opcode, arg1, arg2));
-            }
+        ProgramImage image = loadImageFromFile(filename);
+        return image == null ? new ArrayList<>() : image.toInstructions();
+    }
+
+    // .img files are mapped as they are, anything else goes through the assembler
+    public static ProgramImage loadImageFromFile(String filename) {
+        Path path = Paths.get(filename);
+        try {
+            return filename.endsWith(".img") ? ProgramImage.map(path) : Assembler.assembleFile(path);
         } catch (IOException | IllegalArgumentException e) {
             System.err.println("Error loading program from file '" + filename + "': " + e.getMessage());
+            return null;
         }
-        return program;
     }
 }
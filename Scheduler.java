@@ -0,0 +1,36 @@
+import java.util.function.*;
+
+public interface Scheduler {
+    enum Kind { PRIORITY, MLFQ }
+
+    static Scheduler create(Kind kind) {
+        switch (kind) {
+            case MLFQ:
+                return new MlfqScheduler();
+            case PRIORITY:
+            default:
+                return new PriorityScheduler();
+        }
+    }
+
+    Kind getKind();
+
+    // a process became ready: newly created or woken from sleep or an event
+    void add(PCB process, long now);
+
+    // a process used up its quantum, having run the given cycles of it, and goes back to
+    // the ready queue
+    void preempted(PCB process, int cycles, long now);
+
+    // a process gave up the CPU before its quantum ran out
+    void blocked(PCB process);
+
+    // removes the next process to run and gives it a fresh quantum
+    PCB next(long now);
+
+    int size();
+
+    void forEach(Consumer<PCB> action);
+
+    void printStatistics();
+}
@@ -0,0 +1,35 @@
+import java.util.*;
+
+// hands out the lowest never-used slot or the most recently freed one, so the
+// swap area stays as dense as the number of pages actually swapped out
+public class SwapSlotAllocator {
+    private final int maxSlots;
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private int highWater;
+
+    public SwapSlotAllocator(int maxSlots) {
+        this.maxSlots = maxSlots;
+    }
+
+    public int allocate() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (highWater >= maxSlots) {
+            throw new RuntimeException("Swap space exhausted");
+        }
+        return highWater++;
+    }
+
+    public void free(int slot) {
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    public int getUsedSlots() { return highWater - freeCount; }
+    public int getHighWater() { return highWater; }
+    public int getMaxSlots() { return maxSlots; }
+}
@@ -0,0 +1,43 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+
+public interface SwapStore extends Closeable {
+    enum Kind { MEMORY, FILE }
+
+    static SwapStore create(Kind kind, int pageSize, Path file) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Invalid swap page size: " + pageSize);
+        }
+        switch (kind) {
+            case FILE:
+                try {
+                    return new FileSwapStore(pageSize, file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot open swap file " + file, e);
+                }
+            case MEMORY:
+            default:
+                return new MemorySwapStore(pageSize);
+        }
+    }
+
+    Kind getKind();
+    int getPageSize();
+
+    int allocateSlot();
+    void freeSlot(int slot);
+    int getUsedSlots();
+    int getCapacitySlots();
+
+    // page copies between a swap slot and a physical frame
+    void writePage(int slot, FrameStore frames, int frame);
+    void readPage(int slot, FrameStore frames, int frame);
+
+    // page copies between a swap slot and a buffer, for checkpoints
+    void saveSlot(int slot, ByteBuffer dst, int dstIndex);
+    void loadSlot(int slot, ByteBuffer src, int srcIndex);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,289 @@
+import java.util.*;
+import java.util.function.*;
+
+// ID-addressed kernel synchronization objects: manual and auto reset events, counting
+// semaphores and condition variables, each with its own FIFO wait queue. objects live
+// in an array indexed by id and freed ids are recycled, so every operation is O(1) in
+// the number of objects. ids below LEGACY_EVENTS are the fixed manual reset events used
+// by SIGNAL_EVENT / WAIT_EVENT. the auto reset events channels sleep on are numbered from
+// CHANNEL_EVENTS up in a table of their own, out of reach of the operations programs name
+// ids in, so a program cannot wake or destroy them. guarded by the ProcessManager monitor
+public class SyncManager {
+    public static final int LEGACY_EVENTS = 10;
+    public static final int MAX_OBJECTS = 1 << 20;
+    public static final int CHANNEL_EVENTS = MAX_OBJECTS;
+
+    public enum Kind { MANUAL_EVENT, AUTO_EVENT, SEMAPHORE, CONDITION }
+
+    private static final class SyncObject {
+        final Kind kind;
+        int count; // signalled flag for events, permits for semaphores
+        final ArrayDeque<PCB> waiters = new ArrayDeque<>(2);
+
+        SyncObject(Kind kind, int count) {
+            this.kind = kind;
+            this.count = count;
+        }
+    }
+
+    private SyncObject[] objects = new SyncObject[64];
+    private int[] freeIds = new int[16];
+    private int freeCount;
+    private int nextId;
+    private int live;
+    private int peakLive;
+    private int blocked;
+    private SyncObject[] channelEvents = new SyncObject[16];
+    private int channelEventCount;
+
+    private final long[] created = new long[Kind.values().length];
+    private long destroyed;
+    private long waits;
+    private long blockedWaits;
+    private long wakes;
+
+    public SyncManager() {
+        for (int i = 0; i < LEGACY_EVENTS; i++) {
+            create(Kind.MANUAL_EVENT, 0);
+        }
+    }
+
+    // returns the new object's id, or -1 once MAX_OBJECTS are live
+    public int create(Kind kind, int initial) {
+        int id;
+        if (freeCount > 0) {
+            id = freeIds[--freeCount];
+        } else {
+            if (nextId == MAX_OBJECTS) return -1;
+            id = nextId++;
+            if (id == objects.length) {
+                objects = Arrays.copyOf(objects, objects.length * 2);
+            }
+        }
+        int count = kind == Kind.SEMAPHORE ? Math.max(initial, 0) : (initial != 0 ? 1 : 0);
+        objects[id] = new SyncObject(kind, kind == Kind.CONDITION ? 0 : count);
+        created[kind.ordinal()]++;
+        live++;
+        peakLive = Math.max(peakLive, live);
+        return id;
+    }
+
+    // channel events are never destroyed; a channel created again under the same key
+    // resets and reuses its pair
+    int createChannelEvent() {
+        if (channelEventCount == channelEvents.length) {
+            channelEvents = Arrays.copyOf(channelEvents, channelEventCount * 2);
+        }
+        channelEvents[channelEventCount] = new SyncObject(Kind.AUTO_EVENT, 0);
+        return CHANNEL_EVENTS + channelEventCount++;
+    }
+
+    // waiters on a destroyed object are released as if it had been signalled
+    public boolean destroy(int id, Consumer<PCB> wake) {
+        SyncObject object = get(id);
+        if (object == null || id < LEGACY_EVENTS) return false;
+        wakeAll(object, wake);
+        objects[id] = null;
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeIds.length * 2);
+        }
+        freeIds[freeCount++] = id;
+        live--;
+        destroyed++;
+        return true;
+    }
+
+    public Kind getKind(int id) {
+        SyncObject object = get(id);
+        return object == null ? null : object.kind;
+    }
+
+    public int getWaiterCount(int id) {
+        SyncObject object = get(id);
+        return object == null ? 0 : object.waiters.size();
+    }
+
+    public int getLiveObjects() { return live; }
+    public int getBlockedProcesses() { return blocked; }
+
+    private SyncObject get(int id) {
+        return id >= 0 && id < nextId ? objects[id] : null;
+    }
+
+    private SyncObject channelEvent(int id) {
+        int index = id - CHANNEL_EVENTS;
+        return index >= 0 && index < channelEventCount ? channelEvents[index] : null;
+    }
+
+    // consumes the signal or permit if one is available; otherwise queues the process
+    // and returns true, and the caller takes it off the CPU
+    boolean wait(PCB process, int id) {
+        return wait(process, get(id));
+    }
+
+    boolean waitChannel(PCB process, int id) {
+        return wait(process, channelEvent(id));
+    }
+
+    private boolean wait(PCB process, SyncObject object) {
+        if (object == null) return false;
+        waits++;
+        switch (object.kind) {
+            case MANUAL_EVENT:
+                if (object.count > 0) return false;
+                break;
+            case AUTO_EVENT:
+            case SEMAPHORE:
+                if (object.count > 0) {
+                    object.count--;
+                    return false;
+                }
+                break;
+            case CONDITION:
+                break;
+        }
+        object.waiters.add(process);
+        blocked++;
+        blockedWaits++;
+        return true;
+    }
+
+    // a manual reset event releases every waiter and stays set; an auto reset event
+    // releases one waiter, or stays set until the next wait if nobody is waiting
+    void set(int id, Consumer<PCB> wake) {
+        set(get(id), wake);
+    }
+
+    void setChannel(int id, Consumer<PCB> wake) {
+        set(channelEvent(id), wake);
+    }
+
+    private void set(SyncObject object, Consumer<PCB> wake) {
+        if (object == null) return;
+        if (object.kind == Kind.MANUAL_EVENT) {
+            object.count = 1;
+            wakeAll(object, wake);
+        } else if (object.kind == Kind.AUTO_EVENT) {
+            if (!wakeOne(object, wake)) {
+                object.count = 1;
+            }
+        }
+    }
+
+    void reset(int id) {
+        SyncObject object = get(id);
+        if (object != null && object.kind != Kind.SEMAPHORE && object.kind != Kind.CONDITION) {
+            object.count = 0;
+        }
+    }
+
+    void resetChannel(int id) {
+        SyncObject object = channelEvent(id);
+        if (object != null) {
+            object.count = 0;
+        }
+    }
+
+    void post(int id, Consumer<PCB> wake) {
+        SyncObject object = get(id);
+        if (object == null || object.kind != Kind.SEMAPHORE) return;
+        if (!wakeOne(object, wake) && object.count < Integer.MAX_VALUE) {
+            object.count++;
+        }
+    }
+
+    // condition signals are not remembered when nobody is waiting
+    void notify(int id, boolean all, Consumer<PCB> wake) {
+        SyncObject object = get(id);
+        if (object == null || object.kind != Kind.CONDITION) return;
+        if (all) {
+            wakeAll(object, wake);
+        } else {
+            wakeOne(object, wake);
+        }
+    }
+
+    private boolean wakeOne(SyncObject object, Consumer<PCB> wake) {
+        PCB process = object.waiters.poll();
+        if (process == null) return false;
+        blocked--;
+        wakes++;
+        wake.accept(process);
+        return true;
+    }
+
+    private void wakeAll(SyncObject object, Consumer<PCB> wake) {
+        while (wakeOne(object, wake)) {
+        }
+    }
+
+    // objects, free ids, channel events and wait queues; the statistics start over after
+    // a restore
+    void save(Checkpoint.Output out) {
+        out.putInt(nextId);
+        out.putInts(freeIds, freeCount);
+        for (int id = 0; id < nextId; id++) {
+            SyncObject object = objects[id];
+            out.putBoolean(object != null);
+            if (object == null) continue;
+            out.putInt(object.kind.ordinal());
+            out.putInt(object.count);
+            out.putInts(object.waiters.stream().mapToInt(PCB::getProcessId).toArray());
+        }
+        out.putInt(channelEventCount);
+        for (int i = 0; i < channelEventCount; i++) {
+            out.putInt(channelEvents[i].count);
+            out.putInts(channelEvents[i].waiters.stream().mapToInt(PCB::getProcessId).toArray());
+        }
+    }
+
+    void restore(Checkpoint.Input in, ProcessTable processes) {
+        nextId = in.getInt();
+        objects = new SyncObject[Math.max(Integer.highestOneBit(Math.max(nextId, 1)) * 2, 64)];
+        freeIds = in.getInts();
+        freeCount = freeIds.length;
+        if (freeIds.length == 0) {
+            freeIds = new int[16];
+        }
+        live = 0;
+        blocked = 0;
+        for (int id = 0; id < nextId; id++) {
+            if (!in.getBoolean()) continue;
+            SyncObject object = new SyncObject(Kind.values()[in.getInt()], in.getInt());
+            for (int pid : in.getInts()) {
+                object.waiters.add(processes.get(pid));
+            }
+            objects[id] = object;
+            live++;
+            blocked += object.waiters.size();
+        }
+        channelEventCount = in.getInt();
+        channelEvents = new SyncObject[Math.max(channelEventCount, 16)];
+        for (int i = 0; i < channelEventCount; i++) {
+            SyncObject event = new SyncObject(Kind.AUTO_EVENT, in.getInt());
+            for (int pid : in.getInts()) {
+                event.waiters.add(processes.get(pid));
+            }
+            channelEvents[i] = event;
+            blocked += event.waiters.size();
+        }
+        peakLive = live;
+    }
+
+    public void printStatistics() {
+        System.out.println("\nSynchronization Statistics:");
+        System.out.println("---------------------------");
+        System.out.printf("Objects: %d live (peak %d), %d destroyed; created %d manual events, "
+                + "%d auto events, %d semaphores, %d conditions\n",
+            live, peakLive, destroyed, created[Kind.MANUAL_EVENT.ordinal()] - LEGACY_EVENTS,
+            created[Kind.AUTO_EVENT.ordinal()], created[Kind.SEMAPHORE.ordinal()],
+            created[Kind.CONDITION.ordinal()]);
+        if (channelEventCount > 0) {
+            System.out.printf("Channel events: %d\n", channelEventCount);
+        }
+        System.out.printf("Waits: %d (%d blocked), %d wakes\n", waits, blockedWaits, wakes);
+        if (blocked > 0) {
+            System.out.printf("%d processes still blocked on sync objects\n", blocked);
+        }
+    }
+}
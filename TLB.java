@@ -0,0 +1,137 @@
+import java.util.*;
+import java.util.concurrent.locks.*;
+
+public class TLB {
+    public static final int DEFAULT_ENTRIES = 64;
+    public static final int DEFAULT_WAYS = 4;
+    private static final long EMPTY = -1L;
+
+    private final long[] tags;
+    private final int[] frames;
+    private final boolean[] dirty;
+    private final int[] nextVictim;
+    // held by the owning CPU while it uses a translation, and by MemoryManager while it changes mappings
+    private final ReentrantLock lock = new ReentrantLock();
+    private final int ways;
+    private final int setMask;
+    private long hits;
+    private long misses;
+    private long flushes;
+
+    public TLB() {
+        this(DEFAULT_ENTRIES, DEFAULT_WAYS);
+    }
+
+    // ways == 1 gives a direct-mapped TLB, ways == entries a fully associative one
+    public TLB(int entries, int ways) {
+        if (ways <= 0 || entries < ways || entries % ways != 0
+                || Integer.bitCount(entries / ways) != 1) {
+            throw new IllegalArgumentException("TLB needs a power-of-two number of sets, got "
+                + entries + " entries with " + ways + " ways");
+        }
+        this.ways = ways;
+        this.setMask = entries / ways - 1;
+        this.tags = new long[entries];
+        this.frames = new int[entries];
+        this.dirty = new boolean[entries];
+        this.nextVictim = new int[entries / ways];
+        Arrays.fill(tags, EMPTY);
+    }
+
+    private static long tag(int pid, int virtualPage) {
+        return ((long) pid << 32) | (virtualPage & 0xFFFFFFFFL);
+    }
+
+    private int setBase(int pid, int virtualPage) {
+        return ((virtualPage ^ (pid * 0x9E3779B9)) & setMask) * ways;
+    }
+
+    // returns the cached frame, or -1 on a miss; a write to an entry not yet marked
+    // dirty also misses so the page table sees the dirty bit
+    public int lookup(int pid, int virtualPage, boolean write) {
+        long tag = tag(pid, virtualPage);
+        int base = setBase(pid, virtualPage);
+        for (int i = base; i < base + ways; i++) {
+            if (tags[i] == tag) {
+                if (write && !dirty[i]) {
+                    break;
+                }
+                hits++;
+                return frames[i];
+            }
+        }
+        misses++;
+        return -1;
+    }
+
+    public void insert(int pid, int virtualPage, int frame, boolean isDirty) {
+        long tag = tag(pid, virtualPage);
+        int base = setBase(pid, virtualPage);
+        int slot = -1;
+        for (int i = base; i < base + ways; i++) {
+            if (tags[i] == tag || (slot < 0 && tags[i] == EMPTY)) {
+                slot = i;
+                if (tags[i] == tag) break;
+            }
+        }
+        if (slot < 0) {
+            int set = base / ways;
+            slot = base + nextVictim[set];
+            nextVictim[set] = (nextVictim[set] + 1) % ways;
+        }
+        tags[slot] = tag;
+        frames[slot] = frame;
+        dirty[slot] = isDirty;
+    }
+
+    public void invalidate(int pid, int virtualPage) {
+        long tag = tag(pid, virtualPage);
+        int base = setBase(pid, virtualPage);
+        for (int i = base; i < base + ways; i++) {
+            if (tags[i] == tag) {
+                tags[i] = EMPTY;
+                flushes++;
+            }
+        }
+    }
+
+    public void invalidateFrame(int frame) {
+        for (int i = 0; i < tags.length; i++) {
+            if (tags[i] != EMPTY && frames[i] == frame) {
+                tags[i] = EMPTY;
+                flushes++;
+            }
+        }
+    }
+
+    public void flushProcess(int pid) {
+        for (int i = 0; i < tags.length; i++) {
+            if (tags[i] != EMPTY && (int) (tags[i] >>> 32) == pid) {
+                tags[i] = EMPTY;
+                flushes++;
+            }
+        }
+    }
+
+    public void flushAll() {
+        Arrays.fill(tags, EMPTY);
+        flushes++;
+    }
+
+    public ReentrantLock getLock() { return lock; }
+    public int getEntries() { return tags.length; }
+    public int getWays() { return ways; }
+    public long getHits() { return hits; }
+    public long getMisses() { return misses; }
+    public long getFlushes() { return flushes; }
+
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : hits * 100.0 / lookups;
+    }
+
+    public void printStatistics() {
+        System.out.printf("TLB (%d entries, %d-way): %d hits, %d misses (%.1f%% hit rate), %d flushes\n",
+            tags.length, ways, hits, misses, getHitRate(), flushes);
+    }
+}
@@ -0,0 +1,144 @@
+// hierarchical timing wheel (Varghese & Lauck) of sleeping processes keyed on absolute
+// clock cycles; buckets are intrusive lists threaded through PCB.timerNext
+public class TimerWheel {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    public interface ProcessVisitor {
+        void visit(PCB process);
+    }
+
+    private final PCB[][] wheels = new PCB[LEVELS][SLOTS];
+    // bit s of occupied[level] is set while wheels[level][s] holds a process
+    private final long[] occupied = new long[LEVELS];
+    private long now;
+    private int size;
+
+    public TimerWheel(long startCycle) {
+        this.now = startCycle;
+    }
+
+    public int size() { return size; }
+    public long getTime() { return now; }
+
+    public void schedule(PCB process, long deadline) {
+        process.setWakeUpCycle(Math.max(deadline, now + 1));
+        insert(process);
+        size++;
+    }
+
+    private void insert(PCB process) {
+        long deadline = process.getWakeUpCycle();
+        long delta = deadline - now;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        int slot;
+        if (delta >= (1L << (SLOT_BITS * LEVELS))) {
+            // beyond the wheel's range: park in the current top-level slot, which cascades
+            // last, and get re-placed from there
+            slot = (int) (now >>> (SLOT_BITS * level)) & SLOT_MASK;
+        } else {
+            slot = (int) (Math.max(deadline, now) >>> (SLOT_BITS * level)) & SLOT_MASK;
+        }
+        process.setTimerNext(wheels[level][slot]);
+        wheels[level][slot] = process;
+        occupied[level] |= 1L << slot;
+    }
+
+    private PCB take(int level, int slot) {
+        PCB bucket = wheels[level][slot];
+        wheels[level][slot] = null;
+        occupied[level] &= ~(1L << slot);
+        return bucket;
+    }
+
+    // the first occupied slot of a level after the current one, as the tick it is reached
+    // at: level 0 slots on that cycle, higher levels when they cascade on their boundary
+    private long nextTick(int level) {
+        if (occupied[level] == 0) {
+            return Long.MAX_VALUE;
+        }
+        int shift = SLOT_BITS * level;
+        long current = now >>> shift;
+        int start = (int) (current + 1) & SLOT_MASK;
+        return (current + 1 + Long.numberOfTrailingZeros(Long.rotateRight(occupied[level], start))) << shift;
+    }
+
+    // moves time forward, jumping between the ticks that reach an occupied slot and handing
+    // every expired process to the handler
+    public void advanceTo(long time, ProcessVisitor handler) {
+        while (now < time) {
+            long tick = Long.MAX_VALUE;
+            for (int level = 0; level < LEVELS; level++) {
+                tick = Math.min(tick, nextTick(level));
+            }
+            if (tick > time) {
+                now = time;
+                return;
+            }
+            now = tick;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((now & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    int slot = (int) (now >>> (SLOT_BITS * level)) & SLOT_MASK;
+                    PCB bucket = take(level, slot);
+                    while (bucket != null) {
+                        PCB next = bucket.getTimerNext();
+                        insert(bucket);
+                        bucket = next;
+                    }
+                }
+            }
+            PCB bucket = take(0, (int) now & SLOT_MASK);
+            while (bucket != null) {
+                PCB next = bucket.getTimerNext();
+                bucket.setTimerNext(null);
+                if (bucket.getWakeUpCycle() <= now) {
+                    size--;
+                    handler.visit(bucket);
+                } else {
+                    insert(bucket);
+                }
+                bucket = next;
+            }
+        }
+    }
+
+    // earliest wake-up cycle of any sleeper. the slots of a lower level are reached in
+    // deadline order, so only the first occupied one needs looking into; the top level also
+    // holds processes parked beyond its range, so all of its slots are searched
+    public long nextEventTime() {
+        long earliest = Long.MAX_VALUE;
+        for (int level = 0; level < LEVELS - 1; level++) {
+            long tick = nextTick(level);
+            if (tick != Long.MAX_VALUE) {
+                earliest = Math.min(earliest, earliest(wheels[level][(int) (tick >>> (SLOT_BITS * level)) & SLOT_MASK]));
+            }
+        }
+        for (long mask = occupied[LEVELS - 1]; mask != 0; mask &= mask - 1) {
+            earliest = Math.min(earliest, earliest(wheels[LEVELS - 1][Long.numberOfTrailingZeros(mask)]));
+        }
+        return earliest;
+    }
+
+    private static long earliest(PCB bucket) {
+        long earliest = Long.MAX_VALUE;
+        for (PCB p = bucket; p != null; p = p.getTimerNext()) {
+            earliest = Math.min(earliest, p.getWakeUpCycle());
+        }
+        return earliest;
+    }
+
+    public void forEach(ProcessVisitor visitor) {
+        for (PCB[] wheel : wheels) {
+            for (PCB bucket : wheel) {
+                for (PCB p = bucket; p != null; p = p.getTimerNext()) {
+                    visitor.visit(p);
+                }
+            }
+        }
+    }
+}
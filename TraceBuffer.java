@@ -0,0 +1,61 @@
+import java.nio.*;
+import java.util.concurrent.atomic.*;
+
+// single-producer single-consumer ring of fixed 32 byte trace records. the owning
+// thread writes without locks or CAS; when the drainer falls behind, records are
+// dropped and counted rather than stalling the producer
+final class TraceBuffer {
+    static final int RECORD_LONGS = 4;
+
+    private final long[] slots;
+    private final int mask;
+    private final int cpu;
+    private final AtomicLong head = new AtomicLong(); // next record to drain
+    private final AtomicLong tail = new AtomicLong(); // next record to write
+    private long cachedHead;
+    private final AtomicLong dropped = new AtomicLong();
+
+    TraceBuffer(int records, int cpu) {
+        if (records <= 0 || Integer.bitCount(records) != 1) {
+            throw new IllegalArgumentException("Trace buffer size must be a power of two: " + records);
+        }
+        this.slots = new long[records * RECORD_LONGS];
+        this.mask = records - 1;
+        this.cpu = cpu;
+    }
+
+    int getCpu() { return cpu; }
+    long getDropped() { return dropped.get(); }
+
+    // the packed words are written big-endian as: cycle, event (2 bytes), cpu (2), pid (4),
+    // a, b, c, d (4 each)
+    void record(long cycle, int event, int pid, int a, int b, int c, int d) {
+        long t = tail.get();
+        if (t - cachedHead > mask) {
+            cachedHead = head.get();
+            if (t - cachedHead > mask) {
+                dropped.lazySet(dropped.get() + 1);
+                return;
+            }
+        }
+        int i = (int) (t & mask) * RECORD_LONGS;
+        slots[i] = cycle;
+        slots[i + 1] = ((long) event << 48) | ((long) (cpu & 0xFFFF) << 32) | (pid & 0xFFFFFFFFL);
+        slots[i + 2] = ((long) a << 32) | (b & 0xFFFFFFFFL);
+        slots[i + 3] = ((long) c << 32) | (d & 0xFFFFFFFFL);
+        tail.lazySet(t + 1);
+    }
+
+    // copies as many pending records as fit; returns how many were copied
+    int drainTo(ByteBuffer out) {
+        long h = head.get();
+        long available = tail.get() - h;
+        int n = (int) Math.min(available, out.remaining() / (RECORD_LONGS * 8));
+        for (int k = 0; k < n; k++) {
+            int i = (int) ((h + k) & mask) * RECORD_LONGS;
+            out.putLong(slots[i]).putLong(slots[i + 1]).putLong(slots[i + 2]).putLong(slots[i + 3]);
+        }
+        head.lazySet(h + n);
+        return n;
+    }
+}
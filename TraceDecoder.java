@@ -0,0 +1,92 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+// turns a binary trace written by TraceLog back into text or CSV.
+// usage: java TraceDecoder <trace file> [--csv]
+public class TraceDecoder {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2 || (args.length == 2 && !args[1].equals("--csv"))) {
+            System.err.println("Usage: java TraceDecoder <trace file> [--csv]");
+            System.exit(2);
+        }
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+        try {
+            decode(Paths.get(args[0]), args.length == 2, out);
+        } catch (IllegalArgumentException | NoSuchFileException e) {
+            out.flush();
+            System.err.println(e instanceof NoSuchFileException ? "No such file: " + e.getMessage() : e.getMessage());
+            System.exit(1);
+        }
+        out.flush();
+    }
+
+    public static long decode(Path file, boolean csv, PrintWriter out) throws IOException {
+        ByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buf.remaining() < TraceLog.HEADER_BYTES || buf.getInt() != TraceLog.MAGIC) {
+            throw new IllegalArgumentException(file + ": not a trace file");
+        }
+        int version = buf.getInt();
+        int recordBytes = buf.getInt();
+        buf.getInt();
+        if (version != TraceLog.VERSION || recordBytes != TraceLog.RECORD_BYTES) {
+            throw new IllegalArgumentException(file + ": unsupported trace version " + version);
+        }
+
+        TraceLog.Event[] events = TraceLog.Event.values();
+        if (csv) {
+            out.println("cycle,cpu,pid,event,a,b,c,d");
+        }
+        long records = 0;
+        while (buf.remaining() >= recordBytes) {
+            long cycle = buf.getLong();
+            int type = buf.getShort();
+            int cpu = buf.getShort();
+            int pid = buf.getInt();
+            int a = buf.getInt();
+            int b = buf.getInt();
+            int c = buf.getInt();
+            int d = buf.getInt();
+            if (type < 0 || type >= events.length) {
+                throw new IllegalArgumentException(file + ": bad event type " + type + " in record " + records);
+            }
+            TraceLog.Event event = events[type];
+            if (csv) {
+                out.printf("%d,%d,%d,%s,%d,%d,%d,%d%n", cycle, cpu, pid, event, a, b, c, d);
+            } else {
+                out.printf("[Cycle %d] CPU %d PID %d %s%n", cycle, cpu, pid, describe(event, a, b, c, d));
+            }
+            records++;
+        }
+        return records;
+    }
+
+    private static String describe(TraceLog.Event event, int a, int b, int c, int d) {
+        switch (event) {
+            case INSTRUCTION:
+                return String.format("[%04d] %-12s args: %3d, %3d", a, opcodeName(b), c, d);
+            case CONTEXT_SWITCH:
+                return String.format("switched in (priority %d, quantum %d)", a, b);
+            case PAGE_FAULT:
+                return String.format("page fault on page %d -> frame %d (%d ns)", a, b, c);
+            case SYSCALL:
+                return String.format("%s args: %d, %d -> %d", opcodeName(a), b, c, d);
+            case PROCESS_EXIT:
+                return String.format("terminated at %04d", a);
+            default:
+                return event.toString();
+        }
+    }
+
+    private static String opcodeName(int ordinal) {
+        try {
+            return InstructionSet.fromOrdinal(ordinal).toString();
+        } catch (RuntimeException e) {
+            return "OP" + ordinal;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+
+// structured event trace: each thread records into its own lock-free ring and a
+// background thread drains the rings into a binary file. file layout: a 16 byte
+// header (magic, version, record size, reserved) then 32 byte records, see TraceBuffer
+public class TraceLog implements Closeable {
+    public enum Event { INSTRUCTION, CONTEXT_SWITCH, PAGE_FAULT, SYSCALL, PROCESS_EXIT }
+
+    public static final int MAGIC = 0x4F535452; // "OSTR"
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 16;
+    public static final int RECORD_BYTES = TraceBuffer.RECORD_LONGS * 8;
+    public static final int DEFAULT_BUFFER_RECORDS = 1 << 16;
+    private static final long IDLE_NANOS = 1_000_000;
+
+    private final FileChannel channel;
+    private final int bufferRecords;
+    private final List<TraceBuffer> buffers = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<TraceBuffer> threadBuffer;
+    private final ByteBuffer out = ByteBuffer.allocateDirect(RECORD_BYTES * 4096);
+    private final Thread drainer;
+    private volatile boolean running = true;
+    private long written;
+
+    public TraceLog(Path file) throws IOException {
+        this(file, DEFAULT_BUFFER_RECORDS);
+    }
+
+    public TraceLog(Path file, int bufferRecords) throws IOException {
+        this.bufferRecords = bufferRecords;
+        this.threadBuffer = ThreadLocal.withInitial(() -> register(-1));
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_BYTES).putInt(0).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        this.drainer = new Thread(this::drainLoop, "trace-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    // gives a CPU thread a ring tagged with its CPU id; other threads get one lazily
+    public TraceBuffer buffer(int cpu) {
+        TraceBuffer buffer = register(cpu);
+        threadBuffer.set(buffer);
+        return buffer;
+    }
+
+    private TraceBuffer register(int cpu) {
+        TraceBuffer buffer = new TraceBuffer(bufferRecords, cpu);
+        buffers.add(buffer);
+        return buffer;
+    }
+
+    // for callers without a ring of their own; costs a thread-local lookup
+    public void emit(Event event, int pid, int a, int b, int c, int d) {
+        threadBuffer.get().record(CPU.getClockCycleCount(), event.ordinal(), pid, a, b, c, d);
+    }
+
+    public long getDropped() {
+        long dropped = 0;
+        for (TraceBuffer buffer : buffers) {
+            dropped += buffer.getDropped();
+        }
+        return dropped;
+    }
+
+    public synchronized long getWritten() { return written; }
+
+    private void drainLoop() {
+        while (running) {
+            if (drainOnce() == 0) {
+                LockSupport.parkNanos(this, IDLE_NANOS);
+            }
+        }
+    }
+
+    private synchronized int drainOnce() {
+        int drained = 0;
+        try {
+            for (TraceBuffer buffer : buffers) {
+                int n;
+                while ((n = buffer.drainTo(out)) > 0) {
+                    drained += n;
+                    if (!out.hasRemaining()) {
+                        flush();
+                    }
+                }
+            }
+            flush();
+        } catch (IOException e) {
+            running = false;
+            throw new UncheckedIOException("Trace write failed", e);
+        }
+        written += drained;
+        return drained;
+    }
+
+    private void flush() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    // stops the drainer after a last pass; call once the traced threads are done
+    public void close() {
+        running = false;
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drainOnce();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+// full 2Q: new pages enter a FIFO, pages re-faulted while remembered in the ghost queue go to the LRU
+public class TwoQueuePolicy implements PageReplacementPolicy {
+    private final FrameList recentIn;
+    private final FrameList frequent;
+    private final GhostList recentOut;
+    private final long[] frameKeys;
+    private final int recentInTarget;
+
+    public TwoQueuePolicy(int frameCount) {
+        this.recentIn = new FrameList(frameCount);
+        this.frequent = new FrameList(frameCount);
+        this.recentOut = new GhostList(Math.max(frameCount / 2, 1));
+        this.frameKeys = new long[frameCount];
+        this.recentInTarget = Math.max(frameCount / 4, 1);
+    }
+
+    public Kind getKind() { return Kind.TWO_Q; }
+
+    public void pageLoaded(int frame, long key) {
+        frameKeys[frame] = key;
+        if (recentOut.remove(key)) {
+            frequent.addFirst(frame);
+        } else {
+            recentIn.addFirst(frame);
+        }
+    }
+
+    public void pageAccessed(int frame) {
+        if (frequent.contains(frame)) {
+            frequent.moveToFront(frame);
+        }
+    }
+
+    public int selectVictim(long incomingKey) {
+        if (recentIn.size() > recentInTarget || frequent.isEmpty()) {
+            int frame = recentIn.removeLast();
+            recentOut.addFirst(frameKeys[frame]);
+            return frame;
+        }
+        return frequent.removeLast();
+    }
+
+    public void pageRemoved(int frame) {
+        recentIn.remove(frame);
+        frequent.remove(frame);
+    }
+}
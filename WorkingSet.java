@@ -0,0 +1,136 @@
+import java.util.*;
+
+// Denning's working set W(t, tau): the pages a process referenced in the last tau cycles it
+// ran. the window is kept as EPOCHS bitsets of tau / EPOCHS cycles each and the oldest is
+// cleared as the window moves on, so a page leaves the set between tau and tau + tau / EPOCHS
+// cycles after its last reference. time is the process's own, the clock cycles it has
+// spent on a CPU, so a process that waits or is suspended keeps the set it will need
+// when it runs again. references come from the CPU running the process; the window is
+// moved and the set recounted once it is off the CPU, under the ProcessManager monitor
+public class WorkingSet {
+    public static final long DEFAULT_WINDOW = 2000;
+    static final int EPOCHS = 4;
+
+    private long window = DEFAULT_WINDOW;
+    private final long[][] epochs = new long[EPOCHS][];
+    private final int[] epochFaults = new int[EPOCHS];
+    private int current;
+    private long virtualTime;
+    private long epochEnd = epochLength();
+    private int size;
+    private long faults;
+
+    public WorkingSet() {
+        for (int i = 0; i < EPOCHS; i++) {
+            epochs[i] = new long[4];
+        }
+    }
+
+    public long getWindow() { return window; }
+    public long getVirtualTime() { return virtualTime; }
+    public long getFaults() { return faults; }
+
+    // the size as of the last advance
+    public int size() { return size; }
+
+    // only before the process first runs
+    void setWindow(long cycles) {
+        if (cycles < EPOCHS) {
+            throw new IllegalArgumentException("Working set window too short: " + cycles + " cycles");
+        }
+        this.window = cycles;
+        this.epochEnd = virtualTime + epochLength();
+    }
+
+    private long epochLength() {
+        return window / EPOCHS;
+    }
+
+    void reference(int page) {
+        int word = page >>> 6;
+        long[] bits = epochs[current];
+        if (word >= bits.length) {
+            bits = epochs[current] = Arrays.copyOf(bits, Math.max(word + 1, bits.length * 2));
+        }
+        bits[word] |= 1L << page;
+    }
+
+    void fault() {
+        epochFaults[current]++;
+        faults++;
+    }
+
+    // moves the window on by the cycles the process just ran and recounts the set
+    int advance(long cycles) {
+        virtualTime += cycles;
+        if (virtualTime >= epochEnd) {
+            long passed = (virtualTime - epochEnd) / epochLength() + 1;
+            for (long i = 0; i < Math.min(passed, EPOCHS); i++) {
+                current = (current + 1) % EPOCHS;
+                Arrays.fill(epochs[current], 0);
+                epochFaults[current] = 0;
+            }
+            epochEnd += passed * epochLength();
+        }
+        size = 0;
+        for (long word : union()) {
+            size += Long.bitCount(word);
+        }
+        return size;
+    }
+
+    // page-fault frequency: faults per thousand cycles of running time over the window
+    public long getFaultFrequency() {
+        long recent = 0;
+        for (int count : epochFaults) {
+            recent += count;
+        }
+        return recent * 1000 / Math.max(Math.min(virtualTime, window), 1);
+    }
+
+    private long[] union() {
+        int words = 0;
+        for (long[] bits : epochs) {
+            words = Math.max(words, bits.length);
+        }
+        long[] union = new long[words];
+        for (long[] bits : epochs) {
+            for (int w = 0; w < bits.length; w++) {
+                union[w] |= bits[w];
+            }
+        }
+        return union;
+    }
+
+    // the pages in the window, ascending
+    int[] pages() {
+        long[] union = union();
+        int[] pages = new int[Arrays.stream(union).mapToInt(Long::bitCount).sum()];
+        int n = 0;
+        for (int w = 0; w < union.length; w++) {
+            for (long bits = union[w]; bits != 0; bits &= bits - 1) {
+                pages[n++] = w << 6 | Long.numberOfTrailingZeros(bits);
+            }
+        }
+        return pages;
+    }
+
+    // a forked child starts with the parent's window and history
+    void copyFrom(WorkingSet parent) {
+        for (int i = 0; i < EPOCHS; i++) {
+            epochs[i] = parent.epochs[i].clone();
+        }
+        System.arraycopy(parent.epochFaults, 0, epochFaults, 0, EPOCHS);
+        this.window = parent.window;
+        this.current = parent.current;
+        this.virtualTime = parent.virtualTime;
+        this.epochEnd = parent.epochEnd;
+        this.size = parent.size;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d pages (window %d cycles, %d faults per 1000 cycles)",
+            size, window, getFaultFrequency());
+    }
+}
@@ -0,0 +1,271 @@
+import java.util.*;
+
+// deterministic synthetic programs for batch runs. every process draws from its own
+// generator seeded by (seed, index), so a given seed, mix and process count always
+// produce the same images, whatever order they are asked for in. the ISA has no
+// branches and no register moves, so memory programs walk one pointer register
+// through their heap block with ADD_VALUE deltas, and ping-pong pairs bounce a token
+// through two one-slot channels, whose blocking path is a kernel event wait and wake
+public class WorkloadGenerator {
+    public static final int DEFAULT_LENGTH = 2000;
+    public static final int DEFAULT_HEAP_BYTES = 32 * 1024;
+    public static final int DEFAULT_LOCKS = 4;
+    private static final int CHANNEL_KEY_BASE = 0x50000;
+    private static final int CHANNEL_CAPACITY = 1;
+    private static final int ALLOC_SLOTS = 8;
+
+    public enum Kind {
+        CPU,       // register arithmetic only
+        RANDOM,    // WRITE_MEM to random words of a heap block
+        STRIDED,   // WRITE_MEM walking a heap block with a fixed stride
+        ALLOC,     // ALLOC / FREE_MEMORY churn over a handful of live blocks
+        LOCK,      // short critical sections on a few shared locks
+        PINGPONG   // pairs passing a token back and forth
+    }
+
+    public static final class Program {
+        public final Kind kind;
+        public final ProgramImage image;
+        public final int priority;
+
+        Program(Kind kind, ProgramImage image, int priority) {
+            this.kind = kind;
+            this.image = image;
+            this.priority = priority;
+        }
+    }
+
+    private final long seed;
+    private final int length;
+    private final int heapBytes;
+    private final int locks;
+
+    public WorkloadGenerator(long seed) {
+        this(seed, DEFAULT_LENGTH, DEFAULT_HEAP_BYTES, DEFAULT_LOCKS);
+    }
+
+    // length is the number of instructions per program, give or take a few
+    public WorkloadGenerator(long seed, int length, int heapBytes, int locks) {
+        if (length <= 0 || heapBytes < 64 || locks <= 0 || locks > LockManager.LOCK_COUNT) {
+            throw new IllegalArgumentException("Invalid workload: length " + length + ", heap "
+                + heapBytes + " B, " + locks + " locks");
+        }
+        this.seed = seed;
+        this.length = length;
+        this.heapBytes = heapBytes;
+        this.locks = locks;
+    }
+
+    // "cpu=4,random=1,lock=2"; a kind that is not named gets no processes
+    public static Map<Kind, Integer> parseMix(String spec) {
+        Map<Kind, Integer> mix = new EnumMap<>(Kind.class);
+        for (String part : spec.split(",")) {
+            String[] kv = part.trim().split("=");
+            int weight = kv.length > 1 ? Integer.parseInt(kv[1].trim()) : 1;
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight in mix: " + part);
+            }
+            try {
+                mix.put(Kind.valueOf(kv[0].trim().toUpperCase()), weight);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown workload kind '" + kv[0].trim() + "', expected one of "
+                    + Arrays.toString(Kind.values()).toLowerCase());
+            }
+        }
+        if (mix.values().stream().mapToInt(Integer::intValue).sum() == 0) {
+            throw new IllegalArgumentException("Empty mix: " + spec);
+        }
+        return mix;
+    }
+
+    // the pairs whose channels fit in the shared memory a machine will map at once; a
+    // failed CHAN_OPEN leaves -1 behind and the ISA cannot branch around it
+    public static int maxPairs(int sharedPages, int pageSize) {
+        int channelPages = (Channel.bytes(CHANNEL_CAPACITY) + pageSize - 1) / pageSize;
+        return Math.max(sharedPages, 0) / (2 * channelPages);
+    }
+
+    public List<Program> generate(Map<Kind, Integer> mix, int processes) {
+        return generate(mix, processes, Integer.MAX_VALUE);
+    }
+
+    // at most maxPairs ping-pong pairs; the turns of the rest go to CPU processes
+    public List<Program> generate(Map<Kind, Integer> mix, int processes, int maxPairs) {
+        List<Kind> kinds = deal(mix, processes, maxPairs);
+        List<Program> programs = new ArrayList<>(processes);
+        int pairs = 0;
+        for (int i = 0; i < kinds.size(); i++) {
+            Kind kind = kinds.get(i);
+            if (kind == Kind.PINGPONG) {
+                programs.add(program(kind, i, pairs, true));
+                programs.add(program(kind, ++i, pairs++, false));
+            } else {
+                programs.add(program(kind, i, 0, false));
+            }
+        }
+        return programs;
+    }
+
+    // how many pairs generate(mix, processes, maxPairs) leaves out
+    public static int droppedPairs(Map<Kind, Integer> mix, int processes, int maxPairs) {
+        long uncapped = deal(mix, processes, Integer.MAX_VALUE).stream().filter(k -> k == Kind.PINGPONG).count();
+        long capped = deal(mix, processes, maxPairs).stream().filter(k -> k == Kind.PINGPONG).count();
+        return (int) (uncapped - capped) / 2;
+    }
+
+    // kinds are dealt out by smooth weighted round robin, so every prefix of the
+    // process list has close to the mix's proportions; ping-pong processes come in pairs
+    private static List<Kind> deal(Map<Kind, Integer> mix, int processes, int maxPairs) {
+        Kind[] kinds = mix.keySet().toArray(new Kind[0]);
+        int[] weights = new int[kinds.length];
+        int total = 0;
+        for (int k = 0; k < kinds.length; k++) {
+            weights[k] = mix.get(kinds[k]);
+            total += weights[k];
+        }
+        int[] current = new int[kinds.length];
+        List<Kind> dealt = new ArrayList<>(processes);
+        int pairs = 0;
+        while (dealt.size() < processes) {
+            int best = 0;
+            for (int k = 0; k < kinds.length; k++) {
+                current[k] += weights[k];
+                if (current[k] > current[best]) best = k;
+            }
+            current[best] -= total;
+            Kind kind = kinds[best];
+            if (kind == Kind.PINGPONG) {
+                if (dealt.size() + 2 > processes || pairs == maxPairs) {
+                    kind = Kind.CPU;
+                } else {
+                    dealt.add(kind);
+                    pairs++;
+                }
+            }
+            dealt.add(kind);
+        }
+        return dealt;
+    }
+
+    private Program program(Kind kind, int index, int pair, boolean first) {
+        SplittableRandom random = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + index);
+        List<Instruction> code = new ArrayList<>(length + 16);
+        switch (kind) {
+            case CPU:
+                compute(code, random, length);
+                break;
+            case RANDOM:
+            case STRIDED:
+                memory(code, random, kind == Kind.STRIDED);
+                break;
+            case ALLOC:
+                churn(code, random);
+                break;
+            case LOCK:
+                contend(code, random);
+                break;
+            case PINGPONG:
+                pingPong(code, pair, first);
+                break;
+        }
+        code.add(new Instruction(InstructionSet.TERMINATE, 0, 0));
+        return new Program(kind, ProgramImage.of(code), 1 + random.nextInt(10));
+    }
+
+    // r3-r10 are scratch registers for arithmetic
+    private static void compute(List<Instruction> code, SplittableRandom random, int count) {
+        for (int i = 0; i < count; i++) {
+            int register = 3 + random.nextInt(8);
+            switch (random.nextInt(3)) {
+                case 0:
+                    code.add(new Instruction(InstructionSet.LOAD_VALUE, register, random.nextInt(1000)));
+                    break;
+                case 1:
+                    code.add(new Instruction(InstructionSet.INCREMENT, register, 0));
+                    break;
+                default:
+                    code.add(new Instruction(InstructionSet.ADD_VALUE, register, random.nextInt(-100, 100)));
+            }
+        }
+    }
+
+    // r1 walks the block and r2 holds the value written; r1 goes back to the block start
+    // before it is freed
+    private void memory(List<Instruction> code, SplittableRandom random, boolean strided) {
+        code.add(new Instruction(InstructionSet.LOAD_VALUE, 0, heapBytes));
+        code.add(new Instruction(InstructionSet.ALLOC, 0, 1));
+        int words = heapBytes / 4;
+        int stride = 1 << (6 + random.nextInt(7)); // 64 B to 4 KiB
+        int offset = 0;
+        for (int i = 0; i < (length - 4) / 3; i++) {
+            int next = strided ? (offset + stride) % (words * 4) : random.nextInt(words) * 4;
+            code.add(new Instruction(InstructionSet.ADD_VALUE, 1, next - offset));
+            code.add(random.nextInt(4) == 0 ? new Instruction(InstructionSet.LOAD_VALUE, 2, random.nextInt())
+                : new Instruction(InstructionSet.INCREMENT, 2, 0));
+            code.add(new Instruction(InstructionSet.WRITE_MEM, 1, 2));
+            offset = next;
+        }
+        code.add(new Instruction(InstructionSet.ADD_VALUE, 1, -offset));
+        code.add(new Instruction(InstructionSet.FREE_MEMORY, 1, 0));
+    }
+
+    // r0 holds the size of the next block, r1-r8 the live blocks; freeing a slot that
+    // holds no block is a no-op
+    private void churn(List<Instruction> code, SplittableRandom random) {
+        boolean[] live = new boolean[ALLOC_SLOTS];
+        while (code.size() < length - ALLOC_SLOTS) {
+            int slot = random.nextInt(ALLOC_SLOTS);
+            int register = 1 + slot;
+            if (live[slot]) {
+                code.add(new Instruction(InstructionSet.FREE_MEMORY, register, 0));
+            } else {
+                // mostly small blocks with the occasional large one, as real heaps see
+                int size = random.nextInt(8) == 0 ? 256 + random.nextInt(heapBytes / 4) : 8 + random.nextInt(248);
+                code.add(new Instruction(InstructionSet.LOAD_VALUE, 0, size));
+                code.add(new Instruction(InstructionSet.ALLOC, 0, register));
+                code.add(new Instruction(InstructionSet.LOAD_VALUE, 9, size));
+                code.add(new Instruction(InstructionSet.WRITE_MEM, register, 9));
+            }
+            live[slot] = !live[slot];
+        }
+        for (int slot = 0; slot < ALLOC_SLOTS; slot++) {
+            if (live[slot]) {
+                code.add(new Instruction(InstructionSet.FREE_MEMORY, 1 + slot, 0));
+            }
+        }
+    }
+
+    private void contend(List<Instruction> code, SplittableRandom random) {
+        while (code.size() < length) {
+            int lock = random.nextInt(locks);
+            code.add(new Instruction(InstructionSet.ACQUIRE_LOCK, lock, 0));
+            compute(code, random, 2 + random.nextInt(5));
+            code.add(new Instruction(InstructionSet.RELEASE_LOCK, lock, 0));
+            compute(code, random, random.nextInt(12));
+        }
+    }
+
+    // both sides open the pair's two channels, r2 and r4, then the first sends on r2 and
+    // waits on r4 while the second does the opposite; r5 carries the token
+    private void pingPong(List<Instruction> code, int pair, boolean first) {
+        for (int channel = 0; channel < 2; channel++) {
+            int keyRegister = 1 + channel * 2;
+            code.add(new Instruction(InstructionSet.LOAD_VALUE, keyRegister, CHANNEL_KEY_BASE + pair * 2 + channel));
+            code.add(new Instruction(InstructionSet.LOAD_VALUE, keyRegister + 1, CHANNEL_CAPACITY));
+            code.add(new Instruction(InstructionSet.CHAN_OPEN, keyRegister, keyRegister + 1));
+        }
+        int out = first ? 2 : 4;
+        int in = first ? 4 : 2;
+        for (int round = 0; round < (length - 6) / 3; round++) {
+            if (first) {
+                code.add(new Instruction(InstructionSet.INCREMENT, 5, 0));
+                code.add(new Instruction(InstructionSet.SEND, out, 5));
+                code.add(new Instruction(InstructionSet.RECV, in, 5));
+            } else {
+                code.add(new Instruction(InstructionSet.RECV, in, 5));
+                code.add(new Instruction(InstructionSet.INCREMENT, 5, 0));
+                code.add(new Instruction(InstructionSet.SEND, out, 5));
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+import java.util.concurrent.locks.*;
+
+// background thread that keeps lowWatermark frames free by evicting pages ahead of
+// demand and writing out the dirty ones, so a fault can usually take a free frame
+// without evicting and writing on its own path. it sleeps until a fault takes the free
+// frames down to the watermark
+public class WritebackDaemon implements Runnable {
+    public static final int DEFAULT_BATCH = 8;
+
+    private final MemoryManager memory;
+    private final int lowWatermark;
+    private final int batch;
+    private volatile boolean running;
+    private volatile Thread thread;
+
+    public WritebackDaemon(MemoryManager memory, int lowWatermark, int batch) {
+        if (lowWatermark <= 0 || batch <= 0) {
+            throw new IllegalArgumentException("Invalid writeback settings: watermark "
+                + lowWatermark + ", batch " + batch);
+        }
+        this.memory = memory;
+        this.lowWatermark = lowWatermark;
+        this.batch = batch;
+    }
+
+    public int getLowWatermark() { return lowWatermark; }
+
+    public synchronized void start() {
+        if (thread != null) return;
+        running = true;
+        Thread t = new Thread(this, "writeback");
+        t.setDaemon(true);
+        thread = t;
+        t.start();
+    }
+
+    public void wake() {
+        Thread t = thread;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    public synchronized void stop() {
+        Thread t = thread;
+        if (t == null) return;
+        running = false;
+        LockSupport.unpark(t);
+        try {
+            t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    public void run() {
+        while (running) {
+            if (memory.reclaimFrames(lowWatermark, batch) < batch) {
+                LockSupport.park(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package simbench;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+// instructions per unit of time through CPU.executeProcess, one straight-line
+// program run per invocation; small frame counts make the code page in and out.
+// jit=true runs the same program through the compiled tier once its blocks are hot
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CpuDispatchBenchmark {
+    static final int INSTRUCTIONS = 1024;
+
+    @Param({"256", "4096"})
+    int pageSize;
+
+    @Param({"32", "256"})
+    int frames;
+
+    @Param({"false", "true"})
+    boolean jit;
+
+    private final int[] startRegisters = new int[16];
+    private Object memory;
+    private Object cpu;
+    private Object pcb;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        memory = Sim.NEW_MEMORY_MANAGER.invokeExact(pageSize, frames,
+            Sim.constant(Sim.FRAME_STORE_KIND, "HEAP"), Sim.constant(Sim.POLICY_KIND, "LRU"));
+        Object processManager = Sim.NEW_PROCESS_MANAGER.invokeExact(memory);
+        if (jit) {
+            Object compiler = Sim.NEW_JIT_COMPILER.invokeExact(1);
+            Sim.ATTACH_JIT.invokeExact(processManager, compiler);
+        }
+        Object tlb = Sim.NEW_TLB.invokeExact();
+        cpu = Sim.NEW_CPU.invokeExact(0, processManager, false, tlb);
+        pcb = Sim.NEW_PCB.invokeExact(0, 5);
+
+        List<Object> program = new ArrayList<>();
+        for (int i = 0; i < INSTRUCTIONS; i++) {
+            switch (i % 3) {
+                case 0:
+                    program.add(Sim.instruction("LOAD_VALUE", i % 8, i));
+                    break;
+                case 1:
+                    program.add(Sim.instruction("INCREMENT", i % 8, 0));
+                    break;
+                default:
+                    program.add(Sim.instruction("ADD_VALUE", i % 8, 3));
+            }
+        }
+        Sim.LOAD_PROGRAM.invokeExact(memory, pcb, (Object) program);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        Sim.CLOSE_MEMORY.invokeExact(memory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public void executeProgram() throws Throwable {
+        Sim.SAVE_REGISTERS.invokeExact(pcb, (Object) startRegisters);
+        Sim.RUN_QUANTUM.invokeExact(cpu, pcb, INSTRUCTIONS);
+    }
+}
@@ -0,0 +1,50 @@
+package simbench;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+// every access misses: a cyclic scan over four times as many pages as there are
+// frames, so each write faults a page in and evicts (and writes back) another
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvictionBenchmark {
+    @Param({"LRU", "CLOCK", "TWO_Q", "ARC"})
+    String policy;
+
+    @Param({"16", "256"})
+    int frames;
+
+    @Param({"256", "4096"})
+    int pageSize;
+
+    private Object memory;
+    private int base;
+    private int pages;
+    private int page;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        memory = Sim.NEW_MEMORY_MANAGER.invokeExact(pageSize, frames,
+            Sim.constant(Sim.FRAME_STORE_KIND, "HEAP"), Sim.constant(Sim.POLICY_KIND, policy));
+        Object pcb = Sim.NEW_PCB.invokeExact(0, 5);
+        Sim.LOAD_PROGRAM.invokeExact(memory, pcb, (Object) List.of(Sim.instruction("TERMINATE", 0, 0)));
+        pages = frames * 4;
+        base = (int) Sim.ALLOCATE_HEAP.invokeExact(memory, pcb, pages * pageSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        Sim.CLOSE_MEMORY.invokeExact(memory);
+    }
+
+    @Benchmark
+    public void faultAndEvict() throws Throwable {
+        page = page + 1 == pages ? 0 : page + 1;
+        Sim.WRITE_MEMORY.invokeExact(memory, 0, base + page * pageSize, page);
+    }
+}
@@ -0,0 +1,62 @@
+package simbench;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+// one FREE_MEMORY plus one ALLOC per operation against a steady live set of blocks
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeapChurnBenchmark {
+    private static final int PAGE_SIZE = 256;
+    private static final int FRAMES = 4096;
+
+    @Param({"64", "4096"})
+    int maxSize;
+
+    @Param({"64", "1024"})
+    int liveBlocks;
+
+    private Object memory;
+    private Object pcb;
+    private int[] sizes;
+    private int[] live;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        memory = Sim.NEW_MEMORY_MANAGER.invokeExact(PAGE_SIZE, FRAMES,
+            Sim.constant(Sim.FRAME_STORE_KIND, "HEAP"), Sim.constant(Sim.POLICY_KIND, "LRU"));
+        pcb = Sim.NEW_PCB.invokeExact(0, 5);
+        Sim.LOAD_PROGRAM.invokeExact(memory, pcb, (Object) List.of(Sim.instruction("TERMINATE", 0, 0)));
+
+        Random random = new Random(42);
+        sizes = new int[4096];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = 1 + random.nextInt(maxSize);
+        }
+        live = new int[liveBlocks];
+        for (int i = 0; i < liveBlocks; i++) {
+            live[i] = (int) Sim.ALLOCATE_HEAP.invokeExact(memory, pcb, sizes[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        Sim.CLOSE_MEMORY.invokeExact(memory);
+    }
+
+    @Benchmark
+    public int freeThenAllocate() throws Throwable {
+        int slot = next % liveBlocks;
+        int size = sizes[next % sizes.length];
+        next++;
+        Sim.FREE_HEAP.invokeExact(memory, pcb, live[slot]);
+        live[slot] = (int) Sim.ALLOCATE_HEAP.invokeExact(memory, pcb, size);
+        return live[slot];
+    }
+}
@@ -0,0 +1,71 @@
+package simbench;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+// cost of one word access with every page resident: through a CPU's TLB, and
+// through the locked page table walk that backs a TLB miss
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryTranslationBenchmark {
+    @Param({"256", "4096"})
+    int pageSize;
+
+    @Param({"64", "1024"})
+    int frames;
+
+    private Object memory;
+    private Object tlb;
+    private int[] addresses;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        memory = Sim.NEW_MEMORY_MANAGER.invokeExact(pageSize, frames,
+            Sim.constant(Sim.FRAME_STORE_KIND, "HEAP"), Sim.constant(Sim.POLICY_KIND, "LRU"));
+        tlb = Sim.NEW_TLB.invokeExact();
+        Sim.REGISTER_TLB.invokeExact(memory, tlb);
+        Object pcb = Sim.NEW_PCB.invokeExact(0, 5);
+        Sim.LOAD_PROGRAM.invokeExact(memory, pcb, (Object) List.of(Sim.instruction("TERMINATE", 0, 0)));
+
+        // half the frames, so the working set stays resident but overflows the TLB
+        int pages = frames / 2;
+        int base = (int) Sim.ALLOCATE_HEAP.invokeExact(memory, pcb, pages * pageSize);
+        addresses = new int[pages * 4];
+        Random random = new Random(42);
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = base + random.nextInt(pages) * pageSize + random.nextInt(pageSize / 4) * 4;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        Sim.CLOSE_MEMORY.invokeExact(memory);
+    }
+
+    private int nextAddress() {
+        int address = addresses[cursor];
+        cursor = cursor + 1 == addresses.length ? 0 : cursor + 1;
+        return address;
+    }
+
+    @Benchmark
+    public int readThroughTlb() throws Throwable {
+        return (int) Sim.READ_MEMORY_TLB.invokeExact(memory, tlb, 0, nextAddress());
+    }
+
+    @Benchmark
+    public void writeThroughTlb() throws Throwable {
+        Sim.WRITE_MEMORY_TLB.invokeExact(memory, tlb, 0, nextAddress(), cursor);
+    }
+
+    @Benchmark
+    public int readPageTableWalk() throws Throwable {
+        return (int) Sim.READ_MEMORY.invokeExact(memory, 0, nextAddress());
+    }
+}
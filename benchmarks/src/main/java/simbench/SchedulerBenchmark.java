@@ -0,0 +1,42 @@
+package simbench;
+
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+// one dispatch plus one preemption per operation with thousands of ready PCBs.
+// drives the Scheduler directly because ProcessManager logs every context switch
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchedulerBenchmark {
+    private static final int CYCLES_RUN = 10; // each preempted process used a base quantum
+
+    @Param({"PRIORITY", "MLFQ"})
+    String scheduler;
+
+    @Param({"1000", "10000"})
+    int processes;
+
+    private Object queue;
+    private long now;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        queue = Sim.CREATE_SCHEDULER.invokeExact(Sim.constant(Sim.SCHEDULER_KIND, scheduler));
+        for (int pid = 0; pid < processes; pid++) {
+            Object pcb = Sim.NEW_PCB.invokeExact(pid, pid % 11);
+            Sim.SCHEDULER_ADD.invokeExact(queue, pcb, 0L);
+        }
+    }
+
+    @Benchmark
+    public Object dispatchAndPreempt() throws Throwable {
+        now++;
+        Object pcb = Sim.SCHEDULER_NEXT.invokeExact(queue, now);
+        Sim.SCHEDULER_PREEMPTED.invokeExact(queue, pcb, CYCLES_RUN, now);
+        return pcb;
+    }
+}
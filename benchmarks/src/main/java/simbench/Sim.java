@@ -0,0 +1,120 @@
+package simbench;
+
+import java.lang.invoke.*;
+import java.util.*;
+
+// the simulator lives in the unnamed package, which named packages cannot import, and
+// JMH refuses benchmarks outside a named package. so the benchmarks reach the simulator
+// through method handles; static final handles are constants to the JIT and inline
+// like direct calls once warmed up
+final class Sim {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    static final Class<?> MEMORY_MANAGER = type("MemoryManager");
+    static final Class<?> PROCESS_MANAGER = type("ProcessManager");
+    static final Class<?> CPU = type("CPU");
+    static final Class<?> TLB = type("TLB");
+    static final Class<?> PCB = type("PCB");
+    static final Class<?> INSTRUCTION = type("Instruction");
+    static final Class<?> INSTRUCTION_SET = type("InstructionSet");
+    static final Class<?> FRAME_STORE_KIND = type("FrameStore$Kind");
+    static final Class<?> POLICY_KIND = type("PageReplacementPolicy$Kind");
+    static final Class<?> SCHEDULER = type("Scheduler");
+    static final Class<?> SCHEDULER_KIND = type("Scheduler$Kind");
+    static final Class<?> JIT_COMPILER = type("JitCompiler");
+
+    // (int pageSize, int frames, FrameStore.Kind, PageReplacementPolicy.Kind) -> MemoryManager
+    static final MethodHandle NEW_MEMORY_MANAGER = constructor(MEMORY_MANAGER,
+        int.class, int.class, FRAME_STORE_KIND, POLICY_KIND);
+    // (MemoryManager) -> ProcessManager
+    static final MethodHandle NEW_PROCESS_MANAGER = constructor(PROCESS_MANAGER, MEMORY_MANAGER);
+    // (int cpuId, ProcessManager, boolean debug, TLB) -> CPU
+    static final MethodHandle NEW_CPU = constructor(CPU, int.class, PROCESS_MANAGER, boolean.class, TLB);
+    // () -> TLB
+    static final MethodHandle NEW_TLB = constructor(TLB);
+    // (int pid, int priority) -> PCB
+    static final MethodHandle NEW_PCB = constructor(PCB, int.class, int.class);
+    // (int threshold) -> JitCompiler
+    static final MethodHandle NEW_JIT_COMPILER = constructor(JIT_COMPILER, int.class);
+    // (InstructionSet, int, int) -> Instruction
+    static final MethodHandle NEW_INSTRUCTION = constructor(INSTRUCTION, INSTRUCTION_SET, int.class, int.class);
+
+    // MemoryManager
+    static final MethodHandle LOAD_PROGRAM = virtual(MEMORY_MANAGER, "loadProgram", void.class, PCB, List.class);
+    static final MethodHandle READ_MEMORY = virtual(MEMORY_MANAGER, "readMemory", int.class, int.class, int.class);
+    static final MethodHandle READ_MEMORY_TLB = virtual(MEMORY_MANAGER, "readMemory", int.class, TLB, int.class, int.class);
+    static final MethodHandle WRITE_MEMORY = virtual(MEMORY_MANAGER, "writeMemory", void.class, int.class, int.class, int.class);
+    static final MethodHandle WRITE_MEMORY_TLB = virtual(MEMORY_MANAGER, "writeMemory", void.class, TLB, int.class, int.class, int.class);
+    static final MethodHandle ALLOCATE_HEAP = virtual(MEMORY_MANAGER, "allocateHeap", int.class, PCB, int.class);
+    static final MethodHandle FREE_HEAP = virtual(MEMORY_MANAGER, "freeHeap", void.class, PCB, int.class);
+    static final MethodHandle REGISTER_TLB = virtual(MEMORY_MANAGER, "registerTlb", void.class, TLB);
+    static final MethodHandle CLOSE_MEMORY = virtual(MEMORY_MANAGER, "close", void.class);
+
+
+    // ProcessManager
+    static final MethodHandle ATTACH_JIT = virtual(PROCESS_MANAGER, "attachJit", void.class, JIT_COMPILER);
+
+    // PCB
+    static final MethodHandle SAVE_REGISTERS = virtual(PCB, "saveRegisters", void.class, int[].class);
+
+    // CPU
+    static final MethodHandle RUN_QUANTUM = virtual(CPU, "runQuantum", void.class, PCB, int.class);
+
+    // Scheduler
+    static final MethodHandle CREATE_SCHEDULER = staticMethod(SCHEDULER, "create", SCHEDULER, SCHEDULER_KIND);
+    static final MethodHandle SCHEDULER_ADD = virtual(SCHEDULER, "add", void.class, PCB, long.class);
+    static final MethodHandle SCHEDULER_PREEMPTED = virtual(SCHEDULER, "preempted", void.class, PCB, int.class, long.class);
+    static final MethodHandle SCHEDULER_NEXT = virtual(SCHEDULER, "next", PCB, long.class);
+
+    private Sim() {}
+
+    static Object constant(Class<?> enumType, String name) {
+        for (Object value : enumType.getEnumConstants()) {
+            if (((Enum<?>) value).name().equals(name)) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException(enumType.getSimpleName() + " has no constant " + name);
+    }
+
+    static Object instruction(String opcode, int arg1, int arg2) throws Throwable {
+        return NEW_INSTRUCTION.invokeExact(constant(INSTRUCTION_SET, opcode), arg1, arg2);
+    }
+
+    private static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // simulator types are erased to Object so callers can use invokeExact
+    private static MethodHandle erase(MethodHandle handle) {
+        return handle.asType(handle.type().erase());
+    }
+
+    private static MethodHandle constructor(Class<?> owner, Class<?>... parameters) {
+        try {
+            return erase(LOOKUP.findConstructor(owner, MethodType.methodType(void.class, parameters)));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle virtual(Class<?> owner, String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            return erase(LOOKUP.findVirtual(owner, name, MethodType.methodType(returnType, parameters)));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle staticMethod(Class<?> owner, String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            return erase(LOOKUP.findStatic(owner, name, MethodType.methodType(returnType, parameters)));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}